@@ -0,0 +1,110 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.batch.http.to.hdfs;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import javax.annotation.Nullable;
+
+/**
+ * Reads lines from a {@link Reader} without ever holding more than a fixed number of characters of a line.
+ * Lines longer than the limit are skipped and counted, so memory stays bounded however long the input lines are.
+ */
+final class BoundedLineReader implements Closeable {
+  private static final int BUFFER_SIZE = 8192;
+
+  private final Reader reader;
+  private final int maxLength;
+  private final char[] buffer;
+  private final StringBuilder line;
+  private int pos;
+  private int limit;
+  private long oversized;
+
+  BoundedLineReader(Reader reader, int maxLength) {
+    this.reader = reader;
+    this.maxLength = maxLength;
+    this.buffer = new char[BUFFER_SIZE];
+    this.line = new StringBuilder();
+  }
+
+  /**
+   * Returns the next line without its line terminator, or {@code null} at the end of the input.
+   */
+  @Nullable
+  String readLine() throws IOException {
+    while (true) {
+      line.setLength(0);
+      boolean tooLong = false;
+      boolean read = false;
+      boolean terminated = false;
+      while (!terminated) {
+        if (pos >= limit) {
+          limit = reader.read(buffer, 0, buffer.length);
+          pos = 0;
+          if (limit < 0) {
+            limit = 0;
+            break;
+          }
+          continue;
+        }
+        read = true;
+        int start = pos;
+        while (pos < limit && buffer[pos] != '\n') {
+          pos++;
+        }
+        if (!tooLong) {
+          if (line.length() + pos - start > maxLength) {
+            tooLong = true;
+            line.setLength(0);
+          } else {
+            line.append(buffer, start, pos - start);
+          }
+        }
+        if (pos < limit) {
+          pos++;
+          terminated = true;
+        }
+      }
+      if (!read) {
+        return null;
+      }
+      if (tooLong) {
+        oversized++;
+        continue;
+      }
+      int length = line.length();
+      if (length > 0 && line.charAt(length - 1) == '\r') {
+        line.setLength(length - 1);
+      }
+      return line.toString();
+    }
+  }
+
+  /**
+   * Returns the number of lines that were skipped because they were longer than the limit.
+   */
+  long getOversizedCount() {
+    return oversized;
+  }
+
+  @Override
+  public void close() throws IOException {
+    reader.close();
+  }
+}
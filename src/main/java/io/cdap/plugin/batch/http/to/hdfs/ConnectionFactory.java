@@ -0,0 +1,213 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.batch.http.to.hdfs;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import javax.ws.rs.HttpMethod;
+
+/**
+ * Opens http connections configured from the {@link HTTPToHDFSActionConfig}.
+ *
+ * If there are {@link HostStats}, every request is recorded in the history of its host. The request is then sent
+ * and its response headers are read before the connection is returned, so that the connect latency and the time to
+ * first byte can be measured.
+ */
+final class ConnectionFactory {
+  private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+  private final HTTPToHDFSActionConfig config;
+  private final TLSContext tlsContext;
+  private final OAuth2TokenProvider tokenProvider;
+  private final HostStats hostStats;
+
+  ConnectionFactory(HTTPToHDFSActionConfig config, TLSContext tlsContext,
+                    @Nullable OAuth2TokenProvider tokenProvider) {
+    this(config, tlsContext, tokenProvider, null);
+  }
+
+  ConnectionFactory(HTTPToHDFSActionConfig config, TLSContext tlsContext,
+                    @Nullable OAuth2TokenProvider tokenProvider, @Nullable HostStats hostStats) {
+    this.config = config;
+    this.tlsContext = tlsContext;
+    this.tokenProvider = tokenProvider;
+    this.hostStats = hostStats;
+  }
+
+  /**
+   * Opens a connection to the given url using the configured method, headers and body.
+   *
+   * @param url the url to connect to
+   * @param offset the first byte to request. If positive, a range request is made starting at this offset
+   * @return the connection, with the request body already sent
+   */
+  HttpURLConnection open(String url, long offset) throws IOException {
+    return open(url, offset, Collections.<String, String>emptyMap());
+  }
+
+  /**
+   * Opens a connection to the given url like {@link #open(String, long)}, sending the given headers in addition to
+   * the configured ones.
+   */
+  HttpURLConnection open(String url, long offset, Map<String, String> headers) throws IOException {
+    return open(url, offset, headers, null);
+  }
+
+  /**
+   * Opens a connection to the given url like {@link #open(String, long, Map)}, and tells the watchdog about the
+   * connection once the request was sent, so that the time to connect does not count towards the first byte timeout,
+   * while the wait for the response does.
+   */
+  HttpURLConnection open(String url, long offset, Map<String, String> headers,
+                         @Nullable TransferWatchdog watchdog) throws IOException {
+    if (tokenProvider == null) {
+      return send(url, offset, headers, null, watchdog);
+    }
+    String token = tokenProvider.getToken();
+    HttpURLConnection conn = send(url, offset, headers, token, watchdog);
+    if (conn.getResponseCode() != HttpURLConnection.HTTP_UNAUTHORIZED) {
+      return conn;
+    }
+    // the token may have been revoked or expired early, retry once with a new one
+    conn.disconnect();
+    tokenProvider.invalidate(token);
+    return send(url, offset, headers, tokenProvider.getToken(), watchdog);
+  }
+
+  /**
+   * Opens a HEAD connection to the given url, used to check how fast a server responds.
+   */
+  HttpURLConnection openProbe(String url, int timeout) throws IOException {
+    return create(url, HttpMethod.HEAD, timeout, timeout, tokenProvider == null ? null : tokenProvider.getToken());
+  }
+
+  /**
+   * Returns the connect timeout for the url. A configured timeout always wins over the history of the host.
+   */
+  int getConnectTimeout(String url) {
+    Integer timeout = config.getConnectTimeout();
+    if (timeout == null && hostStats != null && config.getAutoTune()) {
+      timeout = hostStats.get(url).getConnectTimeout();
+    }
+    return timeout == null ? HTTPToHDFSActionConfig.DEFAULT_TIMEOUT : timeout;
+  }
+
+  /**
+   * Returns the read timeout for the url. A configured timeout always wins over the history of the host.
+   */
+  int getReadTimeout(String url) {
+    Integer timeout = config.getReadTimeout();
+    if (timeout == null && hostStats != null && config.getAutoTune()) {
+      timeout = hostStats.get(url).getReadTimeout();
+    }
+    return timeout == null ? HTTPToHDFSActionConfig.DEFAULT_TIMEOUT : timeout;
+  }
+
+  private HttpURLConnection send(String url, long offset, Map<String, String> headers, @Nullable String token,
+                                 @Nullable TransferWatchdog watchdog) throws IOException {
+    int readTimeout = watchdog == null ? getReadTimeout(url) : watchdog.getReadTimeout(getReadTimeout(url));
+    HttpURLConnection conn = create(url, config.getMethod(), getConnectTimeout(url), readTimeout, token);
+    for (Map.Entry<String, String> header : headers.entrySet()) {
+      conn.setRequestProperty(header.getKey(), header.getValue());
+    }
+    if (offset > 0) {
+      conn.setRequestProperty("Range", "bytes=" + offset + "-");
+    }
+    // must be set before connecting
+    conn.setDoOutput(config.getBody() != null);
+    if (hostStats == null) {
+      conn.connect();
+      sendBody(conn);
+      if (watchdog != null) {
+        watchdog.connected(conn);
+      }
+      return conn;
+    }
+
+    HostStats.History history = hostStats.get(url);
+    boolean range = conn.getRequestProperty("Range") != null;
+    String acceptEncoding = conn.getRequestProperty("Accept-Encoding");
+    long start = System.nanoTime();
+    long connectMillis = -1;
+    try {
+      conn.connect();
+      connectMillis = millisSince(start);
+      long sent = System.nanoTime();
+      sendBody(conn);
+      if (watchdog != null) {
+        watchdog.connected(conn);
+      }
+      int status = conn.getResponseCode();
+      history.recordRequest(connectMillis, millisSince(sent), status >= HttpURLConnection.HTTP_INTERNAL_ERROR
+        || status == HTTP_TOO_MANY_REQUESTS);
+      if (status == HttpURLConnection.HTTP_PARTIAL || "bytes".equalsIgnoreCase(conn.getHeaderField("Accept-Ranges"))) {
+        history.recordRanges(true);
+      } else if ((range && status == HttpURLConnection.HTTP_OK)
+        || "none".equalsIgnoreCase(conn.getHeaderField("Accept-Ranges"))) {
+        history.recordRanges(false);
+      }
+      if (acceptEncoding != null && acceptEncoding.contains("gzip")
+        && (status == HttpURLConnection.HTTP_OK || status == HttpURLConnection.HTTP_PARTIAL)) {
+        history.recordCompression("gzip".equalsIgnoreCase(conn.getContentEncoding()));
+      }
+      return conn;
+    } catch (IOException e) {
+      if (connectMillis < 0) {
+        history.recordRequest(millisSince(start), -1, true);
+      } else {
+        history.recordRequest(connectMillis, millisSince(start) - connectMillis, true);
+      }
+      conn.disconnect();
+      throw e;
+    }
+  }
+
+  private void sendBody(HttpURLConnection conn) throws IOException {
+    if (config.getBody() != null) {
+      try (OutputStream outputStream = conn.getOutputStream()) {
+        outputStream.write(config.getBody().getBytes(config.getCharset()));
+      }
+    }
+  }
+
+  private static long millisSince(long nanos) {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - nanos);
+  }
+
+  private HttpURLConnection create(String url, String method, int connectTimeout,
+                                   int readTimeout, @Nullable String token) throws IOException {
+    HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+    tlsContext.configure(conn);
+    conn.setRequestMethod(method.toUpperCase());
+    conn.setConnectTimeout(connectTimeout);
+    conn.setReadTimeout(readTimeout);
+    conn.setInstanceFollowRedirects(config.getFollowRedirects());
+    for (Map.Entry<String, String> propertyEntry : config.getRequestHeadersMap().entrySet()) {
+      conn.addRequestProperty(propertyEntry.getKey(), propertyEntry.getValue());
+    }
+    if (token != null) {
+      conn.setRequestProperty("Authorization", "Bearer " + token);
+    }
+    return conn;
+  }
+}
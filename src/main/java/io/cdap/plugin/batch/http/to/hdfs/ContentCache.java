@@ -0,0 +1,294 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.batch.http.to.hdfs;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.base.Strings;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * Cache of written output shared by all runs and pipelines that use the same cache directory.
+ *
+ * Entries are keyed by a hash of the normalized url, the method, the body, the selected request headers and the
+ * settings that shape the written data. Each entry is a {@code <key>.data} file holding the output and a
+ * {@code <key>.json} file holding the fetch time and the response headers. The modification time of the data file
+ * is updated on every hit and is used to evict the least recently used entries once the cache is over its size.
+ * Files are written under hidden names and renamed into place, so concurrent runs never read a partial entry.
+ */
+final class ContentCache {
+  private static final Logger LOG = LoggerFactory.getLogger(ContentCache.class);
+  private static final Gson GSON = new Gson();
+  private static final String DATA = ".data";
+  private static final String METADATA = ".json";
+
+  private final Path directory;
+  private final String key;
+  private final long ttlMillis;
+  private final long maxSize;
+
+  ContentCache(Path directory, String key, long ttlSeconds, long maxSize) {
+    this.directory = directory;
+    this.key = key;
+    this.ttlMillis = TimeUnit.SECONDS.toMillis(ttlSeconds);
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Returns the cache for the request of the given config, or {@code null} if caching is not enabled.
+   */
+  @Nullable
+  static ContentCache create(HTTPToHDFSActionConfig config) throws MalformedURLException {
+    if (config.getCacheDirectory() == null || config.isPacked()) {
+      return null;
+    }
+    return new ContentCache(new Path(config.getCacheDirectory()), key(config), config.getCacheTtl(),
+                            config.getCacheMaxSize());
+  }
+
+  /**
+   * Returns the cache key of the request of the given config.
+   */
+  static String key(HTTPToHDFSActionConfig config) throws MalformedURLException {
+    Map<String, String> keyHeaders = new TreeMap<>();
+    List<String> names = config.getCacheKeyHeaders();
+    for (Map.Entry<String, String> header : config.getRequestHeadersMap().entrySet()) {
+      for (String name : names) {
+        if (name.equalsIgnoreCase(header.getKey().trim())) {
+          keyHeaders.put(name.toLowerCase(Locale.ROOT), header.getValue().trim());
+        }
+      }
+    }
+
+    Hasher hasher = Hashing.sha256().newHasher();
+    for (String part : Arrays.asList(normalize(config.getUrl()), config.getMethod().toUpperCase(Locale.ROOT),
+                                     Strings.nullToEmpty(config.getBody()),
+                                     Joiner.on('\n').withKeyValueSeparator(":").join(keyHeaders),
+                                     config.getOutputFormat(), config.getCharset(),
+                                     Strings.nullToEmpty(config.getJsonRecordsPath()),
+                                     Strings.nullToEmpty(config.getFilterType()),
+                                     Strings.nullToEmpty(config.getFilterField()),
+                                     Strings.nullToEmpty(config.getFilterPattern()),
+                                     Joiner.on(',').join(config.getProjectFields()),
+                                     String.valueOf(config.getCsvDelimiter()),
+                                     String.valueOf(config.getCsvHeader()))) {
+      hasher.putString(part, Charsets.UTF_8).putByte((byte) 0);
+    }
+    return hasher.hash().toString();
+  }
+
+  /**
+   * Normalizes a url so that equivalent urls have the same key. The scheme and host are lower cased, the default
+   * port and the fragment are removed and the query parameters are sorted.
+   */
+  static String normalize(String url) throws MalformedURLException {
+    URL parsed = new URL(url);
+    StringBuilder normalized = new StringBuilder()
+      .append(parsed.getProtocol().toLowerCase(Locale.ROOT)).append("://")
+      .append(parsed.getHost().toLowerCase(Locale.ROOT));
+    if (parsed.getPort() != -1 && parsed.getPort() != parsed.getDefaultPort()) {
+      normalized.append(':').append(parsed.getPort());
+    }
+    normalized.append(Strings.isNullOrEmpty(parsed.getPath()) ? "/" : parsed.getPath());
+    if (!Strings.isNullOrEmpty(parsed.getQuery())) {
+      List<String> parameters = new ArrayList<>(Arrays.asList(parsed.getQuery().split("&")));
+      parameters.removeAll(Collections.singleton(""));
+      Collections.sort(parameters);
+      normalized.append('?').append(Joiner.on('&').join(parameters));
+    }
+    return normalized.toString();
+  }
+
+  /**
+   * Copies the cached output to the target if there is an entry that has not expired.
+   *
+   * @return the cached entry, or {@code null} on a miss
+   */
+  @Nullable
+  Entry get(Path target) throws IOException {
+    Path data = new Path(directory, key + DATA);
+    Path metadata = new Path(directory, key + METADATA);
+    FileSystem fs = FileSystem.get(directory.toUri(), new Configuration());
+    if (!fs.exists(data) || !fs.exists(metadata)) {
+      return null;
+    }
+    Entry entry;
+    try (Reader reader = new InputStreamReader(fs.open(metadata), Charsets.UTF_8)) {
+      entry = GSON.fromJson(reader, Entry.class);
+    } catch (JsonParseException e) {
+      LOG.warn("Ignoring cache entry {} with invalid metadata.", key, e);
+      return null;
+    }
+    long age = System.currentTimeMillis() - entry.fetchTime;
+    if (age >= ttlMillis) {
+      LOG.debug("Cache entry {} for {} expired {} ms ago.", key, entry.url, age - ttlMillis);
+      return null;
+    }
+
+    FileSystem targetFs = FileSystem.get(target.toUri(), new Configuration());
+    if (!FileUtil.copy(fs, data, targetFs, target, false, true, new Configuration())) {
+      throw new IOException(String.format("Failed to copy cache entry %s to %s.", data, target));
+    }
+    // the modification time of the data file is the last use of the entry
+    fs.setTimes(data, System.currentTimeMillis(), -1);
+    LOG.info("Copied {} from the cache, fetched {} seconds ago.", entry.url, TimeUnit.MILLISECONDS.toSeconds(age));
+    return entry;
+  }
+
+  /**
+   * Adds the written output to the cache and evicts expired and least recently used entries until the cache is
+   * within its maximum size.
+   *
+   * @return the number of entries that were evicted
+   */
+  int put(Path source, String url, @Nullable String headers, @Nullable ProfilingOutputStream.Profile profile)
+    throws IOException {
+    FileSystem fs = FileSystem.get(directory.toUri(), new Configuration());
+    fs.mkdirs(directory);
+    String suffix = "." + UUID.randomUUID().toString() + ".tmp";
+    Path data = new Path(directory, key + DATA);
+    Path metadata = new Path(directory, key + METADATA);
+    Path tmpData = new Path(directory, "." + key + DATA + suffix);
+    Path tmpMetadata = new Path(directory, "." + key + METADATA + suffix);
+
+    FileSystem sourceFs = FileSystem.get(source.toUri(), new Configuration());
+    try {
+      if (!FileUtil.copy(sourceFs, source, fs, tmpData, false, true, new Configuration())) {
+        throw new IOException(String.format("Failed to copy %s to the cache.", source));
+      }
+      try (FSDataOutputStream out = fs.create(tmpMetadata, true);
+           Writer writer = new OutputStreamWriter(out, Charsets.UTF_8)) {
+        GSON.toJson(new Entry(url, System.currentTimeMillis(), headers, profile), writer);
+      }
+      // the data is moved in last, so that an entry is only found once it is complete
+      fs.delete(data, false);
+      replace(fs, tmpMetadata, metadata);
+      replace(fs, tmpData, data);
+    } finally {
+      fs.delete(tmpData, false);
+      fs.delete(tmpMetadata, false);
+    }
+    return evict(fs);
+  }
+
+  private void replace(FileSystem fs, Path source, Path target) throws IOException {
+    fs.delete(target, false);
+    if (!fs.rename(source, target)) {
+      throw new IOException(String.format("Failed to rename %s to %s.", source, target));
+    }
+  }
+
+  private int evict(FileSystem fs) throws IOException {
+    List<FileStatus> entries = new ArrayList<>();
+    long totalSize = 0;
+    for (FileStatus status : fs.listStatus(directory)) {
+      String name = status.getPath().getName();
+      if (status.isFile() && !name.startsWith(".") && name.endsWith(DATA)) {
+        entries.add(status);
+        totalSize += status.getLen();
+      }
+    }
+    Collections.sort(entries, new Comparator<FileStatus>() {
+      @Override
+      public int compare(FileStatus a, FileStatus b) {
+        return Long.compare(a.getModificationTime(), b.getModificationTime());
+      }
+    });
+
+    int evicted = 0;
+    long now = System.currentTimeMillis();
+    for (FileStatus status : entries) {
+      // an entry that was not used within the ttl was fetched before that, so it has expired
+      boolean expired = now - status.getModificationTime() >= ttlMillis;
+      if (totalSize <= maxSize && !expired) {
+        continue;
+      }
+      String name = status.getPath().getName();
+      Path metadata = new Path(directory, name.substring(0, name.length() - DATA.length()) + METADATA);
+      fs.delete(metadata, false);
+      if (fs.delete(status.getPath(), false)) {
+        LOG.debug("Evicted cache entry {}.", name);
+        totalSize -= status.getLen();
+        evicted++;
+      }
+    }
+    return evicted;
+  }
+
+  /**
+   * Metadata of a cache entry.
+   */
+  static final class Entry {
+    private final String url;
+    private final long fetchTime;
+    private final String headers;
+    private final ProfilingOutputStream.Profile profile;
+
+    private Entry(String url, long fetchTime, @Nullable String headers,
+                  @Nullable ProfilingOutputStream.Profile profile) {
+      this.url = url;
+      this.fetchTime = fetchTime;
+      this.headers = headers;
+      this.profile = profile;
+    }
+
+    /**
+     * Returns the response headers as JSON.
+     */
+    String getHeaders() {
+      return headers == null ? "{}" : headers;
+    }
+
+    /**
+     * Returns the profile of the data, or {@code null} for entries cached without one.
+     */
+    @Nullable
+    ProfilingOutputStream.Profile getProfile() {
+      return profile;
+    }
+  }
+}
@@ -0,0 +1,753 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.batch.http.to.hdfs;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import javax.annotation.Nullable;
+
+/**
+ * Output stream that writes only the records that were inserted or changed since the previous run.
+ *
+ * Records are the lines written to the stream. Each record is identified by the values of its key fields, and the
+ * previous run left an index of the hash of every key with the hash of its record, sorted by key hash. Records are
+ * spilled to local partitions by key hash while they are written, so that once the stream is finished each partition
+ * is compared with the same key range of the previous index. Only one partition is in memory at a time. A partition
+ * that holds too many records of this run or of the previous index is split by the next bits of the key hash when
+ * the stream is finished, so memory stays bounded for very large snapshots, including the first one and those that
+ * grow. Keys of the previous index that were not seen again are counted as deleted.
+ *
+ * A key that is written more than once only keeps its last record, the others are dropped and counted as
+ * duplicates.
+ *
+ * The new index is written under a temporary name and only replaces the previous one on {@link #commit()}, once the
+ * delta itself was written, so a failed run is compared against the same previous index again.
+ */
+final class DeltaOutputStream extends OutputStream {
+  private static final Logger LOG = LoggerFactory.getLogger(DeltaOutputStream.class);
+  private static final HashFunction HASH = Hashing.murmur3_128();
+  private static final int MAGIC = 0x48324844;
+  private static final int VERSION = 1;
+  static final long PARTITION_ENTRIES = 1 << 20;
+  private static final int MIN_PARTITION_BITS = 4;
+  private static final int MAX_PARTITION_BITS = 8;
+  private static final int SPLIT_BITS = 4;
+  private static final int MAX_SPLIT_PARTITION_BITS = 32;
+  private static final char KEY_SEPARATOR = '\u0001';
+
+  private final OutputStream out;
+  private final List<String[]> keyPaths;
+  private final List<String> keyColumns;
+  private final char delimiter;
+  private final boolean keepKeys;
+  private final FileSystem fs;
+  private final Path index;
+  private final Path newIndex;
+  private final Path deletedKeys;
+  private final JsonParser parser;
+  private final ByteArrayOutputStream line;
+  private final File spillDirectory;
+  private final long partitionEntries;
+  private final int partitionBits;
+  private final DataOutputStream[] spills;
+  private final long[] spillCounts;
+
+  private DataInputStream previous;
+  private boolean previousKeys;
+  private long previousCount;
+  private long previousRemaining;
+  private boolean hasPending;
+  private long pendingKey;
+  private long pendingContent;
+  private String pendingName;
+
+  private boolean header;
+  private int[] keyIndexes;
+  private long spilled;
+  private long inserted;
+  private long changed;
+  private long unchanged;
+  private long deleted;
+  private long duplicates;
+  private long unkeyed;
+  private boolean finished;
+
+  DeltaOutputStream(OutputStream out, HTTPToHDFSActionConfig config) throws IOException {
+    this(out, config, PARTITION_ENTRIES);
+  }
+
+  /**
+   * Creates a delta stream whose partitions hold about the given number of entries.
+   */
+  DeltaOutputStream(OutputStream out, HTTPToHDFSActionConfig config, long partitionEntries) throws IOException {
+    this.out = out;
+    this.partitionEntries = partitionEntries;
+    this.keyPaths = new ArrayList<>();
+    this.keyColumns = config.getDeltaKeyFields();
+    for (String field : keyColumns) {
+      keyPaths.add(field.split("\\."));
+    }
+    this.delimiter = config.getCsvDelimiter();
+    this.header = config.getCsvHeader();
+    if (!header) {
+      keyIndexes = parseIndexes(keyColumns);
+    }
+    this.keepKeys = config.getDeltaDeletedKeysPath() != null;
+    this.index = new Path(config.getDeltaIndexPath());
+    String name = index.getName();
+    this.newIndex = new Path(index.getParent(), (name.startsWith(".") ? "" : ".") + name + ".tmp");
+    this.deletedKeys = keepKeys ? new Path(config.getDeltaDeletedKeysPath()) : null;
+    this.fs = FileSystem.get(index.toUri(), new Configuration());
+    this.parser = new JsonParser();
+    this.line = new ByteArrayOutputStream();
+
+    if (fs.exists(index)) {
+      previous = new DataInputStream(new BufferedInputStream(fs.open(index)));
+      if (previous.readInt() != MAGIC || previous.readInt() != VERSION) {
+        previous.close();
+        throw new IOException(String.format("%s is not a delta index.", index));
+      }
+      previousKeys = previous.readBoolean();
+      previousCount = previous.readLong();
+      previousRemaining = previousCount;
+    } else {
+      LOG.info("There is no delta index at {}, every record is written.", index);
+    }
+    long partitions = (previousCount + partitionEntries - 1) / partitionEntries;
+    int bits = MIN_PARTITION_BITS;
+    while (bits < MAX_PARTITION_BITS && (1L << bits) < partitions) {
+      bits++;
+    }
+    this.partitionBits = bits;
+    this.spills = new DataOutputStream[1 << bits];
+    this.spillCounts = new long[1 << bits];
+    this.spillDirectory = Files.createTempDirectory("delta").toFile();
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    if (b == '\n') {
+      endLine();
+    } else {
+      line.write(b);
+    }
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    int start = off;
+    for (int i = off; i < off + len; i++) {
+      if (b[i] == '\n') {
+        line.write(b, start, i - start);
+        endLine();
+        start = i + 1;
+      }
+    }
+    line.write(b, start, off + len - start);
+  }
+
+  /**
+   * Compares the written records with the previous index, writes the inserted and changed records to the underlying
+   * stream and writes the new index. The underlying stream is not closed.
+   */
+  void finish() throws IOException {
+    if (finished) {
+      return;
+    }
+    finished = true;
+    if (line.size() > 0) {
+      endLine();
+    }
+    for (DataOutputStream spill : spills) {
+      if (spill != null) {
+        spill.close();
+      }
+    }
+    if (keepKeys && previous != null && !previousKeys) {
+      LOG.warn("The delta index {} has no keys, deleted keys are only listed from the next run on.", index);
+    }
+
+    try (DataOutputStream indexOut = new DataOutputStream(new BufferedOutputStream(fs.create(newIndex, true)));
+         Writer deletedOut = deletedKeys == null ? null : new BufferedWriter(
+           new OutputStreamWriter(fs.create(deletedKeys, true), Charsets.UTF_8))) {
+      indexOut.writeInt(MAGIC);
+      indexOut.writeInt(VERSION);
+      indexOut.writeBoolean(keepKeys);
+      // the entries are only known once the duplicate keys were dropped, so the count is an upper bound of them
+      indexOut.writeLong(spilled);
+      for (int partition = 0; partition < spills.length; partition++) {
+        File file = spills[partition] == null ? null : new File(spillDirectory, String.valueOf(partition));
+        mergePartition(partition, partitionBits, file, spillCounts[partition], indexOut, deletedOut);
+      }
+    }
+    LOG.info("Wrote {} inserted and {} changed records, {} records were unchanged and {} were deleted.", inserted,
+             changed, unchanged, deleted);
+    if (duplicates > 0) {
+      LOG.warn("Dropped {} records whose key was written again later, only the last record of a key is kept.",
+               duplicates);
+    }
+    if (unkeyed > 0) {
+      LOG.warn("Wrote {} records without all key fields, they are not part of the delta index.", unkeyed);
+    }
+  }
+
+  /**
+   * Replaces the previous index with the new one, once the delta was written.
+   */
+  void commit() throws IOException {
+    // a failure between the delete and the rename loses the index, so the next run writes every record
+    fs.delete(index, false);
+    if (!fs.rename(newIndex, index)) {
+      throw new IOException(String.format("Failed to rename %s to %s.", newIndex, index));
+    }
+  }
+
+  long getInserted() {
+    return inserted;
+  }
+
+  long getChanged() {
+    return changed;
+  }
+
+  long getUnchanged() {
+    return unchanged;
+  }
+
+  long getDeleted() {
+    return deleted;
+  }
+
+  long getDuplicates() {
+    return duplicates;
+  }
+
+  /**
+   * Deletes the spilled records. The underlying stream is not closed.
+   */
+  @Override
+  public void close() throws IOException {
+    for (DataOutputStream spill : spills) {
+      if (spill != null) {
+        spill.close();
+      }
+    }
+    File[] files = spillDirectory.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        if (!file.delete()) {
+          LOG.warn("Failed to delete {}.", file);
+        }
+      }
+    }
+    if (!spillDirectory.delete()) {
+      LOG.warn("Failed to delete {}.", spillDirectory);
+    }
+    if (previous != null) {
+      previous.close();
+      previous = null;
+    }
+  }
+
+  private void endLine() throws IOException {
+    byte[] bytes = line.toByteArray();
+    line.reset();
+    int length = bytes.length > 0 && bytes[bytes.length - 1] == '\r' ? bytes.length - 1 : bytes.length;
+    String record = new String(bytes, 0, length, Charsets.UTF_8);
+    if (record.trim().isEmpty()) {
+      return;
+    }
+    if (header && !record.trim().startsWith("{")) {
+      header = false;
+      keyIndexes = resolveIndexes(RecordFilter.split(record, delimiter));
+      writeRecord(bytes, length);
+      return;
+    }
+    String key = key(record);
+    if (key == null) {
+      unkeyed++;
+      writeRecord(bytes, length);
+      return;
+    }
+    long keyHash = HASH.hashString(key, Charsets.UTF_8).asLong();
+    int partition = partition(keyHash);
+    DataOutputStream spill = spills[partition];
+    if (spill == null) {
+      spill = new DataOutputStream(new BufferedOutputStream(
+        new FileOutputStream(new File(spillDirectory, String.valueOf(partition)))));
+      spills[partition] = spill;
+    }
+    spill.writeLong(keyHash);
+    spill.writeLong(HASH.hashBytes(bytes, 0, length).asLong());
+    if (keepKeys) {
+      writeString(spill, key);
+    }
+    spill.writeInt(length);
+    spill.write(bytes, 0, length);
+    spillCounts[partition]++;
+    spilled++;
+  }
+
+  private void writeRecord(byte[] bytes, int length) throws IOException {
+    out.write(bytes, 0, length);
+    out.write('\n');
+  }
+
+  /**
+   * Returns the key of a record, or {@code null} if the record does not have all key fields.
+   *
+   * @throws IllegalArgumentException if the record is delimited, has no header and the key fields are not indexes
+   */
+  @Nullable
+  private String key(String record) {
+    List<String> values = new ArrayList<>(keyPaths.size());
+    if (record.trim().startsWith("{")) {
+      JsonObject object;
+      try {
+        JsonElement element = parser.parse(record);
+        if (!element.isJsonObject()) {
+          return null;
+        }
+        object = element.getAsJsonObject();
+      } catch (JsonParseException e) {
+        return null;
+      }
+      for (String[] path : keyPaths) {
+        JsonElement value = RecordFilter.get(object, path);
+        if (value == null || value.isJsonNull()) {
+          return null;
+        }
+        values.add(value.isJsonPrimitive() ? value.getAsString() : value.toString());
+      }
+    } else {
+      if (keyIndexes == null) {
+        // writing every record as unkeyed would silently turn the delta into the whole snapshot
+        throw new IllegalArgumentException(String.format(
+          "Key fields '%s' must be 0-based column indexes, since the CSV data has no header.",
+          Joiner.on(',').join(keyColumns)));
+      }
+      List<String> tokens = RecordFilter.split(record, delimiter);
+      for (int index : keyIndexes) {
+        if (index >= tokens.size()) {
+          return null;
+        }
+        values.add(RecordFilter.unquote(tokens.get(index)));
+      }
+    }
+    return Joiner.on(KEY_SEPARATOR).join(values);
+  }
+
+  private int partition(long keyHash) {
+    return (int) prefix(keyHash, partitionBits);
+  }
+
+  /**
+   * Returns the partition of a key hash among the partitions of the given number of bits.
+   */
+  private static long prefix(long keyHash, int bits) {
+    return keyHash >>> (Long.SIZE - bits);
+  }
+
+  /**
+   * Compares a partition, the key hashes starting with the given prefix of bits, with the previous index and writes
+   * its entries of the new index. A partition that holds too many entries to compare in memory is split by the next
+   * bits of the key hash first. Partitions must be merged in order, since the index is read once from start to end.
+   *
+   * @param file the spilled records of the partition, or {@code null} if there are none
+   * @param count the number of spilled records
+   */
+  private void mergePartition(long prefix, int bits, @Nullable File file, long count, DataOutputStream indexOut,
+                              @Nullable Writer deletedOut) throws IOException {
+    // the key hashes are uniform, so the previous index holds about its share of the partitions
+    if (bits + SPLIT_BITS <= MAX_SPLIT_PARTITION_BITS && count + (previousCount >>> bits) > partitionEntries) {
+      File[] parts = new File[1 << SPLIT_BITS];
+      long[] counts = new long[1 << SPLIT_BITS];
+      if (file != null) {
+        split(file, count, bits, parts, counts);
+      }
+      for (int i = 0; i < parts.length; i++) {
+        mergePartition((prefix << SPLIT_BITS) | i, bits + SPLIT_BITS, parts[i], counts[i], indexOut, deletedOut);
+      }
+      return;
+    }
+
+    Entries old = readPartition(prefix, bits);
+    Entries current = compare(file, (int) count, old);
+    for (int i = old.seen.nextClearBit(0); i < old.size; i = old.seen.nextClearBit(i + 1)) {
+      deleted++;
+      if (deletedOut != null && old.names != null) {
+        deletedOut.write(old.names[i]);
+        deletedOut.write('\n');
+      }
+    }
+    current.writeTo(indexOut, keepKeys);
+  }
+
+  /**
+   * Splits the spilled records of a partition of the given bits into the parts of the next bits of the key hash.
+   */
+  private void split(File file, long count, int bits, File[] parts, long[] counts) throws IOException {
+    DataOutputStream[] outs = new DataOutputStream[parts.length];
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      byte[] buffer = new byte[0];
+      for (long i = 0; i < count; i++) {
+        long keyHash = in.readLong();
+        long contentHash = in.readLong();
+        String key = keepKeys ? readString(in) : null;
+        int length = in.readInt();
+        if (buffer.length < length) {
+          buffer = new byte[length];
+        }
+        in.readFully(buffer, 0, length);
+
+        int part = (int) prefix(keyHash << bits, SPLIT_BITS);
+        if (outs[part] == null) {
+          parts[part] = new File(spillDirectory, file.getName() + "-" + part);
+          outs[part] = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(parts[part])));
+        }
+        outs[part].writeLong(keyHash);
+        outs[part].writeLong(contentHash);
+        if (key != null) {
+          writeString(outs[part], key);
+        }
+        outs[part].writeInt(length);
+        outs[part].write(buffer, 0, length);
+        counts[part]++;
+      }
+    } finally {
+      for (DataOutputStream out : outs) {
+        if (out != null) {
+          out.close();
+        }
+      }
+    }
+    if (!file.delete()) {
+      LOG.warn("Failed to delete {}.", file);
+    }
+  }
+
+  /**
+   * Writes the inserted and changed records of a partition and returns the sorted entries of the new index for it.
+   * The entries of the previous index that were seen are marked in the given entries.
+   *
+   * The spilled records are read twice. The first pass finds the last record of every key, so that the second one
+   * only compares and writes that record.
+   */
+  private Entries compare(@Nullable File file, int count, Entries old) throws IOException {
+    Entries current = new Entries(keepKeys);
+    if (file == null) {
+      return current;
+    }
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      for (int i = 0; i < count; i++) {
+        long keyHash = in.readLong();
+        long contentHash = in.readLong();
+        String key = keepKeys ? readString(in) : null;
+        ByteStreams.skipFully(in, in.readInt());
+        current.add(keyHash, contentHash, key);
+      }
+    }
+    BitSet dropped = current.sortUnique();
+    duplicates += dropped.cardinality();
+
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      byte[] buffer = new byte[0];
+      for (int i = 0; i < count; i++) {
+        long keyHash = in.readLong();
+        long contentHash = in.readLong();
+        if (keepKeys) {
+          readString(in);
+        }
+        int length = in.readInt();
+        if (buffer.length < length) {
+          buffer = new byte[length];
+        }
+        in.readFully(buffer, 0, length);
+        if (dropped.get(i)) {
+          continue;
+        }
+
+        int found = old.find(keyHash);
+        if (found < 0) {
+          inserted++;
+          writeRecord(buffer, length);
+        } else if (old.contents[found] != contentHash) {
+          old.seen.set(found);
+          changed++;
+          writeRecord(buffer, length);
+        } else {
+          old.seen.set(found);
+          unchanged++;
+        }
+      }
+    }
+    if (!file.delete()) {
+      LOG.warn("Failed to delete {}.", file);
+    }
+    return current;
+  }
+
+  /**
+   * Reads the entries of the previous index in the key range of the given partition.
+   */
+  private Entries readPartition(long prefix, int bits) throws IOException {
+    // keys of the previous index are only kept if deleted keys are listed
+    Entries entries = new Entries(previousKeys && keepKeys);
+    while (hasPending || previousRemaining > 0) {
+      if (!hasPending) {
+        try {
+          pendingKey = previous.readLong();
+        } catch (EOFException e) {
+          // the count is that of the records of the previous run, duplicate keys left fewer entries
+          previousRemaining = 0;
+          break;
+        }
+        pendingContent = previous.readLong();
+        pendingName = previousKeys ? readString(previous) : null;
+        previousRemaining--;
+        hasPending = true;
+      }
+      long pendingPrefix = prefix(pendingKey, bits);
+      if (pendingPrefix < prefix) {
+        throw new IOException(String.format("Delta index %s is not sorted.", index));
+      }
+      if (pendingPrefix > prefix) {
+        break;
+      }
+      entries.add(pendingKey, pendingContent, pendingName);
+      hasPending = false;
+    }
+    return entries;
+  }
+
+  private int[] resolveIndexes(List<String> headerTokens) throws IOException {
+    int[] indexes = new int[keyColumns.size()];
+    for (int i = 0; i < indexes.length; i++) {
+      indexes[i] = -1;
+      for (int j = 0; j < headerTokens.size(); j++) {
+        if (RecordFilter.unquote(headerTokens.get(j)).equals(keyColumns.get(i))) {
+          indexes[i] = j;
+          break;
+        }
+      }
+      if (indexes[i] < 0) {
+        throw new IOException(String.format("Key column '%s' is not present in header '%s'.", keyColumns.get(i),
+                                            headerTokens));
+      }
+    }
+    return indexes;
+  }
+
+  /**
+   * Parses the key columns of delimited records without a header, or returns {@code null} if they are not indexes,
+   * in which case only JSON records have keys and a delimited record fails the run.
+   */
+  @Nullable
+  private static int[] parseIndexes(List<String> columns) {
+    int[] indexes = new int[columns.size()];
+    try {
+      for (int i = 0; i < indexes.length; i++) {
+        indexes[i] = Integer.parseInt(columns.get(i).trim());
+      }
+    } catch (NumberFormatException e) {
+      return null;
+    }
+    return indexes;
+  }
+
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    byte[] bytes = value.getBytes(Charsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return new String(bytes, Charsets.UTF_8);
+  }
+
+  /**
+   * Index entries of one partition, as parallel arrays of key hashes, record hashes, the positions they were added
+   * at and optionally keys.
+   */
+  private static final class Entries {
+    private long[] keys;
+    private long[] contents;
+    private int[] positions;
+    private String[] names;
+    private int size;
+    private final BitSet seen;
+
+    private Entries(boolean withNames) {
+      this.keys = new long[16];
+      this.contents = new long[16];
+      this.positions = new int[16];
+      this.names = withNames ? new String[16] : null;
+      this.seen = new BitSet();
+    }
+
+    private void add(long key, long content, @Nullable String name) {
+      if (size == keys.length) {
+        keys = Arrays.copyOf(keys, size * 2);
+        contents = Arrays.copyOf(contents, size * 2);
+        positions = Arrays.copyOf(positions, size * 2);
+        if (names != null) {
+          names = Arrays.copyOf(names, size * 2);
+        }
+      }
+      keys[size] = key;
+      contents[size] = content;
+      positions[size] = size;
+      if (names != null) {
+        names[size] = name;
+      }
+      size++;
+    }
+
+    /**
+     * Sorts the entries by key hash and keeps only the last added entry of every key hash.
+     *
+     * @return the positions of the entries that were removed
+     */
+    private BitSet sortUnique() {
+      sort(0, size);
+      BitSet removed = new BitSet();
+      int kept = 0;
+      for (int i = 0; i < size; i++) {
+        // equal keys are sorted by position, so the last one of a run is the last one added
+        if (i + 1 < size && keys[i + 1] == keys[i]) {
+          removed.set(positions[i]);
+          continue;
+        }
+        keys[kept] = keys[i];
+        contents[kept] = contents[i];
+        positions[kept] = positions[i];
+        if (names != null) {
+          names[kept] = names[i];
+        }
+        kept++;
+      }
+      size = kept;
+      return removed;
+    }
+
+    /**
+     * Returns the position of the key hash, or a negative number if it is not present. The entries must be sorted.
+     */
+    private int find(long key) {
+      return Arrays.binarySearch(keys, 0, size, key);
+    }
+
+    /**
+     * Sorts the entries by key hash, and entries of the same key hash by position. All entries of a partition have
+     * the same sign, so signed order is the unsigned order the index is sorted in.
+     */
+    private void sort(int from, int to) {
+      while (to - from > 1) {
+        int middle = (from + to) >>> 1;
+        long pivot = keys[middle];
+        int pivotPosition = positions[middle];
+        int i = from;
+        int j = to - 1;
+        while (i <= j) {
+          while (compare(i, pivot, pivotPosition) < 0) {
+            i++;
+          }
+          while (compare(j, pivot, pivotPosition) > 0) {
+            j--;
+          }
+          if (i <= j) {
+            swap(i++, j--);
+          }
+        }
+        // recurse into the smaller side only, so the stack depth stays logarithmic
+        if (j + 1 - from < to - i) {
+          sort(from, j + 1);
+          from = i;
+        } else {
+          sort(i, to);
+          to = j + 1;
+        }
+      }
+    }
+
+    private int compare(int i, long key, int position) {
+      int result = Long.compare(keys[i], key);
+      return result == 0 ? Integer.compare(positions[i], position) : result;
+    }
+
+    private void swap(int i, int j) {
+      long key = keys[i];
+      keys[i] = keys[j];
+      keys[j] = key;
+      long content = contents[i];
+      contents[i] = contents[j];
+      contents[j] = content;
+      int position = positions[i];
+      positions[i] = positions[j];
+      positions[j] = position;
+      if (names != null) {
+        String name = names[i];
+        names[i] = names[j];
+        names[j] = name;
+      }
+    }
+
+    private void writeTo(DataOutputStream out, boolean withNames) throws IOException {
+      for (int i = 0; i < size; i++) {
+        out.writeLong(keys[i]);
+        out.writeLong(contents[i]);
+        if (withNames) {
+          writeString(out, names[i]);
+        }
+      }
+    }
+  }
+}
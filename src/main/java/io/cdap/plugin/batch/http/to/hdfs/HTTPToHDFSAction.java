@@ -24,35 +24,38 @@ import io.cdap.cdap.api.annotation.Name;
 import io.cdap.cdap.api.annotation.Plugin;
 import io.cdap.cdap.etl.api.FailureCollector;
 import io.cdap.cdap.etl.api.PipelineConfigurer;
+import io.cdap.cdap.etl.api.StageMetrics;
 import io.cdap.cdap.etl.api.action.Action;
 import io.cdap.cdap.etl.api.action.ActionContext;
+import io.cdap.cdap.etl.api.validation.ValidationException;
 import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FileUtil;
 import org.apache.hadoop.fs.Path;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.net.HttpURLConnection;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
 import java.net.MalformedURLException;
 import java.net.ProtocolException;
-import java.net.URL;
-import java.security.KeyManagementException;
-import java.security.NoSuchAlgorithmException;
-import java.security.cert.X509Certificate;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import javax.net.ssl.HostnameVerifier;
-import javax.net.ssl.HttpsURLConnection;
-import javax.net.ssl.SSLContext;
-import javax.net.ssl.SSLSession;
-import javax.net.ssl.TrustManager;
-import javax.net.ssl.X509TrustManager;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
 
 /**
  * Action to fetch data from an external http endpoint and create a file in HDFS.
@@ -63,9 +66,13 @@ import javax.net.ssl.X509TrustManager;
 @Description("Action to fetch data from an external http endpoint and create a file in HDFS.")
 public class HTTPToHDFSAction extends Action {
   private static final Logger LOG = LoggerFactory.getLogger(HTTPToHDFSAction.class);
-  private static final int BUFFER_SIZE = 4096;
+  private static final int BUFFER_SIZE = 8192;
+  private static final int AUTO_PARALLEL_RANGES = 4;
+  private static final int RANGE_CHUNK_SIZE = 4 * 1024 * 1024;
 
   private final HTTPToHDFSActionConfig config;
+  private TLSContext tlsContext;
+  private OAuth2TokenProvider tokenProvider;
 
   public HTTPToHDFSAction(HTTPToHDFSActionConfig config) {
     this.config = config;
@@ -77,116 +84,612 @@ public class HTTPToHDFSAction extends Action {
     config.validate(failureCollector);
   }
 
+  /**
+   * Plugin endpoint that fetches the start of the response and describes its data, so that a wrong output format or
+   * charset is found at design time instead of after a full run. Nothing is written to HDFS. The request is
+   * validated like the config of a run, and an invalid request or a url that cannot be fetched is answered with the
+   * failures.
+   */
+  @javax.ws.rs.Path("preview")
+  public Sampler.Sample preview(HTTPToHDFSActionConfig request) {
+    PreviewFailureCollector failureCollector = new PreviewFailureCollector();
+    try {
+      request.validatePreview(failureCollector);
+      failureCollector.getOrThrowException();
+      TLSContext requestTLSContext = TLSContext.create(request);
+      ConnectionFactory connectionFactory = new ConnectionFactory(
+        request, requestTLSContext, OAuth2TokenProvider.create(request, requestTLSContext));
+      return new Sampler(request, connectionFactory).sample();
+    } catch (ValidationException e) {
+      // the failures are in the collector
+    } catch (IOException | GeneralSecurityException e) {
+      failureCollector.addFailure(String.format("Error fetching '%s': %s", request.getUrl(), e.getMessage()),
+                                  "Check that the URL is reachable with the request and TLS settings.")
+        .withConfigProperty(HTTPToHDFSActionConfig.URL);
+    }
+    return new Sampler.Sample(request.getUrl(), failureCollector.getValidationFailures());
+  }
+
   @Override
   public void run(ActionContext context) throws Exception {
     FailureCollector failureCollector = context.getFailureCollector();
     config.validate(failureCollector);
     failureCollector.getOrThrowException();
+    ContentCache cache = ContentCache.create(config);
+    if (cache != null && readFromCache(context, cache)) {
+      return;
+    }
+    HostStats hostStats = HostStats.create(config);
+    ConnectionFactory connectionFactory = new ConnectionFactory(config, getTLSContext(), getTokenProvider(),
+                                                                hostStats);
+    try {
+      List<String> urls = config.getUrls();
+      if (config.getPollingWindow() > 0) {
+        poll(context, connectionFactory);
+        return;
+      }
+      if (config.getStreamingWindow() > 0) {
+        stream(context, connectionFactory);
+        return;
+      }
 
-    int retries = 0;
-    Exception exception = null;
-    do {
-      HttpURLConnection conn = null;
-      Map<String, String> headers = config.getRequestHeadersMap();
-      try {
-        URL url = new URL(config.getUrl());
-        conn = (HttpURLConnection) url.openConnection();
-        if (conn instanceof HttpsURLConnection) {
-          //Disable SSLv3
-          System.setProperty("https.protocols", "TLSv1,TLSv1.1,TLSv1.2");
-          if (config.getDisableSSLValidation()) {
-            disableSSLValidation();
+      AtomicInteger attempts = new AtomicInteger();
+      Exception exception = null;
+      ProfilingOutputStream.Profile profile = null;
+      try (TransferWatchdog watchdog = new TransferWatchdog(config.getFirstByteTimeout(), config.getMinThroughput(),
+                                                            config.getThroughputWindow(),
+                                                            config.getTransferDeadline())) {
+        watchdog.start();
+        do {
+          try {
+            profile = fetch(context, connectionFactory, hostStats, urls, watchdog, attempts);
+            exception = null;
+            break;
+          } catch (MalformedURLException | ProtocolException e) {
+            throw new IllegalStateException("Error opening url connection. Reason: " + e.getMessage(), e);
+          } catch (IllegalArgumentException e) {
+            // settings that do not fit the data, such as a missing CSV column, fail the same way on every attempt
+            throw e;
+          } catch (Exception e) {
+            LOG.warn("Error making {} request to urls {} with headers {}.", config.getMethod(), urls,
+                     config.getRequestHeadersMap());
+            exception = e;
+          }
+          if (watchdog.isDeadlineExceeded()) {
+            LOG.warn("Not retrying because the transfer deadline of {} seconds has passed.",
+                     config.getTransferDeadline());
+            break;
           }
+        } while (attempts.incrementAndGet() < config.getNumRetries());
+      }
+      if (exception != null) {
+        throw exception;
+      }
+      if (cache != null) {
+        writeToCache(context, cache, profile);
+      }
+    } finally {
+      if (hostStats != null) {
+        hostStats.save();
+      }
+    }
+  }
+
+  private boolean readFromCache(ActionContext context, ContentCache cache) throws IOException {
+    ContentCache.Entry entry;
+    try {
+      entry = cache.get(new Path(config.getHdfsFilePath()));
+    } catch (IOException e) {
+      LOG.warn("Error reading from the cache in {}, fetching {} instead.", config.getCacheDirectory(),
+               config.getUrl(), e);
+      entry = null;
+    }
+    if (entry == null) {
+      context.getMetrics().count("cache.misses", 1);
+      return false;
+    }
+    context.getMetrics().count("cache.hits", 1);
+    copyToAdditionalDestinations();
+    context.getArguments().set(config.getOutputPath(), config.getHdfsFilePath());
+    context.getArguments().set(config.getResponseHeaders(), entry.getHeaders());
+    context.getArguments().set(config.getSourceRanges(), "[]");
+    if (entry.getProfile() != null) {
+      publishProfile(context, entry.getProfile());
+    }
+    return true;
+  }
+
+  private void writeToCache(ActionContext context, ContentCache cache, ProfilingOutputStream.Profile profile) {
+    try {
+      int evicted = cache.put(new Path(config.getHdfsFilePath()), config.getUrl(),
+                              context.getArguments().get(config.getResponseHeaders()), profile);
+      count(context.getMetrics(), "cache.evictions", evicted);
+    } catch (IOException e) {
+      // the data was written, so a failure to cache it only costs a fetch in a later run
+      LOG.warn("Error adding {} to the cache in {}.", config.getUrl(), config.getCacheDirectory(), e);
+    }
+  }
+
+  /**
+   * Publishes the profile of the written data as a runtime argument and as a sidecar file next to the data.
+   */
+  private void publishProfile(ActionContext context, ProfilingOutputStream.Profile profile) throws IOException {
+    String json = new Gson().toJson(profile);
+    context.getArguments().set(config.getResponseProfile(), json);
+    Path profilePath = new Path(config.getProfilePath());
+    FileSystem fs = FileSystem.get(profilePath.toUri(), new Configuration());
+    try (Writer writer = new OutputStreamWriter(fs.create(profilePath, true), StandardCharsets.UTF_8)) {
+      writer.write(json);
+    }
+    LOG.info("Wrote {} bytes in {} records of shape {}, the longest record is {} bytes.", profile.getBytes(),
+             profile.getRecords(), profile.getShape(), profile.getMaxRecordLength());
+  }
+
+  /**
+   * Fetches the data and writes it to HDFS.
+   *
+   * @return the profile of the written data, or {@code null} if the data was packed
+   */
+  @Nullable
+  private ProfilingOutputStream.Profile fetch(ActionContext context, ConnectionFactory connectionFactory,
+                                              @Nullable HostStats hostStats, List<String> urls,
+                                              TransferWatchdog watchdog, AtomicInteger attempts) throws Exception {
+    List<String> rankedUrls = MirroredInputStream.rank(connectionFactory, urls, config.getMirrorProbeTimeout());
+    if (config.isPacked()) {
+      fetchPacked(context, connectionFactory, rankedUrls, watchdog, attempts);
+      return null;
+    }
+    RecordFilter recordFilter = RecordFilter.create(config);
+    Path file = new Path(config.getHdfsFilePath());
+    ProfilingOutputStream profiledStream;
+    DeltaOutputStream deltaStream = null;
+    HostStats.Strategy strategy = chooseStrategy(rankedUrls, hostStats);
+    long started = System.currentTimeMillis();
+    try (ResponseInputStream inputStream = openResponse(connectionFactory, rankedUrls, strategy, watchdog, attempts);
+         InputStream source = readAhead(inputStream);
+         FileSystem fs = FileSystem.get(file.toUri(), new Configuration());
+         OutputStream outputStream = createOutput(fs, file)
+    ) {
+      profiledStream = new ProfilingOutputStream(outputStream);
+      if (config.getDeltaKeyFields().isEmpty()) {
+        copy(context, source, profiledStream, recordFilter);
+      } else {
+        try (DeltaOutputStream delta = new DeltaOutputStream(profiledStream, config)) {
+          copy(context, source, delta, recordFilter);
+          delta.finish();
+          deltaStream = delta;
         }
-        conn.setRequestMethod(config.getMethod().toUpperCase());
-        conn.setConnectTimeout(config.getConnectTimeout());
-        conn.setReadTimeout(config.getReadTimeout());
-        conn.setInstanceFollowRedirects(config.getFollowRedirects());
-        for (Map.Entry<String, String> propertyEntry : headers.entrySet()) {
-          conn.addRequestProperty(propertyEntry.getKey(), propertyEntry.getValue());
+      }
+      recordTransfer(hostStats, strategy, inputStream.getServedRanges(), System.currentTimeMillis() - started);
+      context.getArguments().set(config.getOutputPath(), config.getHdfsFilePath());
+      context.getArguments().set(config.getResponseHeaders(),
+                                 new Gson().toJson(flattenHeaders(inputStream.getHeaderFields())));
+      context.getArguments().set(config.getSourceRanges(), new Gson().toJson(inputStream.getServedRanges()));
+      for (MirroredInputStream.ServedRange range : inputStream.getServedRanges()) {
+        LOG.info("Bytes {} to {} were read from {}.", range.getStart(), range.getEnd(), range.getUrl());
+      }
+      if (outputStream instanceof TeeOutputStream) {
+        // the additional destinations are only written in place once the whole response was written to them
+        ((TeeOutputStream) outputStream).commit();
+      }
+    }
+    if (deltaStream != null) {
+      // the index of this run is only used by the next run once the delta it describes was written
+      deltaStream.commit();
+      StageMetrics metrics = context.getMetrics();
+      count(metrics, "delta.inserted", deltaStream.getInserted());
+      count(metrics, "delta.changed", deltaStream.getChanged());
+      count(metrics, "delta.unchanged", deltaStream.getUnchanged());
+      count(metrics, "delta.deleted", deltaStream.getDeleted());
+      count(metrics, "delta.duplicates", deltaStream.getDuplicates());
+    }
+    ProfilingOutputStream.Profile profile = profiledStream.getProfile();
+    publishProfile(context, profile);
+    return profile;
+  }
+
+  /**
+   * Picks how the response is downloaded. Configured parallel ranges and compression always win, the history of the
+   * host only decides what is not set.
+   */
+  private HostStats.Strategy chooseStrategy(List<String> rankedUrls, @Nullable HostStats hostStats) {
+    Integer parallelRanges = config.getParallelRanges();
+    Boolean compression = config.getRequestCompression();
+    if (parallelRanges != null && parallelRanges > 1) {
+      return HostStats.Strategy.PARALLEL;
+    }
+    if (Boolean.TRUE.equals(compression)) {
+      return HostStats.Strategy.COMPRESSED;
+    }
+    if (hostStats == null || !config.getAutoTune()) {
+      return HostStats.Strategy.SINGLE;
+    }
+    boolean compressionAllowed = compression == null;
+    for (String header : config.getRequestHeadersMap().keySet()) {
+      // the configured headers ask for an encoding, which must then be written as is
+      compressionAllowed &= !header.trim().equalsIgnoreCase("Accept-Encoding");
+    }
+    HostStats.History history = hostStats.get(rankedUrls.get(0));
+    // the body of other requests would be sent again with every range request
+    boolean parallelAllowed = parallelRanges == null && rankedUrls.size() == 1 &&
+      "GET".equalsIgnoreCase(config.getMethod());
+    HostStats.Strategy strategy = history.choose(parallelAllowed, compressionAllowed);
+    LOG.info("Downloading {} with strategy {}, the recent failure rate of the host is {}.", rankedUrls.get(0),
+             strategy, String.format("%.2f", history.getFailureRate()));
+    return strategy;
+  }
+
+  private ResponseInputStream openResponse(ConnectionFactory connectionFactory, List<String> rankedUrls,
+                                           HostStats.Strategy strategy, TransferWatchdog watchdog,
+                                           AtomicInteger attempts) throws IOException {
+    if (strategy == HostStats.Strategy.PARALLEL) {
+      Integer parallelRanges = config.getParallelRanges();
+      return new ParallelRangeInputStream(connectionFactory, rankedUrls.get(0),
+                                          parallelRanges == null ? AUTO_PARALLEL_RANGES : parallelRanges,
+                                          RANGE_CHUNK_SIZE, watchdog, config.getNumRetries());
+    }
+    return new MirroredInputStream(connectionFactory, rankedUrls, config.getMinMirrorThroughput(), watchdog,
+                                   attempts, config.getNumRetries(), strategy == HostStats.Strategy.COMPRESSED);
+  }
+
+  /**
+   * Records the throughput of a whole transfer in the history of the host that served its first bytes.
+   */
+  private static void recordTransfer(@Nullable HostStats hostStats, HostStats.Strategy strategy,
+                                     List<MirroredInputStream.ServedRange> servedRanges, long millis) {
+    if (hostStats == null || servedRanges.isEmpty()) {
+      return;
+    }
+    long bytes = 0;
+    for (MirroredInputStream.ServedRange range : servedRanges) {
+      bytes += range.getEnd() - range.getStart();
+    }
+    hostStats.get(servedRanges.get(0).getUrl()).recordTransfer(strategy, bytes, millis);
+  }
+
+  /**
+   * Creates the output file, teed to the additional destinations if there are any. The additional destinations are
+   * only written in place once the tee is committed.
+   */
+  private OutputStream createOutput(FileSystem fs, Path file) throws IOException {
+    if (config.getAdditionalDestinations().isEmpty()) {
+      return fs.create(file, true);
+    }
+    // the file is created right away, so that the run fails before reading the response if it cannot be
+    final OutputStream output = fs.create(file, true);
+    Map<String, TeeOutputStream.Destination> destinations = new LinkedHashMap<>();
+    destinations.put(file.toString(), new TeeOutputStream.Destination() {
+      @Override
+      public OutputStream create() {
+        return output;
+      }
+
+      @Override
+      public void commit() {
+        // written in place, like the output without additional destinations
+      }
+
+      @Override
+      public void abort() {
+        // the run fails, and the next attempt overwrites the file
+      }
+    });
+    for (String destination : config.getAdditionalDestinations()) {
+      destinations.put(destination, hiddenDestination(new Path(destination)));
+    }
+    return new TeeOutputStream(destinations, config.getDestinationBufferSize(), config.getDestinationQuorum());
+  }
+
+  /**
+   * Returns a destination that is written to a hidden file next to the path, which is renamed to the path on commit
+   * and deleted on abort, so that a failed run never leaves part of a response at the path.
+   */
+  private static TeeOutputStream.Destination hiddenDestination(final Path path) {
+    final Path tmp = new Path(path.getParent(), "." + path.getName() + "." + UUID.randomUUID() + ".tmp");
+    return new TeeOutputStream.Destination() {
+      @Override
+      public OutputStream create() throws IOException {
+        return getFileSystem().create(tmp, true);
+      }
+
+      @Override
+      public void commit() throws IOException {
+        FileSystem fs = getFileSystem();
+        // rename does not replace an existing file
+        fs.delete(path, false);
+        if (!fs.rename(tmp, path)) {
+          throw new IOException(String.format("Failed to rename %s to %s.", tmp, path));
         }
-        if (config.getBody() != null) {
-          conn.setDoOutput(true);
-          try (OutputStream outputStream = conn.getOutputStream()) {
-            outputStream.write(config.getBody().getBytes(config.getCharset()));
-          }
+      }
+
+      @Override
+      public void abort() {
+        try {
+          getFileSystem().delete(tmp, false);
+        } catch (IOException e) {
+          LOG.warn("Error deleting {}.", tmp, e);
         }
-        Path file = new Path(config.getHdfsFilePath());
-        try (FileSystem fs = FileSystem.get(file.toUri(), new Configuration());
-             FSDataOutputStream outputStream = fs.create(file, true);
-             InputStream inputStream = conn.getInputStream()
-        ) {
-          if (inputStream != null) {
-            if (config.getOutputFormat().equalsIgnoreCase("Binary")) {
-              int i = 0;
-              byte[] bytesIn = new byte[BUFFER_SIZE];
-              while ((i = inputStream.read(bytesIn)) >= 0) {
-                outputStream.write(bytesIn, 0, i);
-              }
-            } else if (config.getOutputFormat().equalsIgnoreCase("Text")) {
-              try (BufferedReader bufferedReader = new BufferedReader
-                (new InputStreamReader(inputStream, config.getCharset()));) {
-                int i = 0;
-                char charsIn[] = new char[BUFFER_SIZE];
-                while ((i = bufferedReader.read(charsIn)) >= 0) {
-                  outputStream.write(new String(charsIn).getBytes(), 0, i);
-                }
-              }
-            }
-          }
-          context.getArguments().set(config.getOutputPath(), config.getHdfsFilePath());
-          Map<String, String> flattenedHeaders = new HashMap<>();
-          for (Map.Entry<String, List<String>> k : conn.getHeaderFields().entrySet()) {
-            if (!Strings.isNullOrEmpty(k.getKey())) {
-              flattenedHeaders.put(k.getKey(), Joiner.on(',').skipNulls().join(k.getValue()));
-            }
-          }
-          context.getArguments().set(config.getResponseHeaders(), new Gson().toJson(flattenedHeaders));
+      }
+
+      private FileSystem getFileSystem() throws IOException {
+        return FileSystem.get(path.toUri(), new Configuration());
+      }
+    };
+  }
+
+  /**
+   * Copies the file at the HDFS file path to the additional destinations, after it was copied from the cache.
+   */
+  private void copyToAdditionalDestinations() throws IOException {
+    Path file = new Path(config.getHdfsFilePath());
+    FileSystem fs = FileSystem.get(file.toUri(), new Configuration());
+    int written = 1;
+    IOException failure = null;
+    for (String destination : config.getAdditionalDestinations()) {
+      Path path = new Path(destination);
+      try {
+        if (FileUtil.copy(fs, file, FileSystem.get(path.toUri(), new Configuration()), path, false, true,
+                          new Configuration())) {
+          written++;
+          continue;
         }
-        break;
-      } catch (MalformedURLException | ProtocolException e) {
-        throw new IllegalStateException("Error opening url connection. Reason: " + e.getMessage(), e);
-      } catch (Exception e) {
-        LOG.warn("Error making {} request to url {} with headers {}.", config.getMethod(), config.getUrl(), headers);
-        exception = e;
-      } finally {
-        if (conn != null) {
-          conn.disconnect();
+        LOG.warn("Error copying {} to {}.", file, destination);
+      } catch (IOException e) {
+        LOG.warn("Error copying {} to {}.", file, destination, e);
+        failure = e;
+      }
+    }
+    if (written < config.getDestinationQuorum()) {
+      throw new IOException(String.format("Only %d of %d destinations could be written, %d are required.", written,
+                                          config.getAdditionalDestinations().size() + 1,
+                                          config.getDestinationQuorum()), failure);
+    }
+  }
+
+  /**
+   * Fetches the urls and the additional urls and packs each response as a record of the SequenceFile containers in
+   * the output directory. The containers only become visible once every response was written.
+   */
+  private void fetchPacked(ActionContext context, ConnectionFactory connectionFactory, List<String> rankedUrls,
+                           TransferWatchdog watchdog, AtomicInteger attempts) throws Exception {
+    Path directory = new Path(config.getHdfsFilePath());
+    List<List<String>> sources = new ArrayList<>();
+    sources.add(rankedUrls);
+    for (String additionalUrl : config.getAdditionalUrls()) {
+      sources.add(Collections.singletonList(additionalUrl));
+    }
+
+    Map<String, String> headers = null;
+    try (FileSystem fs = FileSystem.get(directory.toUri(), new Configuration());
+         PackedOutputWriter writer = new PackedOutputWriter(fs, directory, config.getPackedFileSize(),
+                                                           config.getPackedRecordSize())) {
+      for (List<String> source : sources) {
+        try (MirroredInputStream inputStream = new MirroredInputStream(connectionFactory, source,
+                                                                       config.getMinMirrorThroughput(), watchdog,
+                                                                       attempts, config.getNumRetries(), false);
+             InputStream body = readAhead(inputStream)) {
+          Map<String, String> responseHeaders = flattenHeaders(inputStream.getHeaderFields());
+          // records are keyed by the requested url, whichever mirror served it
+          writer.append(source == rankedUrls ? config.getUrl() : source.get(0), responseHeaders,
+                        System.currentTimeMillis(), body);
+          if (headers == null) {
+            headers = responseHeaders;
+          }
         }
       }
-      retries++;
-    } while (retries < config.getNumRetries());
-    if (exception != null) {
-      throw exception;
+      writer.commit();
     }
+    LOG.info("Packed {} responses into {}.", sources.size(), directory);
+    context.getArguments().set(config.getOutputPath(), config.getHdfsFilePath());
+    context.getArguments().set(config.getResponseHeaders(), new Gson().toJson(headers));
   }
 
-  private void disableSSLValidation() {
-    TrustManager[] trustAllCerts = new TrustManager[]{new X509TrustManager() {
-      public X509Certificate[] getAcceptedIssuers() {
-        return null;
+  private static Map<String, String> flattenHeaders(Map<String, List<String>> headerFields) {
+    Map<String, String> flattenedHeaders = new HashMap<>();
+    for (Map.Entry<String, List<String>> k : headerFields.entrySet()) {
+      if (!Strings.isNullOrEmpty(k.getKey())) {
+        flattenedHeaders.put(k.getKey(), Joiner.on(',').skipNulls().join(k.getValue()));
       }
+    }
+    return flattenedHeaders;
+  }
 
-      public void checkClientTrusted(X509Certificate[] certs, String authType) {
+  /**
+   * Polls the url for the polling window, writing every changed response to a time bucket in the HDFS file path.
+   */
+  private void poll(final ActionContext context, ConnectionFactory connectionFactory) throws Exception {
+    Poller.BodyWriter bodyWriter = new Poller.BodyWriter() {
+      @Override
+      public void write(InputStream in, OutputStream out) throws IOException {
+        // every response starts with its own header and is checked for invalid records on its own
+        copy(context, in, out, RecordFilter.create(config));
       }
+    };
+    Poller poller = new Poller(connectionFactory, config.getUrl(), new Path(config.getHdfsFilePath()),
+                               config.getPollingBucketFormat(), config.getPollingInterval(), config.getLongPolling(),
+                               config.getPollingMaxFailures(), bodyWriter);
+    poller.run(config.getPollingWindow(), context.getMetrics());
+    context.getArguments().set(config.getOutputPath(), config.getHdfsFilePath());
+    if (poller.getLastHeaderFields() != null) {
+      context.getArguments().set(config.getResponseHeaders(),
+                                 new Gson().toJson(flattenHeaders(poller.getLastHeaderFields())));
+    }
+  }
+
+  /**
+   * Reads the streaming response for the streaming window, writing the events to rolling files in the HDFS file path.
+   */
+  private void stream(ActionContext context, ConnectionFactory connectionFactory) throws Exception {
+    StreamIngester ingester = new StreamIngester(config, connectionFactory, RecordFilter.create(config));
+    ingester.run(config.getStreamingWindow(), context.getMetrics());
+    context.getArguments().set(config.getOutputPath(), config.getHdfsFilePath());
+    if (ingester.getLastHeaderFields() != null) {
+      context.getArguments().set(config.getResponseHeaders(),
+                                 new Gson().toJson(flattenHeaders(ingester.getLastHeaderFields())));
+    }
+  }
+
+  /**
+   * Writes the data in the configured output format, filtering the records if a filter is configured.
+   */
+  private void copy(ActionContext context, InputStream source, OutputStream outputStream,
+                    @Nullable RecordFilter recordFilter) throws IOException {
+    if (config.getOutputFormat().equalsIgnoreCase("Binary")) {
+      copyBytes(source, outputStream);
+    } else if (config.getOutputFormat().equalsIgnoreCase("Text") && config.getJsonRecordsPath() != null) {
+      rewriteJsonRecords(source, outputStream, recordFilter, context.getMetrics());
+    } else if (config.getOutputFormat().equalsIgnoreCase("Text") && recordFilter != null) {
+      filterRecords(source, outputStream, recordFilter, context.getMetrics());
+    } else if (config.getOutputFormat().equalsIgnoreCase("Text")) {
+      copyText(source, outputStream);
+    }
+  }
 
-      public void checkServerTrusted(X509Certificate[] certs, String authType) {
+  /**
+   * Wraps the given stream so that it is read ahead in a background thread, if read ahead buffers are configured.
+   */
+  private InputStream readAhead(InputStream inputStream) {
+    if (config.getBufferCount() == 0) {
+      return inputStream;
+    }
+    LOG.debug("Reading ahead with {} buffers of {} bytes, using at most {} bytes.", config.getBufferCount(),
+              config.getBufferSize(), (long) config.getBufferCount() * config.getBufferSize());
+    return new PrefetchingInputStream(inputStream, config.getBufferSize(), config.getBufferCount());
+  }
+
+  private void copyBytes(InputStream inputStream, OutputStream outputStream) throws IOException {
+    if (inputStream instanceof PrefetchingInputStream) {
+      ((PrefetchingInputStream) inputStream).transferTo(outputStream);
+      return;
+    }
+    byte[] buffer = new byte[config.getBufferSize()];
+    int n;
+    while ((n = inputStream.read(buffer)) >= 0) {
+      outputStream.write(buffer, 0, n);
+    }
+  }
+
+  /**
+   * Decodes the data using the configured charset and writes it as UTF-8.
+   */
+  private void copyText(InputStream inputStream, OutputStream outputStream) throws IOException {
+    Reader reader = new InputStreamReader(inputStream, config.getCharset());
+    Writer writer = new OutputStreamWriter(outputStream, StandardCharsets.UTF_8);
+    char[] buffer = new char[BUFFER_SIZE];
+    int n;
+    while ((n = reader.read(buffer)) >= 0) {
+      writer.write(buffer, 0, n);
+    }
+    writer.flush();
+  }
+
+  /**
+   * Writes the lines accepted by the filter as UTF-8, one per line. At most one line is held in memory at a time.
+   */
+  private void filterRecords(InputStream inputStream, OutputStream outputStream, RecordFilter filter,
+                             StageMetrics metrics) throws IOException {
+    BoundedLineReader reader = new BoundedLineReader(new InputStreamReader(inputStream, config.getCharset()),
+                                                     config.getMaxRecordLength());
+    Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8), BUFFER_SIZE);
+    long read = 0;
+    long written = 0;
+    String line;
+    while ((line = reader.readLine()) != null) {
+      read++;
+      String record = filter.apply(line);
+      if (record != null) {
+        writer.write(record);
+        writer.write('\n');
+        written++;
       }
+      checkRecords(reader.getOversizedCount(), filter.getInvalidCount());
     }
-    };
-    SSLContext sslContext = null;
-    try {
-      sslContext = SSLContext.getInstance("SSL");
-      sslContext.init(null, trustAllCerts, new java.security.SecureRandom());
-    } catch (KeyManagementException | NoSuchAlgorithmException e) {
-      throw new IllegalStateException("Error while installing the trust manager: " + e.getMessage(), e);
+    checkRecords(reader.getOversizedCount(), filter.getInvalidCount());
+    writer.flush();
+    read += reader.getOversizedCount();
+    LOG.info("Wrote {} of {} records. {} records were skipped because they were longer than {} characters, " +
+               "{} because they were invalid.", written, read, reader.getOversizedCount(),
+             config.getMaxRecordLength(), filter.getInvalidCount());
+    count(metrics, "records.read", read);
+    count(metrics, "records.written", written);
+    count(metrics, "records.oversized", reader.getOversizedCount());
+    count(metrics, "records.invalid", filter.getInvalidCount());
+  }
+
+  /**
+   * Fails on the first oversized or invalid record if the config says so. The records are counted either way.
+   */
+  private void checkRecords(long oversized, long invalid) {
+    if (!config.getFailOnInvalidRecords()) {
+      return;
+    }
+    if (oversized > 0) {
+      throw new IllegalArgumentException(String.format(
+        "A record is longer than the maximum record length of %d characters.", config.getMaxRecordLength()));
     }
-    HttpsURLConnection.setDefaultSSLSocketFactory(sslContext.getSocketFactory());
-    HostnameVerifier allHostsValid = new HostnameVerifier() {
-      public boolean verify(String hostname, SSLSession session) {
-        return true;
+    if (invalid > 0) {
+      throw new IllegalArgumentException("A record is not a valid JSON object.");
+    }
+  }
+
+  /**
+   * Writes the records of the array at the JSON records path as UTF-8, one compact record per line, keeping those
+   * accepted by the filter if one is configured. At most one record is held in memory at a time.
+   */
+  private void rewriteJsonRecords(InputStream inputStream, OutputStream outputStream,
+                                  @Nullable RecordFilter filter, StageMetrics metrics) throws IOException {
+    JsonRecordReader reader = new JsonRecordReader(new InputStreamReader(inputStream, config.getCharset()),
+                                                   config.getJsonRecordsPath());
+    Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8), BUFFER_SIZE);
+    long read = 0;
+    long written = 0;
+    String record;
+    while ((record = reader.next()) != null) {
+      read++;
+      String output = filter == null ? record : filter.apply(record);
+      if (output != null) {
+        writer.write(output);
+        writer.write('\n');
+        written++;
       }
-    };
-    HttpsURLConnection.setDefaultHostnameVerifier(allHostsValid);
+      checkRecords(0, filter == null ? 0 : filter.getInvalidCount());
+    }
+    writer.flush();
+    LOG.info("Rewrote {} JSON records at '{}', wrote {} of them.", read, config.getJsonRecordsPath(), written);
+    count(metrics, "records.read", read);
+    count(metrics, "records.written", written);
+    if (filter != null) {
+      count(metrics, "records.invalid", filter.getInvalidCount());
+    }
+  }
+
+  private static void count(StageMetrics metrics, String name, long delta) {
+    long left = delta;
+    while (left > 0) {
+      int chunk = (int) Math.min(Integer.MAX_VALUE, left);
+      metrics.count(name, chunk);
+      left -= chunk;
+    }
+  }
+
+  /**
+   * Returns the TLS settings of this action instance, creating them on first use.
+   */
+  private synchronized TLSContext getTLSContext() throws IOException, GeneralSecurityException {
+    if (tlsContext == null) {
+      tlsContext = TLSContext.create(config);
+    }
+    return tlsContext;
+  }
+
+  /**
+   * Returns the OAuth2 token provider of this action instance, so that tokens are reused across runs and retries.
+   */
+  @Nullable
+  private synchronized OAuth2TokenProvider getTokenProvider() throws IOException, GeneralSecurityException {
+    if (tokenProvider == null) {
+      tokenProvider = OAuth2TokenProvider.create(config, getTLSContext());
+    }
+    return tokenProvider;
   }
 }
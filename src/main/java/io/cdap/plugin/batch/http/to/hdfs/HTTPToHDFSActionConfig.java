@@ -17,6 +17,7 @@
 package io.cdap.plugin.batch.http.to.hdfs;
 
 import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableSet;
 import io.cdap.cdap.api.annotation.Description;
@@ -27,9 +28,15 @@ import io.cdap.cdap.etl.api.FailureCollector;
 
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 import javax.annotation.Nullable;
 import javax.ws.rs.HttpMethod;
 
@@ -39,15 +46,111 @@ import javax.ws.rs.HttpMethod;
 public class HTTPToHDFSActionConfig extends PluginConfig {
 
   private static final Set<String> METHODS = ImmutableSet.of(HttpMethod.GET, HttpMethod.POST);
+  private static final Set<String> FILTER_TYPES = ImmutableSet.of(RecordFilter.REGEX, RecordFilter.CSV,
+                                                                  RecordFilter.JSON);
+  private static final Set<String> INVALID_RECORD_POLICIES = ImmutableSet.of(RecordFilter.SKIP, RecordFilter.FAIL);
   private static final String KV_DELIMITER = ":";
   private static final String DELIMITER = "\n";
 
+  public static final String OUTPUT_FORMAT_SEQUENCE_FILE = "SequenceFile";
+  public static final int DEFAULT_TIMEOUT = 60 * 1000;
+
   public static final String URL = "url";
   public static final String METHOD = "method";
   public static final String REQUEST_HEADERS = "requestHeaders";
   public static final String NUM_RETRIES = "numRetries";
   public static final String CONNECT_TIMEOUT = "connectTimeout";
   public static final String READ_TIMEOUT = "readTimeout";
+  public static final String OUTPUT_FORMAT = "outputFormat";
+  public static final String TLS_PROTOCOLS = "tlsProtocols";
+  public static final String TRUST_STORE_PATH = "trustStorePath";
+  public static final String TRUST_STORE_TYPE = "trustStoreType";
+  public static final String TRUST_STORE_PASSWORD = "trustStorePassword";
+  public static final String KEY_STORE_PATH = "keyStorePath";
+  public static final String KEY_STORE_TYPE = "keyStoreType";
+  public static final String KEY_STORE_PASSWORD = "keyStorePassword";
+  public static final String SSL_SESSION_CACHE_SIZE = "sslSessionCacheSize";
+  public static final String SSL_SESSION_TIMEOUT = "sslSessionTimeout";
+  public static final String MIRROR_URLS = "mirrorUrls";
+  public static final String MIRROR_PROBE_TIMEOUT = "mirrorProbeTimeout";
+  public static final String MIN_MIRROR_THROUGHPUT = "minMirrorThroughput";
+  public static final String FILTER_TYPE = "filterType";
+  public static final String FILTER_FIELD = "filterField";
+  public static final String FILTER_PATTERN = "filterPattern";
+  public static final String PROJECT_FIELDS = "projectFields";
+  public static final String CSV_DELIMITER = "csvDelimiter";
+  public static final String CSV_HEADER = "csvHeader";
+  public static final String MAX_RECORD_LENGTH = "maxRecordLength";
+  public static final String FIRST_BYTE_TIMEOUT = "firstByteTimeout";
+  public static final String MIN_THROUGHPUT = "minThroughput";
+  public static final String THROUGHPUT_WINDOW = "throughputWindow";
+  public static final String TRANSFER_DEADLINE = "transferDeadline";
+  public static final String BUFFER_SIZE = "bufferSize";
+  public static final String BUFFER_COUNT = "bufferCount";
+  public static final String ADDITIONAL_URLS = "additionalUrls";
+  public static final String PACKED_FILE_SIZE = "packedFileSize";
+  public static final String PACKED_RECORD_SIZE = "packedRecordSize";
+  public static final String CACHE_DIRECTORY = "cacheDirectory";
+  public static final String CACHE_TTL = "cacheTtl";
+  public static final String CACHE_MAX_SIZE = "cacheMaxSize";
+  public static final String CACHE_KEY_HEADERS = "cacheKeyHeaders";
+  public static final String OAUTH2_TOKEN_URL = "oauth2TokenUrl";
+  public static final String OAUTH2_CLIENT_ID = "oauth2ClientId";
+  public static final String OAUTH2_CLIENT_SECRET = "oauth2ClientSecret";
+  public static final String OAUTH2_SCOPE = "oauth2Scope";
+  public static final String OAUTH2_REFRESH_AHEAD = "oauth2RefreshAhead";
+  public static final String RESPONSE_PROFILE = "responseProfile";
+  public static final String PROFILE_PATH = "profilePath";
+  public static final String ADDITIONAL_DESTINATIONS = "additionalDestinations";
+  public static final String DESTINATION_QUORUM = "destinationQuorum";
+  public static final String DESTINATION_BUFFER_SIZE = "destinationBufferSize";
+  public static final String POLLING_WINDOW = "pollingWindow";
+  public static final String POLLING_INTERVAL = "pollingInterval";
+  public static final String LONG_POLLING = "longPolling";
+  public static final String POLLING_BUCKET_FORMAT = "pollingBucketFormat";
+  public static final String POLLING_MAX_FAILURES = "pollingMaxFailures";
+  public static final String STREAMING_WINDOW = "streamingWindow";
+  public static final String STREAMING_ROLL_INTERVAL = "streamingRollInterval";
+  public static final String STREAMING_ROLL_SIZE = "streamingRollSize";
+  public static final String STREAMING_FLUSH_INTERVAL = "streamingFlushInterval";
+  public static final String STREAMING_MAX_BACKOFF = "streamingMaxBackoff";
+  public static final String PREVIEW_SIZE = "previewSize";
+  public static final String JSON_RECORDS_PATH = "jsonRecordsPath";
+  public static final String DELTA_KEY_FIELDS = "deltaKeyFields";
+  public static final String DELTA_INDEX_PATH = "deltaIndexPath";
+  public static final String DELTA_DELETED_KEYS_PATH = "deltaDeletedKeysPath";
+  public static final String HOST_STATS_DIRECTORY = "hostStatsDirectory";
+  public static final String AUTO_TUNE = "autoTune";
+  public static final String PARALLEL_RANGES = "parallelRanges";
+  public static final String REQUEST_COMPRESSION = "requestCompression";
+  public static final String INVALID_RECORDS = "invalidRecords";
+
+  private static final String DEFAULT_TLS_PROTOCOLS = "TLSv1.3,TLSv1.2";
+  private static final String DEFAULT_STORE_TYPE = "JKS";
+  private static final int DEFAULT_SSL_SESSION_CACHE_SIZE = 100;
+  private static final int DEFAULT_SSL_SESSION_TIMEOUT = 3600;
+  private static final int DEFAULT_MIRROR_PROBE_TIMEOUT = 5000;
+  private static final String DEFAULT_SOURCE_RANGES = "sourceRanges";
+  private static final String NO_FILTER = "None";
+  private static final int DEFAULT_MAX_RECORD_LENGTH = 1024 * 1024;
+  private static final int DEFAULT_THROUGHPUT_WINDOW = 60;
+  private static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+  private static final int DEFAULT_BUFFER_COUNT = 4;
+  private static final long DEFAULT_PACKED_FILE_SIZE = 128 * 1024 * 1024;
+  private static final long DEFAULT_PACKED_RECORD_SIZE = 16 * 1024 * 1024;
+  private static final long DEFAULT_CACHE_TTL = 3600;
+  private static final long DEFAULT_CACHE_MAX_SIZE = 10L * 1024 * 1024 * 1024;
+  private static final long DEFAULT_OAUTH2_REFRESH_AHEAD = 300;
+  private static final String DEFAULT_RESPONSE_PROFILE = "responseProfile";
+  private static final int DEFAULT_DESTINATION_BUFFER_SIZE = 16 * 1024 * 1024;
+  private static final long DEFAULT_POLLING_INTERVAL = 60;
+  private static final String DEFAULT_POLLING_BUCKET_FORMAT = "yyyy-MM-dd-HH";
+  private static final int DEFAULT_POLLING_MAX_FAILURES = 5;
+  private static final long DEFAULT_STREAMING_ROLL_INTERVAL = 3600;
+  private static final long DEFAULT_STREAMING_ROLL_SIZE = 128L * 1024 * 1024;
+  private static final long DEFAULT_STREAMING_FLUSH_INTERVAL = 10;
+  private static final long DEFAULT_STREAMING_MAX_BACKOFF = 60;
+  private static final int DEFAULT_PREVIEW_SIZE = 64 * 1024;
 
   @Description("The location to write the data in HDFS. If the file already exists, it will be overwritten.")
   @Macro
@@ -73,9 +176,10 @@ public class HTTPToHDFSActionConfig extends PluginConfig {
   @Macro
   private String requestHeaders;
 
+  @Name(OUTPUT_FORMAT)
   @Description(
-    "Output data should be written as Text (JSON, XML, txt files) or Binary (zip, gzip, images). " +
-      "Defaults to Text.")
+    "Output data should be written as Text (JSON, XML, txt files) or Binary (zip, gzip, images), or packed as " +
+      "records of SequenceFile containers in the HDFS directory. Defaults to Text.")
   private String outputFormat;
 
   @Description("If text data is selected, this should be the charset of the text being returned. Defaults to UTF-8.")
@@ -94,17 +198,410 @@ public class HTTPToHDFSActionConfig extends PluginConfig {
   private Integer numRetries;
 
   @Name(CONNECT_TIMEOUT)
-  @Description("Sets the connection timeout in milliseconds. Set to 0 for infinite. Default is 60000 (1 minute).")
+  @Description("Sets the connection timeout in milliseconds. Set to 0 for infinite. Default is 60000 (1 minute), " +
+    "or a timeout picked from the history of the host with auto tuning.")
   @Nullable
   @Macro
   private Integer connectTimeout;
 
   @Name(READ_TIMEOUT)
-  @Description("The time in milliseconds to wait for a read. Set to 0 for infinite. Defaults to 60000 (1 minute).")
+  @Description("The time in milliseconds to wait for a read. Set to 0 for infinite. Defaults to 60000 (1 minute), " +
+    "or a timeout picked from the history of the host with auto tuning.")
   @Nullable
   @Macro
   private Integer readTimeout;
 
+  @Name(TLS_PROTOCOLS)
+  @Nullable
+  @Description("Comma separated list of TLS protocols that may be negotiated for https urls. Protocols that are not " +
+    "supported by the JVM are ignored. Defaults to 'TLSv1.3,TLSv1.2'.")
+  private String tlsProtocols;
+
+  @Name(TRUST_STORE_PATH)
+  @Nullable
+  @Description("Path to the trust store used to validate the server certificate. If not specified, the JVM " +
+    "default trust store is used. Ignored if SSL validation is disabled.")
+  @Macro
+  private String trustStorePath;
+
+  @Name(TRUST_STORE_TYPE)
+  @Nullable
+  @Description("Type of the trust store, for example JKS or PKCS12. Defaults to JKS.")
+  @Macro
+  private String trustStoreType;
+
+  @Name(TRUST_STORE_PASSWORD)
+  @Nullable
+  @Description("Password of the trust store.")
+  @Macro
+  private String trustStorePassword;
+
+  @Name(KEY_STORE_PATH)
+  @Nullable
+  @Description("Path to the key store holding the client certificate, for servers that require client " +
+    "authentication.")
+  @Macro
+  private String keyStorePath;
+
+  @Name(KEY_STORE_TYPE)
+  @Nullable
+  @Description("Type of the key store, for example JKS or PKCS12. Defaults to JKS.")
+  @Macro
+  private String keyStoreType;
+
+  @Name(KEY_STORE_PASSWORD)
+  @Nullable
+  @Description("Password of the key store and of the keys it contains.")
+  @Macro
+  private String keyStorePassword;
+
+  @Name(SSL_SESSION_CACHE_SIZE)
+  @Nullable
+  @Description("Maximum number of TLS sessions kept for resumption by retries and later requests. " +
+    "Set to 0 for no limit. Defaults to 100.")
+  private Integer sslSessionCacheSize;
+
+  @Name(SSL_SESSION_TIMEOUT)
+  @Nullable
+  @Description("Time in seconds a cached TLS session can be resumed. Set to 0 for no limit. Defaults to 3600.")
+  private Integer sslSessionTimeout;
+
+  @Name(MIRROR_URLS)
+  @Nullable
+  @Description("Comma separated list of urls that serve the same data as the URL. Before each attempt all urls are " +
+    "probed and data is read from the fastest one. If reading fails or is too slow, the next url is used and the " +
+    "download continues from the current offset where the server supports range requests.")
+  @Macro
+  private String mirrorUrls;
+
+  @Name(MIRROR_PROBE_TIMEOUT)
+  @Nullable
+  @Description("The time in milliseconds to wait for each url to answer the probe when mirror urls are given. " +
+    "Defaults to 5000 (5 seconds).")
+  private Integer mirrorProbeTimeout;
+
+  @Name(MIN_MIRROR_THROUGHPUT)
+  @Nullable
+  @Description("Minimum throughput in bytes per second, measured over 10 seconds, before switching to the next " +
+    "mirror url. Set to 0 to only switch on errors. Defaults to 0.")
+  private Long minMirrorThroughput;
+
+  @Name(FILTER_TYPE)
+  @Nullable
+  @Description("Filters the records of Text data before they are written. 'Regex' keeps the lines matching the " +
+    "filter pattern, 'CSV' and 'JSON' keep the delimited rows or newline delimited JSON records whose filter field " +
+    "matches the filter pattern. Defaults to 'None'.")
+  private String filterType;
+
+  @Name(FILTER_FIELD)
+  @Nullable
+  @Description("The field the filter pattern is matched against. For CSV, the column name if the first line is a " +
+    "header, otherwise the 0-based column index. For JSON, the dot separated path of the field.")
+  @Macro
+  private String filterField;
+
+  @Name(FILTER_PATTERN)
+  @Nullable
+  @Description("Regular expression that the line or the filter field must contain for the record to be written.")
+  @Macro
+  private String filterPattern;
+
+  @Name(PROJECT_FIELDS)
+  @Nullable
+  @Description("Comma separated list of the CSV columns or JSON fields to keep in the written records. " +
+    "If not specified, whole records are written.")
+  @Macro
+  private String projectFields;
+
+  @Name(CSV_DELIMITER)
+  @Nullable
+  @Description("The delimiter of CSV data. Use '\\t' for tab. Defaults to ','.")
+  private String csvDelimiter;
+
+  @Name(CSV_HEADER)
+  @Nullable
+  @Description("Whether the first line of CSV data is a header. The header is always written. Defaults to false.")
+  private Boolean csvHeader;
+
+  @Name(MAX_RECORD_LENGTH)
+  @Nullable
+  @Description("Maximum length in characters of a record when records are filtered. Longer records are skipped. " +
+    "Defaults to 1048576.")
+  private Integer maxRecordLength;
+
+  @Name(FIRST_BYTE_TIMEOUT)
+  @Nullable
+  @Description("The time in milliseconds to wait for the first byte of the response after the request is sent. " +
+    "The attempt is aborted and retried if it takes longer. Set to 0 for infinite. Defaults to 0.")
+  @Macro
+  private Integer firstByteTimeout;
+
+  @Name(MIN_THROUGHPUT)
+  @Nullable
+  @Description("Minimum throughput in bytes per second, averaged over the throughput window. The attempt is " +
+    "aborted and resumed if the throughput is lower. Set to 0 to disable. Defaults to 0.")
+  @Macro
+  private Long minThroughput;
+
+  @Name(THROUGHPUT_WINDOW)
+  @Nullable
+  @Description("The number of seconds the throughput is averaged over. Defaults to 60.")
+  private Integer throughputWindow;
+
+  @Name(TRANSFER_DEADLINE)
+  @Nullable
+  @Description("The time in seconds the whole transfer, including retries, may take. The transfer is aborted and " +
+    "not retried once it has passed. Set to 0 for no deadline. Defaults to 0.")
+  @Macro
+  private Long transferDeadline;
+
+  @Name(BUFFER_SIZE)
+  @Nullable
+  @Description("Size in bytes of each buffer used to read ahead from the network while data is written. " +
+    "Defaults to 262144 (256 KB).")
+  private Integer bufferSize;
+
+  @Name(BUFFER_COUNT)
+  @Nullable
+  @Description("Number of read ahead buffers. At most buffer size times buffer count bytes are held in memory. " +
+    "Set to 0 to read and write in the same thread. Defaults to 4.")
+  private Integer bufferCount;
+
+  @Name(ADDITIONAL_URLS)
+  @Nullable
+  @Description("Newline separated list of additional urls to fetch in the same run and pack into the same " +
+    "containers. Only used with the SequenceFile output format.")
+  @Macro
+  private String additionalUrls;
+
+  @Name(PACKED_FILE_SIZE)
+  @Nullable
+  @Description("Size in bytes at which a new SequenceFile container is started. Defaults to 134217728 (128 MB).")
+  private Long packedFileSize;
+
+  @Name(PACKED_RECORD_SIZE)
+  @Nullable
+  @Description("Maximum size in bytes of a response packed into a container, since it is held in memory while it " +
+    "is written. Larger responses are written to a file of their own next to the containers. Defaults to " +
+    "16777216 (16 MB).")
+  private Long packedRecordSize;
+
+  @Name(CACHE_DIRECTORY)
+  @Nullable
+  @Description("HDFS directory of a cache shared by all runs and pipelines that use it. If set, data fetched " +
+    "within the cache TTL is copied from the cache instead of being fetched again.")
+  @Macro
+  private String cacheDirectory;
+
+  @Name(CACHE_TTL)
+  @Nullable
+  @Description("Time in seconds cached data is used after it was fetched. Defaults to 3600 (1 hour).")
+  @Macro
+  private Long cacheTtl;
+
+  @Name(CACHE_MAX_SIZE)
+  @Nullable
+  @Description("Maximum total size in bytes of the cache. The least recently used entries are evicted once the " +
+    "cache is larger. Defaults to 10737418240 (10 GB).")
+  private Long cacheMaxSize;
+
+  @Name(CACHE_KEY_HEADERS)
+  @Nullable
+  @Description("Comma separated names of the request headers that are part of the cache key, for example " +
+    "Accept. Other request headers, such as credentials, are ignored by the cache.")
+  private String cacheKeyHeaders;
+
+  @Name(OAUTH2_TOKEN_URL)
+  @Nullable
+  @Description("Token endpoint used to fetch access tokens with the OAuth2 client credentials grant. If set, " +
+    "requests are sent with the access token as a bearer token.")
+  @Macro
+  private String oAuth2TokenUrl;
+
+  @Name(OAUTH2_CLIENT_ID)
+  @Nullable
+  @Description("OAuth2 client id.")
+  @Macro
+  private String oAuth2ClientId;
+
+  @Name(OAUTH2_CLIENT_SECRET)
+  @Nullable
+  @Description("OAuth2 client secret.")
+  @Macro
+  private String oAuth2ClientSecret;
+
+  @Name(OAUTH2_SCOPE)
+  @Nullable
+  @Description("Space separated scopes to request with the access token.")
+  @Macro
+  private String oAuth2Scope;
+
+  @Name(OAUTH2_REFRESH_AHEAD)
+  @Nullable
+  @Description("Time in seconds before the access token expires at which a new token is fetched in the " +
+    "background, at most half the lifetime of the token. Defaults to 300 (5 minutes).")
+  private Long oAuth2RefreshAhead;
+
+  @Name(ADDITIONAL_DESTINATIONS)
+  @Nullable
+  @Description("Comma separated list of additional paths the data is written to at the same time as the HDFS " +
+    "file path, on any Hadoop file system, for example hdfs://other-cluster/data/file.csv or s3a://bucket/file.csv.")
+  @Macro
+  private String additionalDestinations;
+
+  @Name(DESTINATION_QUORUM)
+  @Nullable
+  @Description("Number of destinations, including the HDFS file path, that must be written for the run to " +
+    "succeed. The HDFS file path must always be written. Defaults to all destinations.")
+  @Macro
+  private Integer destinationQuorum;
+
+  @Name(DESTINATION_BUFFER_SIZE)
+  @Nullable
+  @Description("Size in bytes of the buffer of each destination when there are additional destinations. A " +
+    "destination only slows down the others once it is this far behind. Defaults to 16777216 (16 MB).")
+  private Integer destinationBufferSize;
+
+  @Name(POLLING_WINDOW)
+  @Nullable
+  @Description("Time in seconds the action keeps polling the URL. If set, the HDFS file path is a directory and " +
+    "every changed response is written to a new file in a time bucket. Defaults to 0, which fetches once.")
+  @Macro
+  private Long pollingWindow;
+
+  @Name(POLLING_INTERVAL)
+  @Nullable
+  @Description("Time in seconds between the start of two fetches when polling. With long polling, the time to " +
+    "wait after a failed fetch. Defaults to 60.")
+  @Macro
+  private Long pollingInterval;
+
+  @Name(LONG_POLLING)
+  @Nullable
+  @Description("Whether the server holds each request until there is new data, so that the next request is sent " +
+    "as soon as a response was received. Defaults to false.")
+  private Boolean longPolling;
+
+  @Name(POLLING_BUCKET_FORMAT)
+  @Nullable
+  @Description("Date pattern, in UTC, of the directory a polled response is written to. Defaults to " +
+    "yyyy-MM-dd-HH, one directory per hour.")
+  private String pollingBucketFormat;
+
+  @Name(POLLING_MAX_FAILURES)
+  @Nullable
+  @Description("Number of consecutive failed fetches after which polling stops and the run fails. A failed fetch " +
+    "is not retried, the next one is made at the next interval. Defaults to 5.")
+  @Macro
+  private Integer pollingMaxFailures;
+
+  @Name(STREAMING_WINDOW)
+  @Nullable
+  @Description("Time in seconds the action keeps reading a streaming response, such as Server-Sent Events or " +
+    "newline delimited JSON that never ends. If set, the HDFS file path is a directory and every event is written " +
+    "as a line to rolling files in it. Defaults to 0, which reads the response as one finite body.")
+  @Macro
+  private Long streamingWindow;
+
+  @Name(STREAMING_ROLL_INTERVAL)
+  @Nullable
+  @Description("Time in seconds after which a new file is started when streaming. Defaults to 3600.")
+  @Macro
+  private Long streamingRollInterval;
+
+  @Name(STREAMING_ROLL_SIZE)
+  @Nullable
+  @Description("Size in bytes after which a new file is started when streaming. Defaults to 134217728 (128 MB).")
+  @Macro
+  private Long streamingRollSize;
+
+  @Name(STREAMING_FLUSH_INTERVAL)
+  @Nullable
+  @Description("Time in seconds between two flushes of the written events, after which they are visible to " +
+    "readers of the file. Defaults to 10.")
+  @Macro
+  private Long streamingFlushInterval;
+
+  @Name(STREAMING_MAX_BACKOFF)
+  @Nullable
+  @Description("Maximum time in seconds to wait before reconnecting after the stream ended or failed. The " +
+    "wait starts at 1 second, or the retry time sent by the server, and doubles after each failure. " +
+    "Defaults to 60.")
+  @Macro
+  private Long streamingMaxBackoff;
+
+  @Name(PREVIEW_SIZE)
+  @Nullable
+  @Description("Number of bytes fetched from the start of the response when previewing the data at design time. " +
+    "Defaults to 65536 (64 KB).")
+  private Integer previewSize;
+
+  @Name(JSON_RECORDS_PATH)
+  @Nullable
+  @Description("Path of the records array in a JSON response, such as '$' for a top level array or '$.data' for " +
+    "an array under the 'data' field. If set, the response is rewritten to one compact record per line while it " +
+    "is read, holding only one record in memory at a time.")
+  @Macro
+  private String jsonRecordsPath;
+
+  @Name(DELTA_KEY_FIELDS)
+  @Nullable
+  @Description("Comma separated fields that identify a record. If set, only the records that were inserted or " +
+    "changed since the previous run are written. Fields of JSON records are dot separated paths, columns of " +
+    "delimited records are names if the CSV header is set, otherwise 0-based indexes.")
+  @Macro
+  private String deltaKeyFields;
+
+  @Name(DELTA_INDEX_PATH)
+  @Nullable
+  @Description("Location in HDFS of the index of the record keys and content hashes of the previous run. " +
+    "Defaults to a hidden file in the same directory as the data, named after it.")
+  @Macro
+  private String deltaIndexPath;
+
+  @Name(DELTA_DELETED_KEYS_PATH)
+  @Nullable
+  @Description("Location in HDFS of the file the keys of the records deleted since the previous run are " +
+    "written to, one per line. If not set, deleted records are only counted.")
+  @Macro
+  private String deltaDeletedKeysPath;
+
+  @Name(HOST_STATS_DIRECTORY)
+  @Nullable
+  @Description("HDFS directory of the performance history of each host, shared by all runs and pipelines that " +
+    "use it. If set, the connect latency, time to first byte, throughput, failures and range and compression " +
+    "support of every request are recorded.")
+  @Macro
+  private String hostStatsDirectory;
+
+  @Name(AUTO_TUNE)
+  @Nullable
+  @Description("Whether to pick the timeouts, parallel range requests and compression that are not set from the " +
+    "performance history of the host. Requires the host stats directory. Defaults to false.")
+  private Boolean autoTune;
+
+  @Name(PARALLEL_RANGES)
+  @Nullable
+  @Description("Number of range requests made at the same time to download the response in parallel. Only " +
+    "supported for GET requests. 1 downloads it with a single request. If not set, a single request is made unless " +
+    "auto tuning picks parallel requests.")
+  @Macro
+  private Integer parallelRanges;
+
+  @Name(REQUEST_COMPRESSION)
+  @Nullable
+  @Description("Whether to ask the server for a gzip compressed response, which is decompressed while it is " +
+    "read. If not set, compression is not requested unless auto tuning picks it.")
+  private Boolean requestCompression;
+
+  @Name(INVALID_RECORDS)
+  @Nullable
+  @Description("What to do with records that are longer than the maximum record length, or that are not JSON " +
+    "objects when JSON records are filtered or rewritten. 'Skip' drops them and counts them, 'Fail' fails the run " +
+    "without retrying. Defaults to 'Skip'.")
+  @Macro
+  private String invalidRecords;
+
   @Nullable
   @Description(
     "The key used to store the file path for the data that was written so that the file source can read " +
@@ -122,10 +619,33 @@ public class HTTPToHDFSActionConfig extends PluginConfig {
   @Macro
   private String responseHeaders;
 
+  @Nullable
+  @Description(
+    "The key used to store which url served each byte range of the data, as a JSON list of url, start and end " +
+      "offsets. Plugins that run at later stages in the pipeline can retrieve it through macro " +
+      "substitution:${sourceRanges} where \"sourceRanges\" is the key specified. Defaults to \"sourceRanges\".")
+  @Macro
+  private String sourceRanges;
+
+  @Name(RESPONSE_PROFILE)
+  @Nullable
+  @Description(
+    "The key used to store the profile of the written data, as JSON with the number of bytes and records, the " +
+      "longest record and the detected shape. Plugins that run at later stages in the pipeline can retrieve it " +
+      "through macro substitution:${responseProfile} where \"responseProfile\" is the key specified. " +
+      "Defaults to \"responseProfile\".")
+  @Macro
+  private String responseProfile;
+
+  @Name(PROFILE_PATH)
+  @Nullable
+  @Description("Location in HDFS of the sidecar file the profile of the written data is stored in. Defaults to " +
+    "a hidden file named after the HDFS file path in the same directory.")
+  @Macro
+  private String profilePath;
+
   public HTTPToHDFSActionConfig() {
     //Default values are set
-    this.connectTimeout = 60 * 1000;
-    this.readTimeout = 60 * 1000;
     this.numRetries = 3;
     this.followRedirects = true;
     this.disableSSLValidation = true;
@@ -174,6 +694,69 @@ public class HTTPToHDFSActionConfig extends PluginConfig {
     disableSSLValidation = builder.disableSSLValidation;
     outputPath = builder.outputPath;
     responseHeaders = builder.responseHeaders;
+    tlsProtocols = builder.tlsProtocols;
+    trustStorePath = builder.trustStorePath;
+    trustStoreType = builder.trustStoreType;
+    trustStorePassword = builder.trustStorePassword;
+    keyStorePath = builder.keyStorePath;
+    keyStoreType = builder.keyStoreType;
+    keyStorePassword = builder.keyStorePassword;
+    sslSessionCacheSize = builder.sslSessionCacheSize;
+    sslSessionTimeout = builder.sslSessionTimeout;
+    mirrorUrls = builder.mirrorUrls;
+    mirrorProbeTimeout = builder.mirrorProbeTimeout;
+    minMirrorThroughput = builder.minMirrorThroughput;
+    sourceRanges = builder.sourceRanges;
+    filterType = builder.filterType;
+    filterField = builder.filterField;
+    filterPattern = builder.filterPattern;
+    projectFields = builder.projectFields;
+    csvDelimiter = builder.csvDelimiter;
+    csvHeader = builder.csvHeader;
+    maxRecordLength = builder.maxRecordLength;
+    firstByteTimeout = builder.firstByteTimeout;
+    minThroughput = builder.minThroughput;
+    throughputWindow = builder.throughputWindow;
+    transferDeadline = builder.transferDeadline;
+    bufferSize = builder.bufferSize;
+    bufferCount = builder.bufferCount;
+    additionalUrls = builder.additionalUrls;
+    packedFileSize = builder.packedFileSize;
+    packedRecordSize = builder.packedRecordSize;
+    cacheDirectory = builder.cacheDirectory;
+    cacheTtl = builder.cacheTtl;
+    cacheMaxSize = builder.cacheMaxSize;
+    cacheKeyHeaders = builder.cacheKeyHeaders;
+    oAuth2TokenUrl = builder.oAuth2TokenUrl;
+    oAuth2ClientId = builder.oAuth2ClientId;
+    oAuth2ClientSecret = builder.oAuth2ClientSecret;
+    oAuth2Scope = builder.oAuth2Scope;
+    oAuth2RefreshAhead = builder.oAuth2RefreshAhead;
+    responseProfile = builder.responseProfile;
+    profilePath = builder.profilePath;
+    additionalDestinations = builder.additionalDestinations;
+    destinationQuorum = builder.destinationQuorum;
+    destinationBufferSize = builder.destinationBufferSize;
+    pollingWindow = builder.pollingWindow;
+    pollingInterval = builder.pollingInterval;
+    longPolling = builder.longPolling;
+    pollingBucketFormat = builder.pollingBucketFormat;
+    pollingMaxFailures = builder.pollingMaxFailures;
+    streamingWindow = builder.streamingWindow;
+    streamingRollInterval = builder.streamingRollInterval;
+    streamingRollSize = builder.streamingRollSize;
+    streamingFlushInterval = builder.streamingFlushInterval;
+    streamingMaxBackoff = builder.streamingMaxBackoff;
+    previewSize = builder.previewSize;
+    jsonRecordsPath = builder.jsonRecordsPath;
+    deltaKeyFields = builder.deltaKeyFields;
+    deltaIndexPath = builder.deltaIndexPath;
+    deltaDeletedKeysPath = builder.deltaDeletedKeysPath;
+    hostStatsDirectory = builder.hostStatsDirectory;
+    autoTune = builder.autoTune;
+    parallelRanges = builder.parallelRanges;
+    requestCompression = builder.requestCompression;
+    invalidRecords = builder.invalidRecords;
   }
 
   public static Builder builder() {
@@ -195,7 +778,70 @@ public class HTTPToHDFSActionConfig extends PluginConfig {
       .setFollowRedirects(copy.getFollowRedirects())
       .setDisableSSLValidation(copy.disableSSLValidation)
       .setOutputPath(copy.outputPath)
-      .setResponseHeaders(copy.responseHeaders);
+      .setResponseHeaders(copy.responseHeaders)
+      .setTlsProtocols(copy.tlsProtocols)
+      .setTrustStorePath(copy.trustStorePath)
+      .setTrustStoreType(copy.trustStoreType)
+      .setTrustStorePassword(copy.trustStorePassword)
+      .setKeyStorePath(copy.keyStorePath)
+      .setKeyStoreType(copy.keyStoreType)
+      .setKeyStorePassword(copy.keyStorePassword)
+      .setSslSessionCacheSize(copy.sslSessionCacheSize)
+      .setSslSessionTimeout(copy.sslSessionTimeout)
+      .setMirrorUrls(copy.mirrorUrls)
+      .setMirrorProbeTimeout(copy.mirrorProbeTimeout)
+      .setMinMirrorThroughput(copy.minMirrorThroughput)
+      .setSourceRanges(copy.sourceRanges)
+      .setFilterType(copy.filterType)
+      .setFilterField(copy.filterField)
+      .setFilterPattern(copy.filterPattern)
+      .setProjectFields(copy.projectFields)
+      .setCsvDelimiter(copy.csvDelimiter)
+      .setCsvHeader(copy.csvHeader)
+      .setMaxRecordLength(copy.maxRecordLength)
+      .setFirstByteTimeout(copy.firstByteTimeout)
+      .setMinThroughput(copy.minThroughput)
+      .setThroughputWindow(copy.throughputWindow)
+      .setTransferDeadline(copy.transferDeadline)
+      .setBufferSize(copy.bufferSize)
+      .setBufferCount(copy.bufferCount)
+      .setAdditionalUrls(copy.additionalUrls)
+      .setPackedFileSize(copy.packedFileSize)
+      .setPackedRecordSize(copy.packedRecordSize)
+      .setCacheDirectory(copy.cacheDirectory)
+      .setCacheTtl(copy.cacheTtl)
+      .setCacheMaxSize(copy.cacheMaxSize)
+      .setCacheKeyHeaders(copy.cacheKeyHeaders)
+      .setOAuth2TokenUrl(copy.oAuth2TokenUrl)
+      .setOAuth2ClientId(copy.oAuth2ClientId)
+      .setOAuth2ClientSecret(copy.oAuth2ClientSecret)
+      .setOAuth2Scope(copy.oAuth2Scope)
+      .setOAuth2RefreshAhead(copy.oAuth2RefreshAhead)
+      .setResponseProfile(copy.responseProfile)
+      .setProfilePath(copy.profilePath)
+      .setAdditionalDestinations(copy.additionalDestinations)
+      .setDestinationQuorum(copy.destinationQuorum)
+      .setDestinationBufferSize(copy.destinationBufferSize)
+      .setPollingWindow(copy.pollingWindow)
+      .setPollingInterval(copy.pollingInterval)
+      .setLongPolling(copy.longPolling)
+      .setPollingBucketFormat(copy.pollingBucketFormat)
+      .setPollingMaxFailures(copy.pollingMaxFailures)
+      .setStreamingWindow(copy.streamingWindow)
+      .setStreamingRollInterval(copy.streamingRollInterval)
+      .setStreamingRollSize(copy.streamingRollSize)
+      .setStreamingFlushInterval(copy.streamingFlushInterval)
+      .setStreamingMaxBackoff(copy.streamingMaxBackoff)
+      .setPreviewSize(copy.previewSize)
+      .setJsonRecordsPath(copy.jsonRecordsPath)
+      .setDeltaKeyFields(copy.deltaKeyFields)
+      .setDeltaIndexPath(copy.deltaIndexPath)
+      .setDeltaDeletedKeysPath(copy.deltaDeletedKeysPath)
+      .setHostStatsDirectory(copy.hostStatsDirectory)
+      .setAutoTune(copy.autoTune)
+      .setParallelRanges(copy.parallelRanges)
+      .setRequestCompression(copy.requestCompression)
+      .setInvalidRecords(copy.invalidRecords);
   }
 
   public String getHdfsFilePath() {
@@ -219,6 +865,13 @@ public class HTTPToHDFSActionConfig extends PluginConfig {
     return outputFormat;
   }
 
+  /**
+   * Returns whether responses are packed as records of SequenceFile containers.
+   */
+  public boolean isPacked() {
+    return OUTPUT_FORMAT_SEQUENCE_FILE.equalsIgnoreCase(outputFormat);
+  }
+
   public String getCharset() {
     return charset;
   }
@@ -255,74 +908,845 @@ public class HTTPToHDFSActionConfig extends PluginConfig {
     return responseHeaders;
   }
 
-  public Map<String, String> getRequestHeadersMap() {
-    return convertHeadersToMap(requestHeaders);
+  public List<String> getTlsProtocols() {
+    return splitList(Strings.isNullOrEmpty(tlsProtocols) ? DEFAULT_TLS_PROTOCOLS : tlsProtocols);
   }
 
-  public void validate(FailureCollector failureCollector) {
-    if (!containsMacro(URL)) {
-      try {
-        new URL(url);
-      } catch (MalformedURLException e) {
-        failureCollector
-          .addFailure(String.format("URL '%s' is malformed: '%s'", url, e.getMessage()), null)
-          .withConfigProperty(URL);
-      }
-    }
+  @Nullable
+  public String getTrustStorePath() {
+    return Strings.emptyToNull(trustStorePath);
+  }
 
-    if (!containsMacro(CONNECT_TIMEOUT) && connectTimeout != null && connectTimeout < 0) {
-      failureCollector.addFailure(String.format("Invalid connection timeout '%d'.", connectTimeout),
-                                  "Connection timeout must be 0 or a positive number.")
-        .withConfigProperty(CONNECT_TIMEOUT);
-    }
-    if (!containsMacro(REQUEST_HEADERS) && !Strings.isNullOrEmpty(requestHeaders)) {
-      for (String chunk : requestHeaders.split(DELIMITER)) {
-        String[] keyValue = chunk.split(KV_DELIMITER);
-        if (keyValue.length != 2) {
-          failureCollector.addFailure(String.format("Unable to parse key-value pair '%s'.", chunk),
-                                      "Provide correct value for request headers field.")
-            .withConfigProperty(REQUEST_HEADERS);
-        }
-      }
-    }
-    if (!containsMacro(METHOD) && !METHODS.contains(method.toUpperCase())) {
-      failureCollector.addFailure(
-        String.format("Invalid request method '%s'.", method),
-        String.format("Request method must be one of '%s'.", Joiner.on(',').join(METHODS)))
-        .withConfigProperty(METHOD);
-    }
-    if (!containsMacro(READ_TIMEOUT) && readTimeout != null && readTimeout < 0) {
-      failureCollector.addFailure(
-        String.format("Invalid read timeout '%d'.", readTimeout),
-        "Read timeout must be 0 or a positive number.")
-        .withConfigProperty(READ_TIMEOUT);
-    }
+  public String getTrustStoreType() {
+    return Strings.isNullOrEmpty(trustStoreType) ? DEFAULT_STORE_TYPE : trustStoreType;
   }
 
-  private Map<String, String> convertHeadersToMap(String headersString) {
-    Map<String, String> headersMap = new HashMap<>();
-    if (!Strings.isNullOrEmpty(headersString)) {
-      for (String chunk : headersString.split(DELIMITER)) {
-        String[] keyValue = chunk.split(KV_DELIMITER, 2);
-        if (keyValue.length == 2) {
-          headersMap.put(keyValue[0], keyValue[1]);
+  @Nullable
+  public String getTrustStorePassword() {
+    return trustStorePassword;
+  }
+
+  @Nullable
+  public String getKeyStorePath() {
+    return Strings.emptyToNull(keyStorePath);
+  }
+
+  public String getKeyStoreType() {
+    return Strings.isNullOrEmpty(keyStoreType) ? DEFAULT_STORE_TYPE : keyStoreType;
+  }
+
+  @Nullable
+  public String getKeyStorePassword() {
+    return keyStorePassword;
+  }
+
+  public int getSslSessionCacheSize() {
+    return sslSessionCacheSize == null ? DEFAULT_SSL_SESSION_CACHE_SIZE : sslSessionCacheSize;
+  }
+
+  public int getSslSessionTimeout() {
+    return sslSessionTimeout == null ? DEFAULT_SSL_SESSION_TIMEOUT : sslSessionTimeout;
+  }
+
+  /**
+   * Returns the url followed by the mirror urls.
+   */
+  public List<String> getUrls() {
+    List<String> urls = new ArrayList<>();
+    urls.add(url);
+    if (!Strings.isNullOrEmpty(mirrorUrls)) {
+      for (String mirror : splitList(mirrorUrls)) {
+        if (!urls.contains(mirror)) {
+          urls.add(mirror);
         }
       }
     }
-    return headersMap;
+    return urls;
+  }
+
+  public int getMirrorProbeTimeout() {
+    return mirrorProbeTimeout == null ? DEFAULT_MIRROR_PROBE_TIMEOUT : mirrorProbeTimeout;
+  }
+
+  public long getMinMirrorThroughput() {
+    return minMirrorThroughput == null ? 0L : minMirrorThroughput;
+  }
+
+  public String getSourceRanges() {
+    return Strings.isNullOrEmpty(sourceRanges) ? DEFAULT_SOURCE_RANGES : sourceRanges;
   }
 
   /**
-   * Builder for HTTPToHDFSActionConfig
+   * Returns the record filter type, or {@code null} if records are not filtered.
    */
-  public static final class Builder {
+  @Nullable
+  public String getFilterType() {
+    return Strings.isNullOrEmpty(filterType) || NO_FILTER.equalsIgnoreCase(filterType) ? null : filterType;
+  }
 
-    private String hdfsFilePath;
-    private String url;
-    private String method;
-    private String body;
-    private String requestHeaders;
-    private String outputFormat;
+  @Nullable
+  public String getFilterField() {
+    return Strings.emptyToNull(filterField);
+  }
+
+  @Nullable
+  public String getFilterPattern() {
+    return Strings.emptyToNull(filterPattern);
+  }
+
+  public List<String> getProjectFields() {
+    return Strings.isNullOrEmpty(projectFields) ? new ArrayList<String>() : splitList(projectFields);
+  }
+
+  public char getCsvDelimiter() {
+    if (Strings.isNullOrEmpty(csvDelimiter)) {
+      return ',';
+    }
+    return "\\t".equals(csvDelimiter) ? '\t' : csvDelimiter.charAt(0);
+  }
+
+  public boolean getCsvHeader() {
+    return csvHeader != null && csvHeader;
+  }
+
+  public int getMaxRecordLength() {
+    return maxRecordLength == null ? DEFAULT_MAX_RECORD_LENGTH : maxRecordLength;
+  }
+
+  public int getFirstByteTimeout() {
+    return firstByteTimeout == null ? 0 : firstByteTimeout;
+  }
+
+  public long getMinThroughput() {
+    return minThroughput == null ? 0L : minThroughput;
+  }
+
+  public int getThroughputWindow() {
+    return throughputWindow == null ? DEFAULT_THROUGHPUT_WINDOW : throughputWindow;
+  }
+
+  public long getTransferDeadline() {
+    return transferDeadline == null ? 0L : transferDeadline;
+  }
+
+  public int getBufferSize() {
+    return bufferSize == null ? DEFAULT_BUFFER_SIZE : bufferSize;
+  }
+
+  public int getBufferCount() {
+    return bufferCount == null ? DEFAULT_BUFFER_COUNT : bufferCount;
+  }
+
+  public List<String> getAdditionalUrls() {
+    List<String> urls = new ArrayList<>();
+    if (!Strings.isNullOrEmpty(additionalUrls)) {
+      for (String additionalUrl : Splitter.on(DELIMITER).trimResults().omitEmptyStrings().split(additionalUrls)) {
+        urls.add(additionalUrl);
+      }
+    }
+    return urls;
+  }
+
+  public long getPackedFileSize() {
+    return packedFileSize == null ? DEFAULT_PACKED_FILE_SIZE : packedFileSize;
+  }
+
+  public long getPackedRecordSize() {
+    return packedRecordSize == null ? DEFAULT_PACKED_RECORD_SIZE : packedRecordSize;
+  }
+
+  @Nullable
+  public String getCacheDirectory() {
+    return Strings.isNullOrEmpty(cacheDirectory) ? null : cacheDirectory;
+  }
+
+  public long getCacheTtl() {
+    return cacheTtl == null ? DEFAULT_CACHE_TTL : cacheTtl;
+  }
+
+  public long getCacheMaxSize() {
+    return cacheMaxSize == null ? DEFAULT_CACHE_MAX_SIZE : cacheMaxSize;
+  }
+
+  public List<String> getCacheKeyHeaders() {
+    return splitList(cacheKeyHeaders);
+  }
+
+  @Nullable
+  public String getOAuth2TokenUrl() {
+    return Strings.isNullOrEmpty(oAuth2TokenUrl) ? null : oAuth2TokenUrl;
+  }
+
+  @Nullable
+  public String getOAuth2ClientId() {
+    return oAuth2ClientId;
+  }
+
+  @Nullable
+  public String getOAuth2ClientSecret() {
+    return oAuth2ClientSecret;
+  }
+
+  @Nullable
+  public String getOAuth2Scope() {
+    return Strings.isNullOrEmpty(oAuth2Scope) ? null : oAuth2Scope;
+  }
+
+  public long getOAuth2RefreshAhead() {
+    return oAuth2RefreshAhead == null ? DEFAULT_OAUTH2_REFRESH_AHEAD : oAuth2RefreshAhead;
+  }
+
+  public String getResponseProfile() {
+    return Strings.isNullOrEmpty(responseProfile) ? DEFAULT_RESPONSE_PROFILE : responseProfile;
+  }
+
+  public String getProfilePath() {
+    if (!Strings.isNullOrEmpty(profilePath)) {
+      return profilePath;
+    }
+    // hidden files are skipped by file sources that read the whole directory
+    int index = hdfsFilePath.lastIndexOf('/') + 1;
+    return hdfsFilePath.substring(0, index) + "." + hdfsFilePath.substring(index) + ".profile.json";
+  }
+
+  public List<String> getAdditionalDestinations() {
+    return Strings.isNullOrEmpty(additionalDestinations) ? new ArrayList<String>() : splitList(additionalDestinations);
+  }
+
+  public int getDestinationQuorum() {
+    return destinationQuorum == null ? getAdditionalDestinations().size() + 1 : destinationQuorum;
+  }
+
+  public int getDestinationBufferSize() {
+    return destinationBufferSize == null ? DEFAULT_DESTINATION_BUFFER_SIZE : destinationBufferSize;
+  }
+
+  public long getPollingWindow() {
+    return pollingWindow == null ? 0L : pollingWindow;
+  }
+
+  public long getPollingInterval() {
+    return pollingInterval == null ? DEFAULT_POLLING_INTERVAL : pollingInterval;
+  }
+
+  public boolean getLongPolling() {
+    return longPolling != null && longPolling;
+  }
+
+  public String getPollingBucketFormat() {
+    return Strings.isNullOrEmpty(pollingBucketFormat) ? DEFAULT_POLLING_BUCKET_FORMAT : pollingBucketFormat;
+  }
+
+  public int getPollingMaxFailures() {
+    return pollingMaxFailures == null ? DEFAULT_POLLING_MAX_FAILURES : pollingMaxFailures;
+  }
+
+  public long getStreamingWindow() {
+    return streamingWindow == null ? 0L : streamingWindow;
+  }
+
+  public long getStreamingRollInterval() {
+    return streamingRollInterval == null ? DEFAULT_STREAMING_ROLL_INTERVAL : streamingRollInterval;
+  }
+
+  public long getStreamingRollSize() {
+    return streamingRollSize == null ? DEFAULT_STREAMING_ROLL_SIZE : streamingRollSize;
+  }
+
+  public long getStreamingFlushInterval() {
+    return streamingFlushInterval == null ? DEFAULT_STREAMING_FLUSH_INTERVAL : streamingFlushInterval;
+  }
+
+  public long getStreamingMaxBackoff() {
+    return streamingMaxBackoff == null ? DEFAULT_STREAMING_MAX_BACKOFF : streamingMaxBackoff;
+  }
+
+  public int getPreviewSize() {
+    return previewSize == null ? DEFAULT_PREVIEW_SIZE : previewSize;
+  }
+
+  @Nullable
+  public String getJsonRecordsPath() {
+    return Strings.isNullOrEmpty(jsonRecordsPath) ? null : jsonRecordsPath;
+  }
+
+  public List<String> getDeltaKeyFields() {
+    return Strings.isNullOrEmpty(deltaKeyFields) ? new ArrayList<String>() : splitList(deltaKeyFields);
+  }
+
+  public String getDeltaIndexPath() {
+    if (!Strings.isNullOrEmpty(deltaIndexPath)) {
+      return deltaIndexPath;
+    }
+    int index = hdfsFilePath.lastIndexOf('/') + 1;
+    return hdfsFilePath.substring(0, index) + "." + hdfsFilePath.substring(index) + ".delta-index";
+  }
+
+  @Nullable
+  public String getDeltaDeletedKeysPath() {
+    return Strings.isNullOrEmpty(deltaDeletedKeysPath) ? null : deltaDeletedKeysPath;
+  }
+
+  @Nullable
+  public String getHostStatsDirectory() {
+    return Strings.isNullOrEmpty(hostStatsDirectory) ? null : hostStatsDirectory;
+  }
+
+  public boolean getAutoTune() {
+    return autoTune != null && autoTune;
+  }
+
+  @Nullable
+  public Integer getParallelRanges() {
+    return parallelRanges;
+  }
+
+  @Nullable
+  public Boolean getRequestCompression() {
+    return requestCompression;
+  }
+
+  public boolean getFailOnInvalidRecords() {
+    return RecordFilter.FAIL.equalsIgnoreCase(invalidRecords);
+  }
+
+  public Map<String, String> getRequestHeadersMap() {
+    return convertHeadersToMap(requestHeaders);
+  }
+
+  /**
+   * Validates a request of the preview endpoint. Unlike the config of a pipeline, a request may leave out required
+   * properties, so they are checked before the rest of the config is validated.
+   */
+  public void validatePreview(FailureCollector failureCollector) {
+    Map<String, String> required = new LinkedHashMap<>();
+    required.put(URL, url);
+    required.put(METHOD, method);
+    required.put(OUTPUT_FORMAT, outputFormat);
+    boolean complete = true;
+    for (Map.Entry<String, String> property : required.entrySet()) {
+      if (Strings.isNullOrEmpty(property.getValue())) {
+        failureCollector.addFailure(String.format("Property '%s' is required.", property.getKey()), null)
+          .withConfigProperty(property.getKey());
+        complete = false;
+      }
+    }
+    if (complete) {
+      validate(failureCollector);
+    }
+  }
+
+  public void validate(FailureCollector failureCollector) {
+    if (!containsMacro(URL)) {
+      try {
+        new URL(url);
+      } catch (MalformedURLException e) {
+        failureCollector
+          .addFailure(String.format("URL '%s' is malformed: '%s'", url, e.getMessage()), null)
+          .withConfigProperty(URL);
+      }
+    }
+
+    if (!containsMacro(CONNECT_TIMEOUT) && connectTimeout != null && connectTimeout < 0) {
+      failureCollector.addFailure(String.format("Invalid connection timeout '%d'.", connectTimeout),
+                                  "Connection timeout must be 0 or a positive number.")
+        .withConfigProperty(CONNECT_TIMEOUT);
+    }
+    if (!containsMacro(REQUEST_HEADERS) && !Strings.isNullOrEmpty(requestHeaders)) {
+      for (String chunk : requestHeaders.split(DELIMITER)) {
+        String[] keyValue = chunk.split(KV_DELIMITER);
+        if (keyValue.length != 2) {
+          failureCollector.addFailure(String.format("Unable to parse key-value pair '%s'.", chunk),
+                                      "Provide correct value for request headers field.")
+            .withConfigProperty(REQUEST_HEADERS);
+        }
+      }
+    }
+    if (!containsMacro(METHOD) && !METHODS.contains(method.toUpperCase())) {
+      failureCollector.addFailure(
+        String.format("Invalid request method '%s'.", method),
+        String.format("Request method must be one of '%s'.", Joiner.on(',').join(METHODS)))
+        .withConfigProperty(METHOD);
+    }
+    if (!containsMacro(READ_TIMEOUT) && readTimeout != null && readTimeout < 0) {
+      failureCollector.addFailure(
+        String.format("Invalid read timeout '%d'.", readTimeout),
+        "Read timeout must be 0 or a positive number.")
+        .withConfigProperty(READ_TIMEOUT);
+    }
+    if (!containsMacro(TLS_PROTOCOLS) && getTlsProtocols().isEmpty()) {
+      failureCollector.addFailure("At least one TLS protocol must be specified.", null)
+        .withConfigProperty(TLS_PROTOCOLS);
+    }
+    if (sslSessionCacheSize != null && sslSessionCacheSize < 0) {
+      failureCollector.addFailure(
+        String.format("Invalid TLS session cache size '%d'.", sslSessionCacheSize),
+        "TLS session cache size must be 0 or a positive number.")
+        .withConfigProperty(SSL_SESSION_CACHE_SIZE);
+    }
+    if (sslSessionTimeout != null && sslSessionTimeout < 0) {
+      failureCollector.addFailure(
+        String.format("Invalid TLS session timeout '%d'.", sslSessionTimeout),
+        "TLS session timeout must be 0 or a positive number.")
+        .withConfigProperty(SSL_SESSION_TIMEOUT);
+    }
+    if (!containsMacro(MIRROR_URLS) && !Strings.isNullOrEmpty(mirrorUrls)) {
+      for (String mirror : splitList(mirrorUrls)) {
+        try {
+          new URL(mirror);
+        } catch (MalformedURLException e) {
+          failureCollector
+            .addFailure(String.format("Mirror URL '%s' is malformed: '%s'", mirror, e.getMessage()), null)
+            .withConfigProperty(MIRROR_URLS);
+        }
+      }
+    }
+    if (mirrorProbeTimeout != null && mirrorProbeTimeout <= 0) {
+      failureCollector.addFailure(
+        String.format("Invalid mirror probe timeout '%d'.", mirrorProbeTimeout),
+        "Mirror probe timeout must be a positive number.")
+        .withConfigProperty(MIRROR_PROBE_TIMEOUT);
+    }
+    if (minMirrorThroughput != null && minMirrorThroughput < 0) {
+      failureCollector.addFailure(
+        String.format("Invalid minimum mirror throughput '%d'.", minMirrorThroughput),
+        "Minimum mirror throughput must be 0 or a positive number.")
+        .withConfigProperty(MIN_MIRROR_THROUGHPUT);
+    }
+    if (!containsMacro(FIRST_BYTE_TIMEOUT) && firstByteTimeout != null && firstByteTimeout < 0) {
+      failureCollector.addFailure(
+        String.format("Invalid first byte timeout '%d'.", firstByteTimeout),
+        "First byte timeout must be 0 or a positive number.")
+        .withConfigProperty(FIRST_BYTE_TIMEOUT);
+    }
+    if (!containsMacro(MIN_THROUGHPUT) && minThroughput != null && minThroughput < 0) {
+      failureCollector.addFailure(
+        String.format("Invalid minimum throughput '%d'.", minThroughput),
+        "Minimum throughput must be 0 or a positive number.")
+        .withConfigProperty(MIN_THROUGHPUT);
+    }
+    if (throughputWindow != null && throughputWindow <= 0) {
+      failureCollector.addFailure(
+        String.format("Invalid throughput window '%d'.", throughputWindow),
+        "Throughput window must be a positive number.")
+        .withConfigProperty(THROUGHPUT_WINDOW);
+    }
+    if (!containsMacro(TRANSFER_DEADLINE) && transferDeadline != null && transferDeadline < 0) {
+      failureCollector.addFailure(
+        String.format("Invalid transfer deadline '%d'.", transferDeadline),
+        "Transfer deadline must be 0 or a positive number.")
+        .withConfigProperty(TRANSFER_DEADLINE);
+    }
+    if (bufferSize != null && bufferSize <= 0) {
+      failureCollector.addFailure(
+        String.format("Invalid buffer size '%d'.", bufferSize),
+        "Buffer size must be a positive number.")
+        .withConfigProperty(BUFFER_SIZE);
+    }
+    if (bufferCount != null && bufferCount < 0) {
+      failureCollector.addFailure(
+        String.format("Invalid buffer count '%d'.", bufferCount),
+        "Buffer count must be 0 or a positive number.")
+        .withConfigProperty(BUFFER_COUNT);
+    }
+    if (!containsMacro(ADDITIONAL_URLS) && !getAdditionalUrls().isEmpty()) {
+      if (!isPacked()) {
+        failureCollector.addFailure("Additional urls can only be fetched with the SequenceFile output format.",
+                                    "Set the output format to SequenceFile or remove the additional urls.")
+          .withConfigProperty(ADDITIONAL_URLS);
+      }
+      for (String additionalUrl : getAdditionalUrls()) {
+        try {
+          new URL(additionalUrl);
+        } catch (MalformedURLException e) {
+          failureCollector
+            .addFailure(String.format("Additional URL '%s' is malformed: '%s'", additionalUrl, e.getMessage()), null)
+            .withConfigProperty(ADDITIONAL_URLS);
+        }
+      }
+    }
+    if (packedFileSize != null && packedFileSize <= 0) {
+      failureCollector.addFailure(
+        String.format("Invalid packed file size '%d'.", packedFileSize),
+        "Packed file size must be a positive number.")
+        .withConfigProperty(PACKED_FILE_SIZE);
+    }
+    if (packedRecordSize != null && (packedRecordSize <= 0 || packedRecordSize > Integer.MAX_VALUE - 8)) {
+      failureCollector.addFailure(
+        String.format("Invalid packed record size '%d'.", packedRecordSize),
+        "Packed record size must be a positive number of at most 2 GB.")
+        .withConfigProperty(PACKED_RECORD_SIZE);
+    }
+    if (getCacheDirectory() != null && isPacked()) {
+      failureCollector.addFailure("Caching is not supported with the SequenceFile output format.",
+                                  "Remove the cache directory or use another output format.")
+        .withConfigProperty(CACHE_DIRECTORY);
+    }
+    if (!containsMacro(CACHE_TTL) && cacheTtl != null && cacheTtl <= 0) {
+      failureCollector.addFailure(
+        String.format("Invalid cache TTL '%d'.", cacheTtl),
+        "Cache TTL must be a positive number.")
+        .withConfigProperty(CACHE_TTL);
+    }
+    if (cacheMaxSize != null && cacheMaxSize <= 0) {
+      failureCollector.addFailure(
+        String.format("Invalid cache max size '%d'.", cacheMaxSize),
+        "Cache max size must be a positive number.")
+        .withConfigProperty(CACHE_MAX_SIZE);
+    }
+    if (!containsMacro(ADDITIONAL_DESTINATIONS) && !getAdditionalDestinations().isEmpty() && isPacked()) {
+      failureCollector.addFailure("Additional destinations are not supported with the SequenceFile output format.",
+                                  "Remove the additional destinations or use another output format.")
+        .withConfigProperty(ADDITIONAL_DESTINATIONS);
+    }
+    if (!containsMacro(ADDITIONAL_DESTINATIONS) && !containsMacro(DESTINATION_QUORUM)
+      && (getDestinationQuorum() < 1 || getDestinationQuorum() > getAdditionalDestinations().size() + 1)) {
+      failureCollector.addFailure(
+        String.format("Invalid destination quorum '%d'.", getDestinationQuorum()),
+        String.format("Destination quorum must be between 1 and the number of destinations, %d.",
+                      getAdditionalDestinations().size() + 1))
+        .withConfigProperty(DESTINATION_QUORUM);
+    }
+    if (destinationBufferSize != null && destinationBufferSize <= 0) {
+      failureCollector.addFailure(
+        String.format("Invalid destination buffer size '%d'.", destinationBufferSize),
+        "Destination buffer size must be a positive number.")
+        .withConfigProperty(DESTINATION_BUFFER_SIZE);
+    }
+    if (previewSize != null && previewSize <= 0) {
+      failureCollector.addFailure(
+        String.format("Invalid preview size '%d'.", previewSize),
+        "Preview size must be a positive number.")
+        .withConfigProperty(PREVIEW_SIZE);
+    }
+    validatePolling(failureCollector);
+    validateStreaming(failureCollector);
+    validateOAuth2(failureCollector);
+    validateJsonRecordsPath(failureCollector);
+    validateDelta(failureCollector);
+    validateFilter(failureCollector);
+    validateInvalidRecords(failureCollector);
+    validateAutoTune(failureCollector);
+  }
+
+  private void validatePolling(FailureCollector failureCollector) {
+    if (containsMacro(POLLING_WINDOW) || getPollingWindow() == 0) {
+      return;
+    }
+    if (getPollingWindow() < 0) {
+      failureCollector.addFailure(
+        String.format("Invalid polling window '%d'.", pollingWindow),
+        "Polling window must be 0 or more.")
+        .withConfigProperty(POLLING_WINDOW);
+    }
+    if (isPacked() || getCacheDirectory() != null || !getAdditionalDestinations().isEmpty()) {
+      failureCollector.addFailure(
+        "Polling is not supported with the SequenceFile output format, the cache or additional destinations.",
+        "Remove the polling window or the conflicting properties.")
+        .withConfigProperty(POLLING_WINDOW);
+    }
+    if (!containsMacro(POLLING_INTERVAL) && getPollingInterval() <= 0) {
+      failureCollector.addFailure(
+        String.format("Invalid polling interval '%d'.", pollingInterval),
+        "Polling interval must be a positive number.")
+        .withConfigProperty(POLLING_INTERVAL);
+    }
+    try {
+      new SimpleDateFormat(getPollingBucketFormat());
+    } catch (IllegalArgumentException e) {
+      failureCollector.addFailure(
+        String.format("Polling bucket format '%s' is invalid: '%s'", pollingBucketFormat, e.getMessage()), null)
+        .withConfigProperty(POLLING_BUCKET_FORMAT);
+    }
+    if (!containsMacro(POLLING_MAX_FAILURES) && getPollingMaxFailures() <= 0) {
+      failureCollector.addFailure(
+        String.format("Invalid polling max failures '%d'.", pollingMaxFailures),
+        "Polling max failures must be a positive number.")
+        .withConfigProperty(POLLING_MAX_FAILURES);
+    }
+  }
+
+  private void validateStreaming(FailureCollector failureCollector) {
+    if (containsMacro(STREAMING_WINDOW) || getStreamingWindow() == 0) {
+      return;
+    }
+    if (getStreamingWindow() < 0) {
+      failureCollector.addFailure(
+        String.format("Invalid streaming window '%d'.", streamingWindow),
+        "Streaming window must be 0 or more.")
+        .withConfigProperty(STREAMING_WINDOW);
+    }
+    if (!containsMacro(POLLING_WINDOW) && getPollingWindow() > 0) {
+      failureCollector.addFailure("Streaming and polling cannot be used together.",
+                                  "Remove the streaming window or the polling window.")
+        .withConfigProperty(STREAMING_WINDOW).withConfigProperty(POLLING_WINDOW);
+    }
+    if (!containsMacro(OUTPUT_FORMAT) && !"Text".equalsIgnoreCase(outputFormat)) {
+      failureCollector.addFailure("Streaming writes events as lines of text.",
+                                  "Set the output format to Text.")
+        .withConfigProperty(OUTPUT_FORMAT);
+    }
+    if (getCacheDirectory() != null || !getAdditionalDestinations().isEmpty()) {
+      failureCollector.addFailure("Streaming is not supported with the cache or additional destinations.",
+                                  "Remove the streaming window or the conflicting properties.")
+        .withConfigProperty(STREAMING_WINDOW);
+    }
+    if (!containsMacro(INVALID_RECORDS) && getFailOnInvalidRecords()) {
+      failureCollector.addFailure("Invalid records of a stream are always skipped.",
+                                  "Set invalid records to 'Skip' or remove the streaming window.")
+        .withConfigProperty(INVALID_RECORDS).withConfigProperty(STREAMING_WINDOW);
+    }
+    if (!containsMacro(STREAMING_ROLL_INTERVAL) && getStreamingRollInterval() <= 0) {
+      failureCollector.addFailure(
+        String.format("Invalid streaming roll interval '%d'.", streamingRollInterval),
+        "Streaming roll interval must be a positive number.")
+        .withConfigProperty(STREAMING_ROLL_INTERVAL);
+    }
+    if (!containsMacro(STREAMING_ROLL_SIZE) && getStreamingRollSize() <= 0) {
+      failureCollector.addFailure(
+        String.format("Invalid streaming roll size '%d'.", streamingRollSize),
+        "Streaming roll size must be a positive number.")
+        .withConfigProperty(STREAMING_ROLL_SIZE);
+    }
+    if (!containsMacro(STREAMING_FLUSH_INTERVAL) && getStreamingFlushInterval() <= 0) {
+      failureCollector.addFailure(
+        String.format("Invalid streaming flush interval '%d'.", streamingFlushInterval),
+        "Streaming flush interval must be a positive number.")
+        .withConfigProperty(STREAMING_FLUSH_INTERVAL);
+    }
+    if (!containsMacro(STREAMING_MAX_BACKOFF) && getStreamingMaxBackoff() <= 0) {
+      failureCollector.addFailure(
+        String.format("Invalid streaming max backoff '%d'.", streamingMaxBackoff),
+        "Streaming max backoff must be a positive number.")
+        .withConfigProperty(STREAMING_MAX_BACKOFF);
+    }
+  }
+
+  private void validateOAuth2(FailureCollector failureCollector) {
+    if (containsMacro(OAUTH2_TOKEN_URL) || getOAuth2TokenUrl() == null) {
+      return;
+    }
+    try {
+      new URL(oAuth2TokenUrl);
+    } catch (MalformedURLException e) {
+      failureCollector.addFailure(String.format("OAuth2 token URL '%s' is malformed: '%s'", oAuth2TokenUrl,
+                                                e.getMessage()), null)
+        .withConfigProperty(OAUTH2_TOKEN_URL);
+    }
+    if (!containsMacro(OAUTH2_CLIENT_ID) && Strings.isNullOrEmpty(oAuth2ClientId)) {
+      failureCollector.addFailure("OAuth2 client id must be specified with the OAuth2 token URL.", null)
+        .withConfigProperty(OAUTH2_CLIENT_ID);
+    }
+    if (!containsMacro(OAUTH2_CLIENT_SECRET) && Strings.isNullOrEmpty(oAuth2ClientSecret)) {
+      failureCollector.addFailure("OAuth2 client secret must be specified with the OAuth2 token URL.", null)
+        .withConfigProperty(OAUTH2_CLIENT_SECRET);
+    }
+    if (oAuth2RefreshAhead != null && oAuth2RefreshAhead < 0) {
+      failureCollector.addFailure(
+        String.format("Invalid OAuth2 refresh ahead time '%d'.", oAuth2RefreshAhead),
+        "OAuth2 refresh ahead time must be 0 or more.")
+        .withConfigProperty(OAUTH2_REFRESH_AHEAD);
+    }
+  }
+
+  private void validateJsonRecordsPath(FailureCollector failureCollector) {
+    if (containsMacro(JSON_RECORDS_PATH) || getJsonRecordsPath() == null) {
+      return;
+    }
+    try {
+      JsonRecordReader.parsePath(jsonRecordsPath);
+    } catch (IllegalArgumentException e) {
+      failureCollector.addFailure(String.format("JSON records path '%s' is invalid: '%s'", jsonRecordsPath,
+                                                e.getMessage()), "Use a path such as '$' or '$.data.items'.")
+        .withConfigProperty(JSON_RECORDS_PATH);
+    }
+    if (!outputFormat.equalsIgnoreCase("Text")) {
+      failureCollector.addFailure("JSON records can only be rewritten for Text data.",
+                                  "Set the output format to Text or remove the JSON records path.")
+        .withConfigProperty(JSON_RECORDS_PATH);
+    }
+    if (RecordFilter.CSV.equals(getFilterType())) {
+      failureCollector.addFailure("JSON records cannot be filtered as CSV.",
+                                  "Use the JSON or Regex filter type.")
+        .withConfigProperty(FILTER_TYPE);
+    }
+    if (!containsMacro(STREAMING_WINDOW) && getStreamingWindow() > 0) {
+      failureCollector.addFailure("JSON records cannot be rewritten when streaming, events are written as lines.",
+                                  "Remove the JSON records path or the streaming window.")
+        .withConfigProperty(JSON_RECORDS_PATH).withConfigProperty(STREAMING_WINDOW);
+    }
+  }
+
+  private void validateDelta(FailureCollector failureCollector) {
+    if (containsMacro(DELTA_KEY_FIELDS) || getDeltaKeyFields().isEmpty()) {
+      return;
+    }
+    if (!outputFormat.equalsIgnoreCase("Text")) {
+      failureCollector.addFailure("Deltas can only be extracted from Text data.",
+                                  "Set the output format to Text or remove the delta key fields.")
+        .withConfigProperty(DELTA_KEY_FIELDS);
+    }
+    if (getCacheDirectory() != null || (!containsMacro(POLLING_WINDOW) && getPollingWindow() > 0)
+      || (!containsMacro(STREAMING_WINDOW) && getStreamingWindow() > 0)) {
+      failureCollector.addFailure("Deltas are not supported with the cache, polling or streaming.",
+                                  "Remove the delta key fields or the conflicting properties.")
+        .withConfigProperty(DELTA_KEY_FIELDS);
+    }
+    // only data filtered as CSV is known to be CSV here, other data fails on its first CSV record instead
+    if (RecordFilter.CSV.equals(getFilterType()) && !containsMacro(CSV_HEADER) && !getCsvHeader()) {
+      for (String column : getDeltaKeyFields()) {
+        if (!column.matches("\\d+")) {
+          failureCollector.addFailure(
+            String.format("Invalid key column index '%s'.", column),
+            "Key columns must be 0-based indexes when the CSV data has no header.")
+            .withConfigProperty(DELTA_KEY_FIELDS);
+        }
+      }
+    }
+  }
+
+  private void validateAutoTune(FailureCollector failureCollector) {
+    if (getAutoTune() && !containsMacro(HOST_STATS_DIRECTORY) && getHostStatsDirectory() == null) {
+      failureCollector.addFailure("Auto tuning needs the performance history of the host.",
+                                  "Set the host stats directory or disable auto tuning.")
+        .withConfigProperty(AUTO_TUNE).withConfigProperty(HOST_STATS_DIRECTORY);
+    }
+    if (containsMacro(PARALLEL_RANGES) || parallelRanges == null) {
+      return;
+    }
+    if (parallelRanges < 1) {
+      failureCollector.addFailure(String.format("Invalid number of parallel ranges '%d'.", parallelRanges),
+                                  "Number of parallel ranges must be a positive number.")
+        .withConfigProperty(PARALLEL_RANGES);
+    } else if (parallelRanges > 1 && (isPacked() || (!containsMacro(MIRROR_URLS) && getUrls().size() > 1))) {
+      failureCollector.addFailure("Parallel range requests are not supported with mirror urls or packed output.",
+                                  "Set the parallel ranges to 1 or remove the conflicting properties.")
+        .withConfigProperty(PARALLEL_RANGES);
+    } else if (parallelRanges > 1 && !containsMacro(METHOD) && !"GET".equalsIgnoreCase(method)) {
+      // every range request would send the request body again
+      failureCollector.addFailure("Parallel range requests are only supported for GET requests.",
+                                  "Set the parallel ranges to 1 or use the GET method.")
+        .withConfigProperty(PARALLEL_RANGES).withConfigProperty(METHOD);
+    } else if (parallelRanges > 1 && Boolean.TRUE.equals(requestCompression)) {
+      failureCollector.addFailure("Parallel range requests cannot be compressed.",
+                                  "Set the parallel ranges to 1 or do not request compression.")
+        .withConfigProperty(PARALLEL_RANGES).withConfigProperty(REQUEST_COMPRESSION);
+    }
+  }
+
+  private void validateFilter(FailureCollector failureCollector) {
+    String type = getFilterType();
+    if (type == null) {
+      return;
+    }
+    if (!FILTER_TYPES.contains(type)) {
+      failureCollector.addFailure(
+        String.format("Invalid filter type '%s'.", type),
+        String.format("Filter type must be one of '%s'.", Joiner.on(',').join(FILTER_TYPES)))
+        .withConfigProperty(FILTER_TYPE);
+      return;
+    }
+    if (!outputFormat.equalsIgnoreCase("Text")) {
+      failureCollector.addFailure("Records can only be filtered for Text data.",
+                                  "Set the output format to Text or remove the filter type.")
+        .withConfigProperty(FILTER_TYPE);
+    }
+    if (!containsMacro(FILTER_PATTERN) && getFilterPattern() != null) {
+      try {
+        Pattern.compile(filterPattern);
+      } catch (PatternSyntaxException e) {
+        failureCollector.addFailure(String.format("Filter pattern '%s' is invalid: '%s'", filterPattern,
+                                                  e.getMessage()), null)
+          .withConfigProperty(FILTER_PATTERN);
+      }
+    }
+    if (RecordFilter.REGEX.equals(type) && !containsMacro(FILTER_PATTERN) && getFilterPattern() == null) {
+      failureCollector.addFailure("A filter pattern is required for the Regex filter.", null)
+        .withConfigProperty(FILTER_PATTERN);
+    }
+    if (!RecordFilter.REGEX.equals(type) && !containsMacro(FILTER_FIELD) && !containsMacro(PROJECT_FIELDS)) {
+      if (getFilterPattern() != null && getFilterField() == null) {
+        failureCollector.addFailure("A filter field is required to match the filter pattern against.", null)
+          .withConfigProperty(FILTER_FIELD);
+      }
+      if (getFilterPattern() == null && getFilterField() == null && getProjectFields().isEmpty()) {
+        failureCollector.addFailure("Either a filter pattern or fields to project must be specified.", null)
+          .withConfigProperty(FILTER_PATTERN).withConfigProperty(PROJECT_FIELDS);
+      }
+    }
+    if (RecordFilter.CSV.equals(type) && !getCsvHeader() && !containsMacro(FILTER_FIELD)
+      && !containsMacro(PROJECT_FIELDS)) {
+      List<String> columns = new ArrayList<>(getProjectFields());
+      if (getFilterField() != null) {
+        columns.add(getFilterField());
+      }
+      for (String column : columns) {
+        if (!column.matches("\\d+")) {
+          failureCollector.addFailure(
+            String.format("Invalid column index '%s'.", column),
+            "Columns must be 0-based indexes when the CSV data has no header.")
+            .withConfigProperty(column.equals(getFilterField()) ? FILTER_FIELD : PROJECT_FIELDS);
+        }
+      }
+    }
+    if (maxRecordLength != null && maxRecordLength <= 0) {
+      failureCollector.addFailure(
+        String.format("Invalid maximum record length '%d'.", maxRecordLength),
+        "Maximum record length must be a positive number.")
+        .withConfigProperty(MAX_RECORD_LENGTH);
+    }
+  }
+
+  /**
+   * Validates the handling of invalid records, which applies to the JSON records path as well as to the filters.
+   */
+  private void validateInvalidRecords(FailureCollector failureCollector) {
+    if (containsMacro(INVALID_RECORDS) || Strings.isNullOrEmpty(invalidRecords)) {
+      return;
+    }
+    for (String policy : INVALID_RECORD_POLICIES) {
+      if (policy.equalsIgnoreCase(invalidRecords)) {
+        return;
+      }
+    }
+    failureCollector.addFailure(
+      String.format("Invalid handling of invalid records '%s'.", invalidRecords),
+      String.format("Invalid records must be one of '%s'.", Joiner.on(',').join(INVALID_RECORD_POLICIES)))
+      .withConfigProperty(INVALID_RECORDS);
+  }
+
+  private static List<String> splitList(String value) {
+    List<String> values = new ArrayList<>();
+    for (String item : Splitter.on(',').trimResults().omitEmptyStrings().split(value)) {
+      values.add(item);
+    }
+    return values;
+  }
+
+  private Map<String, String> convertHeadersToMap(String headersString) {
+    Map<String, String> headersMap = new HashMap<>();
+    if (!Strings.isNullOrEmpty(headersString)) {
+      for (String chunk : headersString.split(DELIMITER)) {
+        String[] keyValue = chunk.split(KV_DELIMITER, 2);
+        if (keyValue.length == 2) {
+          headersMap.put(keyValue[0], keyValue[1]);
+        }
+      }
+    }
+    return headersMap;
+  }
+
+  /**
+   * Builder for HTTPToHDFSActionConfig
+   */
+  public static final class Builder {
+
+    private String hdfsFilePath;
+    private String url;
+    private String method;
+    private String body;
+    private String requestHeaders;
+    private String outputFormat;
     private String charset;
     private Boolean followRedirects;
     private Boolean disableSSLValidation;
@@ -331,6 +1755,69 @@ public class HTTPToHDFSActionConfig extends PluginConfig {
     private Integer readTimeout;
     private String outputPath;
     private String responseHeaders;
+    private String tlsProtocols;
+    private String trustStorePath;
+    private String trustStoreType;
+    private String trustStorePassword;
+    private String keyStorePath;
+    private String keyStoreType;
+    private String keyStorePassword;
+    private Integer sslSessionCacheSize;
+    private Integer sslSessionTimeout;
+    private String mirrorUrls;
+    private Integer mirrorProbeTimeout;
+    private Long minMirrorThroughput;
+    private String sourceRanges;
+    private String filterType;
+    private String filterField;
+    private String filterPattern;
+    private String projectFields;
+    private String csvDelimiter;
+    private Boolean csvHeader;
+    private Integer maxRecordLength;
+    private Integer firstByteTimeout;
+    private Long minThroughput;
+    private Integer throughputWindow;
+    private Long transferDeadline;
+    private Integer bufferSize;
+    private Integer bufferCount;
+    private String additionalUrls;
+    private Long packedFileSize;
+    private Long packedRecordSize;
+    private String cacheDirectory;
+    private Long cacheTtl;
+    private Long cacheMaxSize;
+    private String cacheKeyHeaders;
+    private String oAuth2TokenUrl;
+    private String oAuth2ClientId;
+    private String oAuth2ClientSecret;
+    private String oAuth2Scope;
+    private Long oAuth2RefreshAhead;
+    private String responseProfile;
+    private String profilePath;
+    private String additionalDestinations;
+    private Integer destinationQuorum;
+    private Integer destinationBufferSize;
+    private Long pollingWindow;
+    private Long pollingInterval;
+    private Boolean longPolling;
+    private String pollingBucketFormat;
+    private Integer pollingMaxFailures;
+    private Long streamingWindow;
+    private Long streamingRollInterval;
+    private Long streamingRollSize;
+    private Long streamingFlushInterval;
+    private Long streamingMaxBackoff;
+    private Integer previewSize;
+    private String jsonRecordsPath;
+    private String deltaKeyFields;
+    private String deltaIndexPath;
+    private String deltaDeletedKeysPath;
+    private String hostStatsDirectory;
+    private Boolean autoTune;
+    private Integer parallelRanges;
+    private Boolean requestCompression;
+    private String invalidRecords;
 
     private Builder() {
     }
@@ -405,6 +1892,321 @@ public class HTTPToHDFSActionConfig extends PluginConfig {
       return this;
     }
 
+    public Builder setTlsProtocols(String tlsProtocols) {
+      this.tlsProtocols = tlsProtocols;
+      return this;
+    }
+
+    public Builder setTrustStorePath(String trustStorePath) {
+      this.trustStorePath = trustStorePath;
+      return this;
+    }
+
+    public Builder setTrustStoreType(String trustStoreType) {
+      this.trustStoreType = trustStoreType;
+      return this;
+    }
+
+    public Builder setTrustStorePassword(String trustStorePassword) {
+      this.trustStorePassword = trustStorePassword;
+      return this;
+    }
+
+    public Builder setKeyStorePath(String keyStorePath) {
+      this.keyStorePath = keyStorePath;
+      return this;
+    }
+
+    public Builder setKeyStoreType(String keyStoreType) {
+      this.keyStoreType = keyStoreType;
+      return this;
+    }
+
+    public Builder setKeyStorePassword(String keyStorePassword) {
+      this.keyStorePassword = keyStorePassword;
+      return this;
+    }
+
+    public Builder setSslSessionCacheSize(Integer sslSessionCacheSize) {
+      this.sslSessionCacheSize = sslSessionCacheSize;
+      return this;
+    }
+
+    public Builder setSslSessionTimeout(Integer sslSessionTimeout) {
+      this.sslSessionTimeout = sslSessionTimeout;
+      return this;
+    }
+
+    public Builder setMirrorUrls(String mirrorUrls) {
+      this.mirrorUrls = mirrorUrls;
+      return this;
+    }
+
+    public Builder setMirrorProbeTimeout(Integer mirrorProbeTimeout) {
+      this.mirrorProbeTimeout = mirrorProbeTimeout;
+      return this;
+    }
+
+    public Builder setMinMirrorThroughput(Long minMirrorThroughput) {
+      this.minMirrorThroughput = minMirrorThroughput;
+      return this;
+    }
+
+    public Builder setSourceRanges(String sourceRanges) {
+      this.sourceRanges = sourceRanges;
+      return this;
+    }
+
+    public Builder setFilterType(String filterType) {
+      this.filterType = filterType;
+      return this;
+    }
+
+    public Builder setFilterField(String filterField) {
+      this.filterField = filterField;
+      return this;
+    }
+
+    public Builder setFilterPattern(String filterPattern) {
+      this.filterPattern = filterPattern;
+      return this;
+    }
+
+    public Builder setProjectFields(String projectFields) {
+      this.projectFields = projectFields;
+      return this;
+    }
+
+    public Builder setCsvDelimiter(String csvDelimiter) {
+      this.csvDelimiter = csvDelimiter;
+      return this;
+    }
+
+    public Builder setCsvHeader(Boolean csvHeader) {
+      this.csvHeader = csvHeader;
+      return this;
+    }
+
+    public Builder setMaxRecordLength(Integer maxRecordLength) {
+      this.maxRecordLength = maxRecordLength;
+      return this;
+    }
+
+    public Builder setFirstByteTimeout(Integer firstByteTimeout) {
+      this.firstByteTimeout = firstByteTimeout;
+      return this;
+    }
+
+    public Builder setMinThroughput(Long minThroughput) {
+      this.minThroughput = minThroughput;
+      return this;
+    }
+
+    public Builder setThroughputWindow(Integer throughputWindow) {
+      this.throughputWindow = throughputWindow;
+      return this;
+    }
+
+    public Builder setTransferDeadline(Long transferDeadline) {
+      this.transferDeadline = transferDeadline;
+      return this;
+    }
+
+    public Builder setBufferSize(Integer bufferSize) {
+      this.bufferSize = bufferSize;
+      return this;
+    }
+
+    public Builder setBufferCount(Integer bufferCount) {
+      this.bufferCount = bufferCount;
+      return this;
+    }
+
+    public Builder setAdditionalUrls(String additionalUrls) {
+      this.additionalUrls = additionalUrls;
+      return this;
+    }
+
+    public Builder setPackedFileSize(Long packedFileSize) {
+      this.packedFileSize = packedFileSize;
+      return this;
+    }
+
+    public Builder setPackedRecordSize(Long packedRecordSize) {
+      this.packedRecordSize = packedRecordSize;
+      return this;
+    }
+
+    public Builder setCacheDirectory(String cacheDirectory) {
+      this.cacheDirectory = cacheDirectory;
+      return this;
+    }
+
+    public Builder setCacheTtl(Long cacheTtl) {
+      this.cacheTtl = cacheTtl;
+      return this;
+    }
+
+    public Builder setCacheMaxSize(Long cacheMaxSize) {
+      this.cacheMaxSize = cacheMaxSize;
+      return this;
+    }
+
+    public Builder setCacheKeyHeaders(String cacheKeyHeaders) {
+      this.cacheKeyHeaders = cacheKeyHeaders;
+      return this;
+    }
+
+    public Builder setOAuth2TokenUrl(String oAuth2TokenUrl) {
+      this.oAuth2TokenUrl = oAuth2TokenUrl;
+      return this;
+    }
+
+    public Builder setOAuth2ClientId(String oAuth2ClientId) {
+      this.oAuth2ClientId = oAuth2ClientId;
+      return this;
+    }
+
+    public Builder setOAuth2ClientSecret(String oAuth2ClientSecret) {
+      this.oAuth2ClientSecret = oAuth2ClientSecret;
+      return this;
+    }
+
+    public Builder setOAuth2Scope(String oAuth2Scope) {
+      this.oAuth2Scope = oAuth2Scope;
+      return this;
+    }
+
+    public Builder setOAuth2RefreshAhead(Long oAuth2RefreshAhead) {
+      this.oAuth2RefreshAhead = oAuth2RefreshAhead;
+      return this;
+    }
+
+    public Builder setResponseProfile(String responseProfile) {
+      this.responseProfile = responseProfile;
+      return this;
+    }
+
+    public Builder setProfilePath(String profilePath) {
+      this.profilePath = profilePath;
+      return this;
+    }
+
+    public Builder setAdditionalDestinations(String additionalDestinations) {
+      this.additionalDestinations = additionalDestinations;
+      return this;
+    }
+
+    public Builder setDestinationQuorum(Integer destinationQuorum) {
+      this.destinationQuorum = destinationQuorum;
+      return this;
+    }
+
+    public Builder setDestinationBufferSize(Integer destinationBufferSize) {
+      this.destinationBufferSize = destinationBufferSize;
+      return this;
+    }
+
+    public Builder setPollingWindow(Long pollingWindow) {
+      this.pollingWindow = pollingWindow;
+      return this;
+    }
+
+    public Builder setPollingInterval(Long pollingInterval) {
+      this.pollingInterval = pollingInterval;
+      return this;
+    }
+
+    public Builder setLongPolling(Boolean longPolling) {
+      this.longPolling = longPolling;
+      return this;
+    }
+
+    public Builder setPollingBucketFormat(String pollingBucketFormat) {
+      this.pollingBucketFormat = pollingBucketFormat;
+      return this;
+    }
+
+    public Builder setPollingMaxFailures(Integer pollingMaxFailures) {
+      this.pollingMaxFailures = pollingMaxFailures;
+      return this;
+    }
+
+    public Builder setStreamingWindow(Long streamingWindow) {
+      this.streamingWindow = streamingWindow;
+      return this;
+    }
+
+    public Builder setStreamingRollInterval(Long streamingRollInterval) {
+      this.streamingRollInterval = streamingRollInterval;
+      return this;
+    }
+
+    public Builder setStreamingRollSize(Long streamingRollSize) {
+      this.streamingRollSize = streamingRollSize;
+      return this;
+    }
+
+    public Builder setStreamingFlushInterval(Long streamingFlushInterval) {
+      this.streamingFlushInterval = streamingFlushInterval;
+      return this;
+    }
+
+    public Builder setStreamingMaxBackoff(Long streamingMaxBackoff) {
+      this.streamingMaxBackoff = streamingMaxBackoff;
+      return this;
+    }
+
+    public Builder setPreviewSize(Integer previewSize) {
+      this.previewSize = previewSize;
+      return this;
+    }
+
+    public Builder setJsonRecordsPath(String jsonRecordsPath) {
+      this.jsonRecordsPath = jsonRecordsPath;
+      return this;
+    }
+
+    public Builder setDeltaKeyFields(String deltaKeyFields) {
+      this.deltaKeyFields = deltaKeyFields;
+      return this;
+    }
+
+    public Builder setDeltaIndexPath(String deltaIndexPath) {
+      this.deltaIndexPath = deltaIndexPath;
+      return this;
+    }
+
+    public Builder setDeltaDeletedKeysPath(String deltaDeletedKeysPath) {
+      this.deltaDeletedKeysPath = deltaDeletedKeysPath;
+      return this;
+    }
+
+    public Builder setHostStatsDirectory(String hostStatsDirectory) {
+      this.hostStatsDirectory = hostStatsDirectory;
+      return this;
+    }
+
+    public Builder setAutoTune(Boolean autoTune) {
+      this.autoTune = autoTune;
+      return this;
+    }
+
+    public Builder setParallelRanges(Integer parallelRanges) {
+      this.parallelRanges = parallelRanges;
+      return this;
+    }
+
+    public Builder setRequestCompression(Boolean requestCompression) {
+      this.requestCompression = requestCompression;
+      return this;
+    }
+
+    public Builder setInvalidRecords(String invalidRecords) {
+      this.invalidRecords = invalidRecords;
+      return this;
+    }
+
     public HTTPToHDFSActionConfig build() {
       return new HTTPToHDFSActionConfig(this);
     }
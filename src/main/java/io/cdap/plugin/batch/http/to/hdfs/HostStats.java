@@ -0,0 +1,350 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.batch.http.to.hdfs;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * Performance history of the hosts the action connects to, kept in one small JSON file per host in an HDFS
+ * directory.
+ *
+ * The history of a host is read the first time a url of the host is used and written back by {@link #save()}. Only
+ * the most recent requests and transfers are kept, so the history follows a host whose performance changes. Runs
+ * that save the history of the same host at the same time do not merge their samples, the last one wins, which
+ * only loses a few samples.
+ */
+final class HostStats {
+  private static final Logger LOG = LoggerFactory.getLogger(HostStats.class);
+  private static final Gson GSON = new Gson();
+
+  private final Path directory;
+  private final Map<String, History> histories;
+
+  HostStats(Path directory) {
+    this.directory = directory;
+    this.histories = new HashMap<>();
+  }
+
+  /**
+   * Creates the host stats of the config, or returns {@code null} if no host stats directory is set.
+   */
+  @Nullable
+  static HostStats create(HTTPToHDFSActionConfig config) {
+    String directory = config.getHostStatsDirectory();
+    return directory == null ? null : new HostStats(new Path(directory));
+  }
+
+  /**
+   * Returns the history of the host of the url, which is empty if the host was never used or its history could not
+   * be read.
+   */
+  synchronized History get(String url) {
+    String name = getFileName(url);
+    History history = histories.get(name);
+    if (history == null) {
+      history = read(new Path(directory, name));
+      histories.put(name, history);
+    }
+    return history;
+  }
+
+  /**
+   * Writes the histories that changed. A history that cannot be written is logged and skipped, since it only costs
+   * the samples of this run.
+   */
+  synchronized void save() {
+    for (Map.Entry<String, History> entry : histories.entrySet()) {
+      History history = entry.getValue();
+      if (!history.changed) {
+        continue;
+      }
+      Path file = new Path(directory, entry.getKey());
+      Path tmp = new Path(directory, "." + entry.getKey() + ".tmp");
+      try {
+        FileSystem fs = FileSystem.get(file.toUri(), new Configuration());
+        try (Writer writer = new OutputStreamWriter(fs.create(tmp, true), StandardCharsets.UTF_8)) {
+          synchronized (history) {
+            GSON.toJson(history, writer);
+          }
+        }
+        // rename does not replace an existing file, the history is lost only if the run dies in between
+        fs.delete(file, false);
+        if (!fs.rename(tmp, file)) {
+          throw new IOException(String.format("Failed to rename %s to %s.", tmp, file));
+        }
+        history.changed = false;
+      } catch (IOException e) {
+        LOG.warn("Error writing the performance history to {}.", file, e);
+      }
+    }
+  }
+
+  private static History read(Path file) {
+    try {
+      FileSystem fs = FileSystem.get(file.toUri(), new Configuration());
+      if (!fs.exists(file)) {
+        return new History();
+      }
+      try (Reader reader = new InputStreamReader(fs.open(file), StandardCharsets.UTF_8)) {
+        History history = GSON.fromJson(reader, History.class);
+        return history == null ? new History() : history;
+      }
+    } catch (IOException | JsonParseException e) {
+      LOG.warn("Error reading the performance history from {}, starting a new one.", file, e);
+      return new History();
+    }
+  }
+
+  /**
+   * Returns the name of the file of the host of the url, with the port if there is one.
+   */
+  static String getFileName(String url) {
+    String host;
+    try {
+      URL parsed = new URL(url);
+      host = parsed.getPort() < 0 ? parsed.getHost() : parsed.getHost() + "_" + parsed.getPort();
+    } catch (MalformedURLException e) {
+      host = url;
+    }
+    return host.toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9._-]", "_") + ".json";
+  }
+
+  /**
+   * How a response is downloaded.
+   */
+  enum Strategy {
+    SINGLE,
+    COMPRESSED,
+    PARALLEL
+  }
+
+  /**
+   * Recent requests and transfers of a host and what the host supports.
+   */
+  static final class History {
+    static final int MAX_SAMPLES = 100;
+    // fewer samples than this are not enough to pick a timeout or to judge a strategy
+    static final int MIN_SAMPLES = 5;
+    // transfers smaller than this are dominated by latency, so they say nothing about throughput
+    static final long MIN_TRANSFER_BYTES = 1024 * 1024;
+    static final long MIN_PARALLEL_BYTES = 64L * 1024 * 1024;
+    static final double MAX_PARALLEL_FAILURE_RATE = 0.1;
+    // timeouts are a multiple of the 95th percentile, so that a slow but normal request does not time out
+    static final int TIMEOUT_FACTOR = 4;
+    static final int MIN_CONNECT_TIMEOUT = 1000;
+    static final int MIN_READ_TIMEOUT = 5000;
+    static final int MAX_TIMEOUT = 10 * 60 * 1000;
+
+    private final List<Request> requests = new ArrayList<>();
+    private final List<Transfer> transfers = new ArrayList<>();
+    private Boolean ranges;
+    private Boolean compression;
+    private transient boolean changed;
+
+    /**
+     * Records a request.
+     *
+     * @param connectMillis the time to connect, or to fail connecting
+     * @param firstByteMillis the time from sending the request to the response headers, or to the failure. -1 if the
+     *                        request was not sent
+     * @param failed whether the request failed or the server answered with a server error
+     */
+    synchronized void recordRequest(long connectMillis, long firstByteMillis, boolean failed) {
+      add(requests, new Request(connectMillis, firstByteMillis, failed));
+    }
+
+    /**
+     * Records the transfer of a whole response.
+     */
+    synchronized void recordTransfer(Strategy strategy, long bytes, long millis) {
+      add(transfers, new Transfer(strategy, bytes, millis));
+    }
+
+    synchronized void recordRanges(boolean supported) {
+      changed |= !Boolean.valueOf(supported).equals(ranges);
+      ranges = supported;
+    }
+
+    synchronized void recordCompression(boolean supported) {
+      changed |= !Boolean.valueOf(supported).equals(compression);
+      compression = supported;
+    }
+
+    /**
+     * Returns the connect timeout picked from the connect latency of the host, or {@code null} if there are not
+     * enough samples.
+     */
+    @Nullable
+    synchronized Integer getConnectTimeout() {
+      List<Long> latencies = new ArrayList<>();
+      for (Request request : requests) {
+        latencies.add(request.connectMillis);
+      }
+      return pickTimeout(latencies, MIN_CONNECT_TIMEOUT);
+    }
+
+    /**
+     * Returns the read timeout picked from the time to first byte of the host, or {@code null} if there are not
+     * enough samples.
+     */
+    @Nullable
+    synchronized Integer getReadTimeout() {
+      List<Long> latencies = new ArrayList<>();
+      for (Request request : requests) {
+        if (request.firstByteMillis >= 0) {
+          latencies.add(request.firstByteMillis);
+        }
+      }
+      return pickTimeout(latencies, MIN_READ_TIMEOUT);
+    }
+
+    /**
+     * Returns the fraction of the recent requests that failed.
+     */
+    synchronized double getFailureRate() {
+      if (requests.isEmpty()) {
+        return 0;
+      }
+      int failed = 0;
+      for (Request request : requests) {
+        if (request.failed) {
+          failed++;
+        }
+      }
+      return (double) failed / requests.size();
+    }
+
+    /**
+     * Picks how to download the next response. A strategy the host supports that was not tried often enough is
+     * tried first, otherwise the one with the highest median throughput is picked. Parallel range requests are
+     * only considered for large responses from a host that supports ranges and rarely fails.
+     *
+     * @param parallelAllowed whether parallel range requests may be picked
+     * @param compressionAllowed whether compression may be requested
+     */
+    synchronized Strategy choose(boolean parallelAllowed, boolean compressionAllowed) {
+      List<Strategy> candidates = new ArrayList<>();
+      candidates.add(Strategy.SINGLE);
+      if (compressionAllowed && !Boolean.FALSE.equals(compression)) {
+        candidates.add(Strategy.COMPRESSED);
+      }
+      if (parallelAllowed && Boolean.TRUE.equals(ranges) && getFailureRate() <= MAX_PARALLEL_FAILURE_RATE) {
+        List<Long> sizes = new ArrayList<>();
+        for (Transfer transfer : transfers) {
+          sizes.add(transfer.bytes);
+        }
+        if (!sizes.isEmpty() && percentile(sizes, 50) >= MIN_PARALLEL_BYTES) {
+          candidates.add(Strategy.PARALLEL);
+        }
+      }
+
+      Strategy best = Strategy.SINGLE;
+      long bestThroughput = -1;
+      for (Strategy candidate : candidates) {
+        List<Long> throughputs = new ArrayList<>();
+        for (Transfer transfer : transfers) {
+          if (transfer.strategy == candidate && transfer.bytes >= MIN_TRANSFER_BYTES) {
+            throughputs.add(transfer.bytes * 1000 / Math.max(1, transfer.millis));
+          }
+        }
+        if (throughputs.size() < MIN_SAMPLES) {
+          return candidate;
+        }
+        long throughput = percentile(throughputs, 50);
+        if (throughput > bestThroughput) {
+          best = candidate;
+          bestThroughput = throughput;
+        }
+      }
+      return best;
+    }
+
+    private <T> void add(List<T> samples, T sample) {
+      samples.add(sample);
+      if (samples.size() > MAX_SAMPLES) {
+        samples.remove(0);
+      }
+      changed = true;
+    }
+
+    @Nullable
+    private static Integer pickTimeout(List<Long> latencies, int min) {
+      if (latencies.size() < MIN_SAMPLES) {
+        return null;
+      }
+      // a request that timed out is recorded with the time it waited, which raises the next timeout
+      long timeout = percentile(latencies, 95) * TIMEOUT_FACTOR;
+      return (int) Math.max(min, Math.min(MAX_TIMEOUT, timeout));
+    }
+
+    /**
+     * Returns the nearest-rank percentile of the values.
+     */
+    static long percentile(List<Long> values, int percentile) {
+      List<Long> sorted = new ArrayList<>(values);
+      Collections.sort(sorted);
+      int rank = (int) Math.ceil(percentile / 100.0 * sorted.size());
+      return sorted.get(Math.max(0, rank - 1));
+    }
+  }
+
+  private static final class Request {
+    private final long connectMillis;
+    private final long firstByteMillis;
+    private final boolean failed;
+
+    Request(long connectMillis, long firstByteMillis, boolean failed) {
+      this.connectMillis = connectMillis;
+      this.firstByteMillis = firstByteMillis;
+      this.failed = failed;
+    }
+  }
+
+  private static final class Transfer {
+    private final Strategy strategy;
+    private final long bytes;
+    private final long millis;
+
+    Transfer(Strategy strategy, long bytes, long millis) {
+      this.strategy = strategy;
+      this.bytes = bytes;
+      this.millis = millis;
+    }
+  }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.batch.http.to.hdfs;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import javax.annotation.Nullable;
+
+/**
+ * Reads the records of the array at a path in a JSON document, one record at a time, as compact JSON.
+ *
+ * The document is pulled token by token, the values before the array are skipped without being held and only the
+ * current record is parsed into memory, so memory is bounded by the largest record rather than the document. The
+ * path is {@code $} for a top level array, or {@code $.data.items} for an array nested in objects. A trailing
+ * {@code [*]} is allowed. If the value at the path is an object, it is read as a single record.
+ */
+final class JsonRecordReader implements Closeable {
+  private static final Gson GSON = new GsonBuilder().disableHtmlEscaping().create();
+
+  private final JsonReader reader;
+  private final List<String> path;
+  private final String pathString;
+  private boolean started;
+  private boolean single;
+  private boolean done;
+
+  JsonRecordReader(Reader reader, String path) {
+    this.reader = new JsonReader(reader);
+    this.reader.setLenient(true);
+    this.path = parsePath(path);
+    this.pathString = path;
+  }
+
+  /**
+   * Parses a records path into the names of the fields leading to the records.
+   *
+   * @throws IllegalArgumentException if the path is not valid
+   */
+  static List<String> parsePath(String path) {
+    String trimmed = path.trim();
+    if (trimmed.endsWith("[*]")) {
+      trimmed = trimmed.substring(0, trimmed.length() - 3);
+    }
+    if (trimmed.startsWith("$")) {
+      trimmed = trimmed.substring(1);
+      if (trimmed.isEmpty()) {
+        return Collections.emptyList();
+      }
+      if (!trimmed.startsWith(".")) {
+        throw new IllegalArgumentException("The path must continue with '.' after '$'.");
+      }
+      trimmed = trimmed.substring(1);
+    }
+    List<String> names = new ArrayList<>();
+    for (String name : trimmed.split("\\.", -1)) {
+      if (name.isEmpty() || name.contains("[") || name.contains("]")) {
+        throw new IllegalArgumentException(String.format("Invalid field name '%s'.", name));
+      }
+      names.add(name);
+    }
+    return names;
+  }
+
+  /**
+   * Returns the next record as compact JSON, or {@code null} once all records were read.
+   *
+   * @throws IOException if the data could not be read or is not valid JSON, or there is no array at the path
+   */
+  @Nullable
+  String next() throws IOException {
+    if (done) {
+      return null;
+    }
+    try {
+      if (!started) {
+        started = true;
+        seek();
+      }
+      if (single) {
+        done = true;
+        return GSON.toJson(new JsonParser().parse(reader));
+      }
+      if (!reader.hasNext()) {
+        reader.endArray();
+        done = true;
+        return null;
+      }
+      JsonElement record = new JsonParser().parse(reader);
+      return GSON.toJson(record);
+    } catch (JsonParseException | IllegalStateException e) {
+      throw new IOException(String.format("Error reading the records at '%s': %s", pathString, e.getMessage()), e);
+    }
+  }
+
+  /**
+   * Skips to the value at the path and starts reading it.
+   */
+  private void seek() throws IOException {
+    for (String name : path) {
+      if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+        throw new IOException(String.format("Expected an object with the field '%s' on the path '%s', found %s.",
+                                            name, pathString, reader.peek()));
+      }
+      reader.beginObject();
+      boolean found = false;
+      while (reader.hasNext()) {
+        if (reader.nextName().equals(name)) {
+          found = true;
+          break;
+        }
+        reader.skipValue();
+      }
+      if (!found) {
+        throw new IOException(String.format("There is no field '%s' on the path '%s'.", name, pathString));
+      }
+    }
+    JsonToken token = reader.peek();
+    if (token == JsonToken.BEGIN_OBJECT) {
+      single = true;
+    } else if (token == JsonToken.BEGIN_ARRAY) {
+      reader.beginArray();
+    } else {
+      throw new IOException(String.format("Expected an array at '%s', found %s.", pathString, token));
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    reader.close();
+  }
+}
@@ -0,0 +1,418 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.batch.http.to.hdfs;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import javax.annotation.Nullable;
+
+/**
+ * Input stream over the response of a list of equivalent urls.
+ *
+ * Data is read from the first url that answers. If reading fails, or the throughput of the current url stays below
+ * the configured minimum, the stream switches to the next url and continues from the current offset with a range
+ * request. If the next server ignores the range, the bytes that were already read are skipped. Once every url has
+ * failed, the urls are tried again from the current offset as long as attempts are left.
+ *
+ * The ETag, last modified date and length of the first response identify the data. A request that continues from an
+ * offset sends the ETag, or else the last modified date, in an If-Range header, and a url whose response has another
+ * ETag or length, or whose Content-Range does not start at the offset, is treated like a url that failed, so the
+ * bytes of two different responses are never joined. Mirrors must therefore serve the same ETag, or none at all.
+ *
+ * If compression is requested, the first request asks for a gzip response, which is decompressed while it is read.
+ * Requests that continue from an offset ask for the uncompressed response, since the offset is in uncompressed
+ * bytes.
+ */
+final class MirroredInputStream extends ResponseInputStream {
+  private static final Logger LOG = LoggerFactory.getLogger(MirroredInputStream.class);
+  private static final long THROUGHPUT_WINDOW_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+  private final ConnectionFactory connectionFactory;
+  private final List<String> urls;
+  private final Deque<String> remaining;
+  private final long minThroughput;
+  private final TransferWatchdog watchdog;
+  private final AtomicInteger attempts;
+  private final int maxAttempts;
+  private final List<ServedRange> servedRanges;
+  private final Map<String, List<String>> headerFields;
+  private final boolean compression;
+
+  private HttpURLConnection conn;
+  private InputStream in;
+  private String currentUrl;
+  private long position;
+  private long rangeStart;
+  private long windowStart;
+  private long windowBytes;
+  private volatile boolean closed;
+  @Nullable
+  private String etag;
+  @Nullable
+  private String validator;
+  private long length;
+
+  /**
+   * Opens the first url that answers.
+   *
+   * @param connectionFactory factory used to open the connections
+   * @param urls the equivalent urls, in the order they should be tried
+   * @param minThroughput minimum throughput in bytes per second before switching to the next url. 0 to disable
+   * @param watchdog the watchdog that aborts stalled connections
+   * @param attempts the number of attempts made so far, incremented each time the urls are tried again
+   * @param maxAttempts the maximum number of attempts
+   * @param compression whether to request a gzip response
+   */
+  MirroredInputStream(ConnectionFactory connectionFactory, List<String> urls, long minThroughput,
+                      TransferWatchdog watchdog, AtomicInteger attempts, int maxAttempts,
+                      boolean compression) throws IOException {
+    this.connectionFactory = connectionFactory;
+    this.urls = urls;
+    this.remaining = new ArrayDeque<>(urls);
+    this.minThroughput = minThroughput;
+    this.watchdog = watchdog;
+    this.attempts = attempts;
+    this.maxAttempts = maxAttempts;
+    this.servedRanges = new ArrayList<>();
+    this.compression = compression;
+    openNext(null);
+    this.headerFields = conn.getHeaderFields();
+  }
+
+  /**
+   * Probes the given urls concurrently with a HEAD request and returns them ordered by response time. Urls that
+   * could not be reached within the timeout are kept at the end of the list, in their original order.
+   */
+  static List<String> rank(final ConnectionFactory connectionFactory, List<String> urls, final int timeout) {
+    if (urls.size() < 2) {
+      return urls;
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(
+      urls.size(), new ThreadFactoryBuilder().setDaemon(true).setNameFormat("mirror-probe-%d").build());
+    try {
+      CompletionService<String> completionService = new ExecutorCompletionService<>(executor);
+      for (final String url : urls) {
+        completionService.submit(new Callable<String>() {
+          @Override
+          public String call() throws Exception {
+            HttpURLConnection probe = connectionFactory.openProbe(url, timeout);
+            try {
+              // any status means the server is reachable, the actual request may still use another method
+              probe.getResponseCode();
+              return url;
+            } finally {
+              probe.disconnect();
+            }
+          }
+        });
+      }
+
+      List<String> ranked = new ArrayList<>();
+      long deadline = System.currentTimeMillis() + timeout;
+      for (int i = 0; i < urls.size(); i++) {
+        Future<String> future = completionService.poll(Math.max(0, deadline - System.currentTimeMillis()),
+                                                       TimeUnit.MILLISECONDS);
+        if (future == null) {
+          break;
+        }
+        try {
+          ranked.add(future.get());
+        } catch (ExecutionException e) {
+          LOG.debug("Mirror probe failed.", e.getCause());
+        }
+      }
+      for (String url : urls) {
+        if (!ranked.contains(url)) {
+          ranked.add(url);
+        }
+      }
+      LOG.debug("Mirrors ranked by response time: {}", ranked);
+      return ranked;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return urls;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Returns the response headers of the first url that was read from.
+   */
+  @Override
+  Map<String, List<String>> getHeaderFields() {
+    return headerFields;
+  }
+
+  @Override
+  List<ServedRange> getServedRanges() {
+    return Collections.unmodifiableList(servedRanges);
+  }
+
+  @Override
+  public int read() throws IOException {
+    byte[] b = new byte[1];
+    int n;
+    do {
+      n = read(b, 0, 1);
+    } while (n == 0);
+    return n < 0 ? -1 : b[0] & 0xff;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    while (true) {
+      int n;
+      try {
+        n = in.read(b, off, len);
+        if (n < 0 && length >= 0 && position < length) {
+          // a connection closed before the end of the body is not always reported as an error
+          throw new IOException(String.format("Response ended after %d of %d bytes.", position, length));
+        }
+      } catch (IOException e) {
+        IOException failure = withAbortReason(e);
+        if (closed || watchdog.isDeadlineExceeded()) {
+          throw failure;
+        }
+        LOG.warn("Error reading from {} at offset {}.", currentUrl, position, failure);
+        switchMirror(failure);
+        continue;
+      }
+      if (n > 0) {
+        watchdog.read(n);
+        position += n;
+        windowBytes += n;
+        checkThroughput();
+      } else if (n < 0) {
+        closeRange();
+      }
+      return n;
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    closed = true;
+    closeRange();
+    watchdog.disconnected();
+    try {
+      in.close();
+    } finally {
+      conn.disconnect();
+    }
+  }
+
+  private void checkThroughput() throws IOException {
+    long now = System.currentTimeMillis();
+    long elapsed = now - windowStart;
+    if (elapsed < THROUGHPUT_WINDOW_MILLIS) {
+      return;
+    }
+    long throughput = windowBytes * 1000 / elapsed;
+    if (throughput < minThroughput && !remaining.isEmpty()) {
+      LOG.info("Throughput of {} bytes/sec from {} is below the minimum of {} bytes/sec. " +
+                 "Switching to the next mirror at offset {}.", throughput, currentUrl, minThroughput, position);
+      switchMirror(null);
+      return;
+    }
+    windowStart = now;
+    windowBytes = 0;
+  }
+
+  private void switchMirror(@Nullable IOException cause) throws IOException {
+    closeRange();
+    watchdog.disconnected();
+    try {
+      in.close();
+    } catch (IOException e) {
+      LOG.debug("Error closing stream from {}.", currentUrl, e);
+    }
+    conn.disconnect();
+    openNext(cause);
+  }
+
+  private void openNext(@Nullable IOException cause) throws IOException {
+    IOException failure = cause;
+    while (!closed) {
+      if (remaining.isEmpty()) {
+        if (failure == null || watchdog.isDeadlineExceeded() || attempts.get() + 1 >= maxAttempts) {
+          break;
+        }
+        attempts.incrementAndGet();
+        LOG.info("Retrying from offset {}, attempt {} of {}.", position, attempts.get() + 1, maxAttempts);
+        remaining.addAll(urls);
+      }
+      String url = remaining.poll();
+      HttpURLConnection next = null;
+      try {
+        boolean gzip = compression && position == 0;
+        Map<String, String> headers = new HashMap<>();
+        if (gzip) {
+          headers.put("Accept-Encoding", "gzip");
+        } else if (position > 0 && validator != null) {
+          headers.put("If-Range", validator);
+        }
+        next = connectionFactory.open(url, position, headers, watchdog);
+        InputStream stream = next.getInputStream();
+        boolean decoded = gzip && "gzip".equalsIgnoreCase(next.getContentEncoding());
+        if (decoded) {
+          stream = new GZIPInputStream(stream);
+        }
+        if (position == 0) {
+          identify(next, decoded);
+        } else {
+          checkSameResponse(url, next);
+          if (next.getResponseCode() != HttpURLConnection.HTTP_PARTIAL) {
+            LOG.debug("{} does not support range requests, skipping the first {} bytes.", url, position);
+            skipFully(stream, position);
+          }
+        }
+        conn = next;
+        in = stream;
+        currentUrl = url;
+        rangeStart = position;
+        windowStart = System.currentTimeMillis();
+        windowBytes = 0;
+        return;
+      } catch (IOException e) {
+        IOException error = withAbortReason(e);
+        LOG.warn("Error reading from {}.", url, error);
+        if (next != null) {
+          next.disconnect();
+        }
+        if (failure == null) {
+          failure = error;
+        } else {
+          failure.addSuppressed(error);
+        }
+      }
+    }
+    if (failure == null) {
+      throw new IOException(closed ? "Stream is closed." : "No url to read from.");
+    }
+    throw failure;
+  }
+
+  /**
+   * Keeps what identifies the response that is read from the start.
+   */
+  private void identify(HttpURLConnection first, boolean decoded) {
+    // a compressed response has another length, and usually another ETag, than the uncompressed one resumed later
+    etag = decoded ? null : first.getHeaderField("ETag");
+    validator = decoded ? first.getHeaderField("Last-Modified") : getValidator(first);
+    length = decoded ? -1 : first.getContentLengthLong();
+  }
+
+  /**
+   * Checks that a response that continues from the current offset belongs to the response read so far.
+   */
+  private void checkSameResponse(String url, HttpURLConnection next) throws IOException {
+    String nextEtag = next.getHeaderField("ETag");
+    if (etag != null && nextEtag != null && !etag.equals(nextEtag)) {
+      throw new IOException(String.format("%s has the ETag '%s' instead of '%s'.", url, nextEtag, etag));
+    }
+    long nextLength;
+    if (next.getResponseCode() == HttpURLConnection.HTTP_PARTIAL) {
+      String contentRange = next.getHeaderField("Content-Range");
+      if (parseStart(contentRange) != position) {
+        throw new IOException(String.format("%s answered the range request for offset %d with the range '%s'.",
+                                            url, position, contentRange));
+      }
+      nextLength = parseLength(contentRange);
+    } else {
+      nextLength = next.getContentEncoding() == null ? next.getContentLengthLong() : -1;
+    }
+    if (length >= 0 && nextLength >= 0 && length != nextLength) {
+      throw new IOException(String.format("%s has a length of %d bytes instead of %d.", url, nextLength, length));
+    }
+  }
+
+  private IOException withAbortReason(IOException e) {
+    String reason = watchdog.takeAbortReason();
+    return reason == null ? e : new IOException("Transfer was aborted because " + reason + ".", e);
+  }
+
+  private synchronized void closeRange() {
+    if (position > rangeStart) {
+      servedRanges.add(new ServedRange(currentUrl, rangeStart, position));
+      rangeStart = position;
+    }
+  }
+
+  private void skipFully(InputStream stream, long count) throws IOException {
+    byte[] buffer = new byte[8192];
+    long left = count;
+    while (left > 0) {
+      int n = stream.read(buffer, 0, (int) Math.min(buffer.length, left));
+      if (n < 0) {
+        throw new IOException(String.format("Response ended after %d bytes, expected at least %d.",
+                                            count - left, count));
+      }
+      watchdog.read(n);
+      left -= n;
+    }
+  }
+
+  /**
+   * A range of bytes, from start inclusive to end exclusive, and the url that served it.
+   */
+  static final class ServedRange {
+    private final String url;
+    private final long start;
+    private final long end;
+
+    ServedRange(String url, long start, long end) {
+      this.url = url;
+      this.start = start;
+      this.end = end;
+    }
+
+    String getUrl() {
+      return url;
+    }
+
+    long getStart() {
+      return start;
+    }
+
+    long getEnd() {
+      return end;
+    }
+  }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.batch.http.to.hdfs;
+
+import com.google.common.io.ByteStreams;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * Fetches access tokens with the OAuth2 client credentials grant and caches them until shortly before they expire.
+ *
+ * The same token is handed to every request, including retries and concurrent requests. Once the token is within the
+ * refresh ahead time of its expiry, a new one is fetched in the background while the current one is still used, so
+ * that requests do not wait for the token endpoint. The refresh ahead time is at most half the lifetime of the token,
+ * so that a short lived token is not refreshed on every request. A token rejected by the server is invalidated, so
+ * the next request fetches a new one.
+ */
+final class OAuth2TokenProvider {
+  private static final Logger LOG = LoggerFactory.getLogger(OAuth2TokenProvider.class);
+  private static final long DEFAULT_EXPIRES_IN = 3600;
+  // tokens are not used during the last seconds of their lifetime, to allow for clock skew and request latency
+  private static final long EXPIRY_MARGIN_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+  private final HTTPToHDFSActionConfig config;
+  private final TLSContext tlsContext;
+  private final long refreshAheadMillis;
+
+  private String token;
+  private long expiresAt;
+  private long refreshAt;
+  private boolean refreshing;
+
+  OAuth2TokenProvider(HTTPToHDFSActionConfig config, TLSContext tlsContext) {
+    this.config = config;
+    this.tlsContext = tlsContext;
+    this.refreshAheadMillis = TimeUnit.SECONDS.toMillis(config.getOAuth2RefreshAhead());
+  }
+
+  /**
+   * Returns a token provider for the given config, or {@code null} if OAuth2 is not configured.
+   */
+  @Nullable
+  static OAuth2TokenProvider create(HTTPToHDFSActionConfig config, TLSContext tlsContext) {
+    return config.getOAuth2TokenUrl() == null ? null : new OAuth2TokenProvider(config, tlsContext);
+  }
+
+  /**
+   * Returns a valid access token, fetching a new one if there is none or the current one has expired.
+   */
+  synchronized String getToken() throws IOException {
+    long now = System.currentTimeMillis();
+    if (token == null || now >= expiresAt - EXPIRY_MARGIN_MILLIS) {
+      update(requestToken());
+    } else if (now >= refreshAt && !refreshing) {
+      refreshing = true;
+      Thread refresher = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          refresh();
+        }
+      }, "oauth2-token-refresh");
+      refresher.setDaemon(true);
+      refresher.start();
+    }
+    return token;
+  }
+
+  /**
+   * Invalidates the given token after the server rejected it, unless it was already replaced.
+   */
+  synchronized void invalidate(String rejected) {
+    if (rejected.equals(token)) {
+      LOG.info("Access token was rejected, a new one will be fetched from {}.", config.getOAuth2TokenUrl());
+      token = null;
+    }
+  }
+
+  private void refresh() {
+    try {
+      // requests keep using the current token while the new one is fetched
+      Token next = requestToken();
+      synchronized (this) {
+        update(next);
+      }
+    } catch (IOException e) {
+      // the current token is kept until it expires, the next request tries again
+      LOG.warn("Error refreshing the access token from {}.", config.getOAuth2TokenUrl(), e);
+    } finally {
+      synchronized (this) {
+        refreshing = false;
+      }
+    }
+  }
+
+  private void update(Token next) {
+    token = next.value;
+    expiresAt = next.expiresAt;
+    refreshAt = next.expiresAt - Math.min(refreshAheadMillis, next.lifetimeMillis / 2);
+  }
+
+  private Token requestToken() throws IOException {
+    StringBuilder form = new StringBuilder("grant_type=client_credentials");
+    if (config.getOAuth2Scope() != null) {
+      form.append("&scope=").append(URLEncoder.encode(config.getOAuth2Scope(), StandardCharsets.UTF_8.name()));
+    }
+    String credentials = URLEncoder.encode(config.getOAuth2ClientId(), StandardCharsets.UTF_8.name()) + ":" +
+      URLEncoder.encode(config.getOAuth2ClientSecret(), StandardCharsets.UTF_8.name());
+
+    HttpURLConnection conn = (HttpURLConnection) new URL(config.getOAuth2TokenUrl()).openConnection();
+    try {
+      tlsContext.configure(conn);
+      conn.setRequestMethod("POST");
+      Integer connectTimeout = config.getConnectTimeout();
+      Integer readTimeout = config.getReadTimeout();
+      conn.setConnectTimeout(connectTimeout == null ? HTTPToHDFSActionConfig.DEFAULT_TIMEOUT : connectTimeout);
+      conn.setReadTimeout(readTimeout == null ? HTTPToHDFSActionConfig.DEFAULT_TIMEOUT : readTimeout);
+      conn.setRequestProperty("Authorization", "Basic " + Base64.getEncoder().encodeToString(
+        credentials.getBytes(StandardCharsets.UTF_8)));
+      conn.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+      conn.setRequestProperty("Accept", "application/json");
+      conn.setDoOutput(true);
+      try (OutputStream outputStream = conn.getOutputStream()) {
+        outputStream.write(form.toString().getBytes(StandardCharsets.UTF_8));
+      }
+
+      int responseCode = conn.getResponseCode();
+      if (responseCode != HttpURLConnection.HTTP_OK) {
+        String error = "";
+        InputStream errorStream = conn.getErrorStream();
+        if (errorStream != null) {
+          try (InputStream in = errorStream) {
+            error = new String(ByteStreams.toByteArray(in), StandardCharsets.UTF_8);
+          }
+        }
+        throw new IOException(String.format("Token endpoint %s returned %d: %s", config.getOAuth2TokenUrl(),
+                                            responseCode, error));
+      }
+
+      JsonObject response;
+      try (Reader reader = new InputStreamReader(conn.getInputStream(), StandardCharsets.UTF_8)) {
+        response = new JsonParser().parse(reader).getAsJsonObject();
+      } catch (JsonParseException | IllegalStateException e) {
+        throw new IOException("Token endpoint returned an invalid response: " + e.getMessage(), e);
+      }
+      JsonElement accessToken = response.get("access_token");
+      if (accessToken == null || !accessToken.isJsonPrimitive()) {
+        throw new IOException("Token endpoint response does not contain an access_token.");
+      }
+      JsonElement expiresIn = response.get("expires_in");
+      long lifetime = expiresIn == null || !expiresIn.isJsonPrimitive() ? DEFAULT_EXPIRES_IN : expiresIn.getAsLong();
+
+      LOG.debug("Fetched an access token from {} that expires in {} seconds.", config.getOAuth2TokenUrl(), lifetime);
+      return new Token(accessToken.getAsString(), TimeUnit.SECONDS.toMillis(lifetime));
+    } finally {
+      conn.disconnect();
+    }
+  }
+
+  /**
+   * An access token, its lifetime and the time in milliseconds it expires at.
+   */
+  private static final class Token {
+    private final String value;
+    private final long lifetimeMillis;
+    private final long expiresAt;
+
+    private Token(String value, long lifetimeMillis) {
+      this.value = value;
+      this.lifetimeMillis = lifetimeMillis;
+      this.expiresAt = System.currentTimeMillis() + lifetimeMillis;
+    }
+  }
+}
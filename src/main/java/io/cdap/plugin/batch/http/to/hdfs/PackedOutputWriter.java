@@ -0,0 +1,198 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.batch.http.to.hdfs;
+
+import com.google.common.collect.Iterables;
+import com.google.common.io.ByteStreams;
+import com.google.gson.Gson;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.MapWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Packs responses as records of SequenceFile containers in a directory, instead of writing one file per response.
+ *
+ * Each record is keyed by the url as {@link Text}. The value is a {@link MapWritable} holding the body as
+ * {@link BytesWritable} under "body", the response headers as a JSON {@link Text} under "headers" and the fetch time
+ * in milliseconds as {@link LongWritable} under "fetchTime". A new container is started once the current one reaches
+ * the target size. Containers are written under hidden names and only renamed to their final names on
+ * {@link #commit()}, so readers never see the containers of a failed attempt.
+ *
+ * A body is held in memory while its record is written, so a body larger than the maximum record size is written to
+ * a file of its own in the same directory instead, and its record holds the name of that file as {@link Text} under
+ * "file" in place of the body.
+ *
+ * Each writer starts its own containers, nothing is appended to the containers of earlier runs, so runs that fetch a
+ * few small responses leave small containers behind.
+ */
+final class PackedOutputWriter implements Closeable {
+  private static final Logger LOG = LoggerFactory.getLogger(PackedOutputWriter.class);
+  private static final Gson GSON = new Gson();
+  private static final Text BODY = new Text("body");
+  private static final Text HEADERS = new Text("headers");
+  private static final Text FETCH_TIME = new Text("fetchTime");
+  private static final Text FILE = new Text("file");
+
+  private final FileSystem fs;
+  private final Path directory;
+  private final long targetSize;
+  private final long maxRecordSize;
+  private final String prefix;
+  private final List<Path> containers;
+  private final List<Path> files;
+  private SequenceFile.Writer writer;
+  private boolean committed;
+
+  /**
+   * Creates a writer of containers in a directory.
+   *
+   * @param fs the file system of the directory
+   * @param directory the directory of the containers
+   * @param targetSize the size in bytes at which a new container is started
+   * @param maxRecordSize the size in bytes above which a body is written to a file of its own
+   */
+  PackedOutputWriter(FileSystem fs, Path directory, long targetSize, long maxRecordSize) {
+    this.fs = fs;
+    this.directory = directory;
+    this.targetSize = targetSize;
+    this.maxRecordSize = maxRecordSize;
+    this.prefix = String.format("part-%d-%s", System.currentTimeMillis(), UUID.randomUUID().toString().substring(0, 8));
+    this.containers = new ArrayList<>();
+    this.files = new ArrayList<>();
+  }
+
+  /**
+   * Reads the whole body and appends it as a record. At most the maximum record size of the body is held in memory,
+   * a larger body is written to a file of its own.
+   */
+  void append(String url, Map<String, String> headers, long fetchTime, InputStream body) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    byte[] buffer = new byte[8192];
+    int n;
+    while (bytes.size() <= maxRecordSize && (n = body.read(buffer)) >= 0) {
+      bytes.write(buffer, 0, n);
+    }
+
+    MapWritable value = new MapWritable();
+    if (bytes.size() > maxRecordSize) {
+      value.put(FILE, new Text(writeFile(url, bytes, body)));
+    } else {
+      value.put(BODY, new BytesWritable(bytes.toByteArray()));
+    }
+    value.put(HEADERS, new Text(GSON.toJson(headers)));
+    value.put(FETCH_TIME, new LongWritable(fetchTime));
+
+    if (writer != null && writer.getLength() >= targetSize) {
+      writer.close();
+      writer = null;
+    }
+    if (writer == null) {
+      if (containers.isEmpty() && files.isEmpty()) {
+        fs.mkdirs(directory);
+      }
+      Path container = hidden(new Path(directory, String.format("%s-%05d.seq", prefix, containers.size())));
+      containers.add(container);
+      writer = SequenceFile.createWriter(fs.getConf() == null ? new Configuration() : fs.getConf(),
+                                         SequenceFile.Writer.file(fs.makeQualified(container)),
+                                         SequenceFile.Writer.keyClass(Text.class),
+                                         SequenceFile.Writer.valueClass(MapWritable.class),
+                                         SequenceFile.Writer.compression(SequenceFile.CompressionType.BLOCK));
+    }
+    writer.append(new Text(url), value);
+  }
+
+  /**
+   * Writes a body that is too large for a record to a file of its own, starting with the part that was already read.
+   *
+   * @return the name of the file, which is in the directory of the containers
+   */
+  private String writeFile(String url, ByteArrayOutputStream head, InputStream rest) throws IOException {
+    if (containers.isEmpty() && files.isEmpty()) {
+      fs.mkdirs(directory);
+    }
+    String name = String.format("%s-%05d.body", prefix, files.size());
+    Path file = hidden(new Path(directory, name));
+    files.add(file);
+    try (OutputStream out = fs.create(file, false)) {
+      head.writeTo(out);
+      ByteStreams.copy(rest, out);
+    }
+    LOG.debug("Response from {} is larger than {} bytes, wrote it to {}.", url, maxRecordSize, name);
+    return name;
+  }
+
+  /**
+   * Closes the current container and makes all containers visible under their final names.
+   */
+  void commit() throws IOException {
+    if (writer != null) {
+      writer.close();
+      writer = null;
+    }
+    // the files come first, so that no visible container refers to a file that is still hidden
+    for (Path pending : Iterables.concat(files, containers)) {
+      Path target = new Path(directory, pending.getName().substring(1));
+      if (!fs.rename(pending, target)) {
+        throw new IOException(String.format("Failed to rename %s to %s.", pending, target));
+      }
+      LOG.debug("Wrote packed file {}.", target);
+    }
+    committed = true;
+  }
+
+  /**
+   * Deletes the containers and files that were not committed.
+   */
+  @Override
+  public void close() throws IOException {
+    if (committed) {
+      return;
+    }
+    if (writer != null) {
+      try {
+        writer.close();
+      } catch (IOException e) {
+        LOG.debug("Error closing container.", e);
+      }
+      writer = null;
+    }
+    for (Path pending : Iterables.concat(files, containers)) {
+      fs.delete(pending, false);
+    }
+  }
+
+  private static Path hidden(Path path) {
+    return new Path(path.getParent(), "." + path.getName());
+  }
+}
@@ -0,0 +1,332 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.batch.http.to.hdfs;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.annotation.Nullable;
+
+/**
+ * Input stream over the response of a url, downloaded in fixed size chunks with several range requests at the same
+ * time.
+ *
+ * The first request asks for the first chunk and tells the size of the response. The chunks are then downloaded by
+ * a pool of threads, and only twice as many chunks as there are threads are downloaded ahead of the chunk being read,
+ * which bounds the memory used. A chunk that fails is requested again as long as attempts are left. If the server
+ * ignores the range of the first request, the response is read with that single request instead.
+ *
+ * Each range request carries the ETag or last modified date of the first response in an If-Range header, and the
+ * Content-Range of each response must start at the requested offset and have the size of the first response. A
+ * response that changed between two requests fails the transfer rather than mixing the bytes of both versions.
+ *
+ * The watchdog only ends the transfer when its deadline passes, the other limits apply to a single connection. The
+ * read timeout bounds each chunk instead.
+ */
+final class ParallelRangeInputStream extends ResponseInputStream {
+  private static final Logger LOG = LoggerFactory.getLogger(ParallelRangeInputStream.class);
+
+  private final ConnectionFactory connectionFactory;
+  private final String url;
+  private final int chunkSize;
+  private final TransferWatchdog watchdog;
+  private final int maxAttempts;
+  private final Map<String, List<String>> headerFields;
+  private final long length;
+  @Nullable
+  private final String validator;
+  private final ExecutorService executor;
+  private final List<Future<byte[]>> chunks;
+  private final int ahead;
+
+  private HttpURLConnection conn;
+  private InputStream in;
+  private int chunk;
+  private long position;
+
+  /**
+   * Requests the first chunk of the url.
+   *
+   * @param connectionFactory factory used to open the connections
+   * @param url the url to read
+   * @param parallelism the number of range requests made at the same time
+   * @param chunkSize the number of bytes requested by each range request
+   * @param watchdog the watchdog of the transfer deadline
+   * @param maxAttempts the maximum number of attempts for each chunk
+   */
+  ParallelRangeInputStream(ConnectionFactory connectionFactory, final String url, int parallelism, int chunkSize,
+                           TransferWatchdog watchdog, int maxAttempts) throws IOException {
+    this.connectionFactory = connectionFactory;
+    this.url = url;
+    this.chunkSize = chunkSize;
+    this.watchdog = watchdog;
+    this.maxAttempts = Math.max(1, maxAttempts);
+    this.ahead = parallelism * 2;
+
+    final HttpURLConnection first = connectionFactory.open(url, 0, rangeHeader(0, chunkSize));
+    try {
+      int status = first.getResponseCode();
+      this.headerFields = first.getHeaderFields();
+      this.validator = getValidator(first);
+      String contentRange = first.getHeaderField("Content-Range");
+      this.length = status == HttpURLConnection.HTTP_PARTIAL && parseStart(contentRange) == 0 ?
+        parseLength(contentRange) : -1;
+      if (length <= 0) {
+        LOG.info("{} did not answer the range request with a size, reading it with a single request.", url);
+        if (status == HttpURLConnection.HTTP_PARTIAL) {
+          first.disconnect();
+          this.conn = connectionFactory.open(url, 0, Collections.<String, String>emptyMap(), watchdog);
+        } else {
+          this.conn = first;
+          watchdog.connected(conn);
+        }
+        this.in = conn.getInputStream();
+        this.executor = null;
+        this.chunks = Collections.emptyList();
+        return;
+      }
+    } catch (IOException e) {
+      first.disconnect();
+      throw e;
+    }
+
+    int count = (int) ((length + chunkSize - 1) / chunkSize);
+    LOG.debug("Reading {} bytes from {} in {} chunks with {} requests at a time.", length, url, count, parallelism);
+    this.executor = Executors.newFixedThreadPool(
+      parallelism, new ThreadFactoryBuilder().setDaemon(true).setNameFormat("range-reader-%d").build());
+    this.chunks = new ArrayList<>(Collections.<Future<byte[]>>nCopies(count, null));
+    // the first chunk is read from the response of the first request
+    chunks.set(0, executor.submit(new Callable<byte[]>() {
+      @Override
+      public byte[] call() throws Exception {
+        try {
+          return readChunk(first, 0);
+        } catch (IOException e) {
+          LOG.warn("Error reading the first chunk from {}.", url, e);
+          return fetchChunk(0);
+        } finally {
+          first.disconnect();
+        }
+      }
+    }));
+    for (int i = 1; i < Math.min(count, ahead); i++) {
+      submit(i);
+    }
+  }
+
+  /**
+   * Returns whether the response is read with parallel range requests, rather than a single request.
+   */
+  boolean isParallel() {
+    return executor != null;
+  }
+
+  @Override
+  Map<String, List<String>> getHeaderFields() {
+    return headerFields;
+  }
+
+  @Override
+  List<MirroredInputStream.ServedRange> getServedRanges() {
+    if (position == 0) {
+      return Collections.emptyList();
+    }
+    return Collections.singletonList(new MirroredInputStream.ServedRange(url, 0, position));
+  }
+
+  @Override
+  public int read() throws IOException {
+    byte[] b = new byte[1];
+    int n;
+    do {
+      n = read(b, 0, 1);
+    } while (n == 0);
+    return n < 0 ? -1 : b[0] & 0xff;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    while (true) {
+      if (in == null && !nextChunk()) {
+        return -1;
+      }
+      int n = in.read(b, off, len);
+      if (n < 0 && conn == null) {
+        in = null;
+        continue;
+      }
+      if (n > 0) {
+        watchdog.read(n);
+        position += n;
+      }
+      return n;
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+    if (conn != null) {
+      watchdog.disconnected();
+      try {
+        in.close();
+      } finally {
+        conn.disconnect();
+      }
+    }
+  }
+
+  /**
+   * Waits for the next chunk and starts reading it.
+   *
+   * @return whether there was a chunk left
+   */
+  private boolean nextChunk() throws IOException {
+    if (chunk >= chunks.size()) {
+      return false;
+    }
+    Future<byte[]> future = chunks.get(chunk);
+    chunks.set(chunk, null);
+    byte[] data;
+    try {
+      data = future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for a chunk of " + url);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException("Error reading a chunk of " + url, e.getCause());
+    }
+    if (chunk + ahead < chunks.size()) {
+      submit(chunk + ahead);
+    }
+    chunk++;
+    in = new ByteArrayInputStream(data);
+    return true;
+  }
+
+  private void submit(final int index) {
+    chunks.set(index, executor.submit(new Callable<byte[]>() {
+      @Override
+      public byte[] call() throws Exception {
+        return fetchChunk(index);
+      }
+    }));
+  }
+
+  /**
+   * Requests a chunk until it was read or no attempts are left.
+   */
+  private byte[] fetchChunk(int index) throws IOException {
+    long start = (long) index * chunkSize;
+    IOException failure = null;
+    for (int attempt = 0; attempt < maxAttempts && !watchdog.isDeadlineExceeded(); attempt++) {
+      HttpURLConnection chunkConn = null;
+      try {
+        chunkConn = connectionFactory.open(url, 0, chunkHeaders(start));
+        int status = chunkConn.getResponseCode();
+        if (status == HttpURLConnection.HTTP_OK && validator != null) {
+          throw new ChangedResponseException(String.format(
+            "%s no longer matches '%s', it changed while it was read.", url, validator));
+        }
+        if (status != HttpURLConnection.HTTP_PARTIAL) {
+          throw new IOException(String.format("%s answered the range request for offset %d with %d.",
+                                              url, start, status));
+        }
+        String contentRange = chunkConn.getHeaderField("Content-Range");
+        if (parseStart(contentRange) != start || parseLength(contentRange) != length) {
+          throw new ChangedResponseException(String.format(
+            "%s answered the range request for %d of %d bytes at offset %d with the range '%s'.",
+            url, chunkSize, length, start, contentRange));
+        }
+        String etag = chunkConn.getHeaderField("ETag");
+        if (etag != null && validator != null && validator.startsWith("\"") && !etag.equals(validator)) {
+          throw new ChangedResponseException(String.format("%s changed from '%s' to '%s' while it was read.",
+                                                           url, validator, etag));
+        }
+        return readChunk(chunkConn, index);
+      } catch (ChangedResponseException e) {
+        // requesting the chunk again would not give back the bytes of the first version
+        throw e;
+      } catch (IOException e) {
+        LOG.warn("Error reading {} bytes at offset {} from {}, attempt {} of {}.", chunkSize, start, url,
+                 attempt + 1, maxAttempts, e);
+        if (failure == null) {
+          failure = e;
+        } else {
+          failure.addSuppressed(e);
+        }
+      } finally {
+        if (chunkConn != null) {
+          chunkConn.disconnect();
+        }
+      }
+    }
+    throw failure == null ? new IOException("The transfer deadline has passed.") : failure;
+  }
+
+  private byte[] readChunk(HttpURLConnection chunkConn, int index) throws IOException {
+    long start = (long) index * chunkSize;
+    byte[] data = new byte[(int) Math.min(chunkSize, length - start)];
+    try (InputStream chunkIn = chunkConn.getInputStream()) {
+      ByteStreams.readFully(chunkIn, data);
+    }
+    return data;
+  }
+
+  private Map<String, String> chunkHeaders(long start) {
+    Map<String, String> headers = new HashMap<>(rangeHeader(start, chunkSize));
+    if (validator != null) {
+      headers.put("If-Range", validator);
+    }
+    return headers;
+  }
+
+  private static Map<String, String> rangeHeader(long start, int size) {
+    return Collections.singletonMap("Range", String.format("bytes=%d-%d", start, start + size - 1));
+  }
+
+  /**
+   * Signals that the response is not the one the first request answered with.
+   */
+  private static final class ChangedResponseException extends IOException {
+    ChangedResponseException(String message) {
+      super(message);
+    }
+  }
+}
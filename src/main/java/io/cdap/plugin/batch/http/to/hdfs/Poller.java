@@ -0,0 +1,231 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.batch.http.to.hdfs;
+
+import io.cdap.cdap.etl.api.StageMetrics;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * Fetches a url repeatedly for a window of time and writes every changed response to a file in a time bucket.
+ *
+ * Conditional requests are made with the ETag and Last-Modified of the previous response, and responses with the
+ * same content as the previous one are dropped, so unchanged data is never written twice. Response bodies are read
+ * to the end and closed without disconnecting, so the connection and its TLS session are reused by the next fetch.
+ * Each response is written under a hidden name and renamed once complete, so stopping at any time leaves only
+ * complete files.
+ */
+final class Poller {
+  private static final Logger LOG = LoggerFactory.getLogger(Poller.class);
+
+  /**
+   * Writes a response body to an output. It is called once for every response that is written.
+   */
+  interface BodyWriter {
+    void write(InputStream in, OutputStream out) throws IOException;
+  }
+
+  private final ConnectionFactory connectionFactory;
+  private final String url;
+  private final Path directory;
+  private final SimpleDateFormat bucketFormat;
+  private final long intervalMillis;
+  private final boolean longPolling;
+  private final int maxFailures;
+  private final BodyWriter bodyWriter;
+
+  private String etag;
+  private String lastModified;
+  private byte[] lastDigest;
+  private Map<String, List<String>> lastHeaderFields;
+  private long written;
+  private long unchanged;
+
+  /**
+   * Creates a poller.
+   *
+   * @param connectionFactory factory used to open the connections
+   * @param url the url to poll
+   * @param directory the directory the time buckets are created in
+   * @param bucketFormat the {@link SimpleDateFormat} pattern, in UTC, of the bucket a response is written to
+   * @param intervalSeconds the time between the start of two fetches, or the time to wait after a failure
+   *                        when long polling
+   * @param longPolling whether to fetch again as soon as a response was received
+   * @param maxFailures the number of consecutive failures after which polling stops with an error
+   * @param bodyWriter writes a response body to its file
+   */
+  Poller(ConnectionFactory connectionFactory, String url, Path directory, String bucketFormat, long intervalSeconds,
+         boolean longPolling, int maxFailures, BodyWriter bodyWriter) {
+    this.connectionFactory = connectionFactory;
+    this.url = url;
+    this.directory = directory;
+    this.bucketFormat = new SimpleDateFormat(bucketFormat);
+    this.bucketFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+    this.intervalMillis = TimeUnit.SECONDS.toMillis(intervalSeconds);
+    this.longPolling = longPolling;
+    this.maxFailures = maxFailures;
+    this.bodyWriter = bodyWriter;
+  }
+
+  /**
+   * Polls until the window has passed. A fetch that is in progress at the end of the window is completed.
+   */
+  void run(long windowSeconds, StageMetrics metrics) throws IOException, InterruptedException {
+    long end = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(windowSeconds);
+    int failures = 0;
+    while (System.currentTimeMillis() < end) {
+      long started = System.currentTimeMillis();
+      boolean failed = false;
+      try {
+        if (fetch()) {
+          metrics.count("poll.written", 1);
+        } else {
+          metrics.count("poll.unchanged", 1);
+        }
+        failures = 0;
+      } catch (IOException e) {
+        metrics.count("poll.errors", 1);
+        failed = true;
+        if (++failures >= maxFailures) {
+          throw e;
+        }
+        LOG.warn("Error polling {}, {} consecutive failures.", url, failures, e);
+      }
+      if (!longPolling || failed) {
+        long next = Math.min(end, (failed && longPolling ? System.currentTimeMillis() : started) + intervalMillis);
+        long wait = next - System.currentTimeMillis();
+        if (wait > 0) {
+          TimeUnit.MILLISECONDS.sleep(wait);
+        }
+      }
+    }
+    LOG.info("Polling {} ended, wrote {} responses and skipped {} unchanged responses.", url, written, unchanged);
+  }
+
+  /**
+   * Returns the response headers of the last response, or {@code null} if there was none.
+   */
+  @Nullable
+  Map<String, List<String>> getLastHeaderFields() {
+    return lastHeaderFields;
+  }
+
+  /**
+   * Fetches the url once.
+   *
+   * @return whether the response changed and was written
+   */
+  private boolean fetch() throws IOException {
+    Map<String, String> headers = new HashMap<>();
+    if (etag != null) {
+      headers.put("If-None-Match", etag);
+    }
+    if (lastModified != null) {
+      headers.put("If-Modified-Since", lastModified);
+    }
+    long now = System.currentTimeMillis();
+    HttpURLConnection conn = connectionFactory.open(url, 0, headers);
+    try {
+      if (conn.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+        close(conn.getInputStream());
+        unchanged++;
+        return false;
+      }
+
+      Path bucket = new Path(directory, bucketFormat.format(new Date(now)));
+      Path file = new Path(bucket, String.format("response-%d", now));
+      Path tmp = new Path(bucket, "." + file.getName() + ".tmp");
+      FileSystem fs = FileSystem.get(file.toUri(), new Configuration());
+      MessageDigest digest = newDigest();
+      try {
+        try (InputStream in = conn.getInputStream();
+             OutputStream out = new DigestOutputStream(fs.create(tmp, true), digest)) {
+          bodyWriter.write(in, out);
+          drain(in);
+        }
+        etag = conn.getHeaderField("ETag");
+        lastModified = conn.getHeaderField("Last-Modified");
+        lastHeaderFields = conn.getHeaderFields();
+        byte[] contentDigest = digest.digest();
+        if (Arrays.equals(contentDigest, lastDigest)) {
+          LOG.debug("Response from {} did not change.", url);
+          unchanged++;
+          return false;
+        }
+        if (!fs.rename(tmp, file)) {
+          throw new IOException(String.format("Failed to rename %s to %s.", tmp, file));
+        }
+        lastDigest = contentDigest;
+      } finally {
+        fs.delete(tmp, false);
+      }
+      written++;
+      LOG.debug("Wrote response from {} to {}.", url, file);
+      return true;
+    } catch (IOException e) {
+      // the connection is in an unknown state, so it must not be reused
+      conn.disconnect();
+      throw e;
+    }
+  }
+
+  private static void close(InputStream in) throws IOException {
+    try {
+      drain(in);
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Reads the rest of the stream, which is needed for the connection to be reused.
+   */
+  private static void drain(InputStream in) throws IOException {
+    byte[] buffer = new byte[8192];
+    while (in.read(buffer) >= 0) {
+      // discard
+    }
+  }
+
+  private static MessageDigest newDigest() throws IOException {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IOException("SHA-256 is not available.", e);
+    }
+  }
+}
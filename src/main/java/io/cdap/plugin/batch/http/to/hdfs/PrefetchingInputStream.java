@@ -0,0 +1,210 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.batch.http.to.hdfs;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Input stream that reads ahead from another stream in a background thread, so that reading from the network
+ * overlaps with whatever the caller does with the data, typically writing it to HDFS.
+ *
+ * Data is read into a fixed pool of buffers that are handed to the caller once full, or at the end of the stream, and
+ * returned to the pool once consumed. At most {@code bufferCount * bufferSize} bytes are held at any time.
+ */
+final class PrefetchingInputStream extends InputStream {
+  private static final long CLOSE_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+  private final InputStream in;
+  private final BlockingQueue<byte[]> free;
+  private final BlockingQueue<Chunk> filled;
+  private final Thread reader;
+  private volatile boolean closed;
+
+  private Chunk current;
+  private int offset;
+  private boolean eof;
+
+  PrefetchingInputStream(InputStream in, int bufferSize, int bufferCount) {
+    this.in = in;
+    this.free = new ArrayBlockingQueue<>(bufferCount);
+    // one more slot than buffers so that the end of stream marker can always be queued
+    this.filled = new ArrayBlockingQueue<>(bufferCount + 1);
+    for (int i = 0; i < bufferCount; i++) {
+      free.add(new byte[bufferSize]);
+    }
+    this.reader = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        fill();
+      }
+    }, "http-prefetch");
+    this.reader.setDaemon(true);
+    this.reader.start();
+  }
+
+  @Override
+  public int read() throws IOException {
+    if (!nextChunk()) {
+      return -1;
+    }
+    int b = current.buffer[offset++] & 0xff;
+    releaseIfConsumed();
+    return b;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    if (!nextChunk()) {
+      return -1;
+    }
+    int n = Math.min(len, current.length - offset);
+    System.arraycopy(current.buffer, offset, b, off, n);
+    offset += n;
+    releaseIfConsumed();
+    return n;
+  }
+
+  /**
+   * Writes the rest of the stream to the given output, one filled buffer at a time without copying.
+   *
+   * @return the number of bytes written
+   */
+  long transferTo(OutputStream out) throws IOException {
+    long count = 0;
+    while (nextChunk()) {
+      int n = current.length - offset;
+      out.write(current.buffer, offset, n);
+      offset += n;
+      count += n;
+      releaseIfConsumed();
+    }
+    return count;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    reader.interrupt();
+    try {
+      // closing the source makes a read that is blocked on the network fail
+      in.close();
+    } finally {
+      try {
+        reader.join(CLOSE_TIMEOUT_MILLIS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private boolean nextChunk() throws IOException {
+    if (current != null) {
+      return true;
+    }
+    if (eof) {
+      return false;
+    }
+    try {
+      current = filled.take();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for data.");
+    }
+    offset = 0;
+    if (current.error != null) {
+      eof = true;
+      Throwable error = current.error;
+      current = null;
+      if (error instanceof IOException) {
+        throw new IOException(error.getMessage(), error);
+      }
+      throw new IOException("Error reading data.", error);
+    }
+    if (current.buffer == null) {
+      eof = true;
+      current = null;
+      return false;
+    }
+    return true;
+  }
+
+  private void releaseIfConsumed() {
+    if (offset >= current.length) {
+      free.offer(current.buffer);
+      current = null;
+    }
+  }
+
+  /**
+   * Reads from the source until the end of the stream, an error, or until this stream is closed.
+   */
+  private void fill() {
+    try {
+      while (!closed) {
+        byte[] buffer = free.take();
+        int length = 0;
+        int n = 0;
+        // the response streams do not tell how much is available, so the buffer is filled up to the end of stream
+        while (length < buffer.length && (n = in.read(buffer, length, buffer.length - length)) >= 0) {
+          length += n;
+        }
+        if (length > 0) {
+          filled.put(new Chunk(buffer, length, null));
+        } else {
+          free.offer(buffer);
+        }
+        if (n < 0) {
+          filled.put(new Chunk(null, 0, null));
+          return;
+        }
+      }
+    } catch (InterruptedException e) {
+      // closed while waiting for a buffer or for the consumer
+    } catch (Throwable t) {
+      if (!closed) {
+        filled.offer(new Chunk(null, 0, t));
+      }
+    }
+  }
+
+  /**
+   * A filled buffer, the end of stream marker if the buffer is null, or an error.
+   */
+  private static final class Chunk {
+    private final byte[] buffer;
+    private final int length;
+    private final Throwable error;
+
+    private Chunk(byte[] buffer, int length, Throwable error) {
+      this.buffer = buffer;
+      this.length = length;
+      this.error = error;
+    }
+  }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.batch.http.to.hdfs;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.Nullable;
+
+/**
+ * Output stream that profiles the data written through it, so that the written file never has to be read again.
+ *
+ * Bytes, lines and the longest line are counted over the whole stream. The shape of the data is detected from a
+ * sample of the first bytes only, so the memory used does not depend on the size of the data.
+ */
+final class ProfilingOutputStream extends FilterOutputStream {
+  static final String EMPTY = "empty";
+  static final String BINARY = "binary";
+  static final String TEXT = "text";
+  static final String DELIMITED = "delimited";
+  static final String NDJSON = "ndjson";
+  static final String JSON_ARRAY = "json-array";
+  static final String JSON_OBJECT = "json-object";
+
+  private static final int SAMPLE_SIZE = 64 * 1024;
+  private static final int SAMPLE_LINES = 20;
+  private static final char[] DELIMITERS = {',', '\t', ';', '|'};
+
+  private final ByteArrayOutputStream sample;
+  private long bytes;
+  private long lines;
+  private long lineLength;
+  private long maxLineLength;
+
+  ProfilingOutputStream(OutputStream out) {
+    super(out);
+    this.sample = new ByteArrayOutputStream();
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    out.write(b);
+    bytes++;
+    if (sample.size() < SAMPLE_SIZE) {
+      sample.write(b);
+    }
+    profile((byte) b);
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    out.write(b, off, len);
+    profile(b, off, len);
+  }
+
+  /**
+   * Returns the profile of the data written so far.
+   */
+  Profile getProfile() {
+    long records = lines + (lineLength > 0 ? 1 : 0);
+    long maxRecordLength = Math.max(maxLineLength, lineLength);
+    byte[] sampled = sample.toByteArray();
+    if (bytes == 0) {
+      return new Profile(bytes, records, maxRecordLength, EMPTY, null);
+    }
+    for (byte b : sampled) {
+      if (b == 0) {
+        return new Profile(bytes, records, maxRecordLength, BINARY, null);
+      }
+    }
+
+    String text = new String(sampled, StandardCharsets.UTF_8);
+    String trimmed = text.replace("\uFEFF", "").trim();
+    // the last sampled line is incomplete unless the whole data fit in the sample
+    List<String> sampleLines = new ArrayList<>();
+    String[] split = text.split("\r?\n", -1);
+    int complete = sampled.length == bytes ? split.length : split.length - 1;
+    for (int i = 0; i < complete && sampleLines.size() < SAMPLE_LINES; i++) {
+      if (!split[i].trim().isEmpty()) {
+        sampleLines.add(split[i].trim());
+      }
+    }
+
+    if (trimmed.startsWith("[")) {
+      return new Profile(bytes, records, maxRecordLength, JSON_ARRAY, null);
+    }
+    if (trimmed.startsWith("{")) {
+      boolean ndjson = sampleLines.size() > 1;
+      for (String line : sampleLines) {
+        ndjson &= line.startsWith("{") && line.endsWith("}");
+      }
+      return new Profile(bytes, records, maxRecordLength, ndjson ? NDJSON : JSON_OBJECT, null);
+    }
+    Character delimiter = detectDelimiter(sampleLines);
+    return delimiter == null ? new Profile(bytes, records, maxRecordLength, TEXT, null)
+      : new Profile(bytes, records, maxRecordLength, DELIMITED, String.valueOf(delimiter));
+  }
+
+  private void profile(byte[] b, int off, int len) {
+    bytes += len;
+    if (sample.size() < SAMPLE_SIZE) {
+      sample.write(b, off, Math.min(len, SAMPLE_SIZE - sample.size()));
+    }
+    for (int i = off; i < off + len; i++) {
+      profile(b[i]);
+    }
+  }
+
+  private void profile(byte b) {
+    if (b == '\n') {
+      lines++;
+      maxLineLength = Math.max(maxLineLength, lineLength);
+      lineLength = 0;
+    } else if (b != '\r') {
+      lineLength++;
+    }
+  }
+
+  /**
+   * Returns the delimiter that occurs the same number of times, at least once, on every sampled line. If several do,
+   * the one that occurs most often is returned.
+   */
+  @Nullable
+  private static Character detectDelimiter(List<String> sampleLines) {
+    if (sampleLines.isEmpty()) {
+      return null;
+    }
+    Character detected = null;
+    int detectedCount = 0;
+    for (char delimiter : DELIMITERS) {
+      int count = -1;
+      for (String line : sampleLines) {
+        int lineCount = count(line, delimiter);
+        if (lineCount == 0 || (count >= 0 && lineCount != count)) {
+          count = 0;
+          break;
+        }
+        count = lineCount;
+      }
+      if (count > detectedCount) {
+        detected = delimiter;
+        detectedCount = count;
+      }
+    }
+    return detected;
+  }
+
+  /**
+   * Counts the delimiters outside of double quotes.
+   */
+  private static int count(String line, char delimiter) {
+    int count = 0;
+    boolean quoted = false;
+    for (int i = 0; i < line.length(); i++) {
+      char c = line.charAt(i);
+      if (c == '"') {
+        quoted = !quoted;
+      } else if (c == delimiter && !quoted) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Profile of the written data, serialized as JSON for the runtime argument and the sidecar file.
+   */
+  static final class Profile {
+    private final long bytes;
+    private final long records;
+    private final long maxRecordLength;
+    private final String shape;
+    private final String delimiter;
+
+    Profile(long bytes, long records, long maxRecordLength, String shape, @Nullable String delimiter) {
+      this.bytes = bytes;
+      this.records = records;
+      this.maxRecordLength = maxRecordLength;
+      this.shape = shape;
+      this.delimiter = delimiter;
+    }
+
+    long getBytes() {
+      return bytes;
+    }
+
+    long getRecords() {
+      return records;
+    }
+
+    long getMaxRecordLength() {
+      return maxRecordLength;
+    }
+
+    String getShape() {
+      return shape;
+    }
+
+    @Nullable
+    String getDelimiter() {
+      return delimiter;
+    }
+  }
+}
@@ -0,0 +1,299 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.batch.http.to.hdfs;
+
+import com.google.common.base.Joiner;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+import javax.annotation.Nullable;
+
+/**
+ * Decides which records of a line oriented response are written, and which part of them.
+ */
+abstract class RecordFilter {
+  static final String REGEX = "Regex";
+  static final String CSV = "CSV";
+  static final String JSON = "JSON";
+  static final String SKIP = "Skip";
+  static final String FAIL = "Fail";
+
+  @Nullable
+  protected final Pattern pattern;
+  private long invalid;
+
+  private RecordFilter(@Nullable Pattern pattern) {
+    this.pattern = pattern;
+  }
+
+  /**
+   * Creates the filter configured by the given config, or returns {@code null} if no filter is configured.
+   */
+  @Nullable
+  static RecordFilter create(HTTPToHDFSActionConfig config) {
+    String type = config.getFilterType();
+    if (type == null) {
+      return null;
+    }
+    Pattern pattern = config.getFilterPattern() == null ? null : Pattern.compile(config.getFilterPattern());
+    if (REGEX.equals(type)) {
+      return new RegexFilter(pattern);
+    }
+    if (CSV.equals(type)) {
+      return new CSVFilter(pattern, config.getFilterField(), config.getProjectFields(), config.getCsvDelimiter(),
+                           config.getCsvHeader());
+    }
+    if (JSON.equals(type)) {
+      return new JSONFilter(pattern, config.getFilterField(), config.getProjectFields());
+    }
+    throw new IllegalArgumentException(String.format("Unsupported filter type '%s'.", type));
+  }
+
+  /**
+   * Returns the record to write for the given line, or {@code null} if the line should be dropped.
+   */
+  @Nullable
+  abstract String apply(String line);
+
+  /**
+   * Returns the number of records that were dropped because they could not be parsed.
+   */
+  long getInvalidCount() {
+    return invalid;
+  }
+
+  /**
+   * Counts a record that could not be parsed and returns {@code null}, so that it is dropped.
+   */
+  @Nullable
+  protected String invalid() {
+    invalid++;
+    return null;
+  }
+
+  protected boolean matches(@Nullable String value) {
+    return pattern == null || (value != null && pattern.matcher(value).find());
+  }
+
+  /**
+   * Returns the value at a path of field names in a JSON record, or {@code null} if there is none.
+   */
+  @Nullable
+  static JsonElement get(JsonObject record, String[] path) {
+    JsonElement current = record;
+    for (String name : path) {
+      if (current == null || !current.isJsonObject()) {
+        return null;
+      }
+      current = current.getAsJsonObject().get(name);
+    }
+    return current;
+  }
+
+  /**
+   * Splits a delimited line on the delimiter, keeping quoted tokens as they are.
+   */
+  static List<String> split(String line, char delimiter) {
+    List<String> tokens = new ArrayList<>();
+    boolean quoted = false;
+    int start = 0;
+    for (int i = 0; i < line.length(); i++) {
+      char c = line.charAt(i);
+      if (c == '"') {
+        quoted = !quoted;
+      } else if (c == delimiter && !quoted) {
+        tokens.add(line.substring(start, i));
+        start = i + 1;
+      }
+    }
+    tokens.add(line.substring(start));
+    return tokens;
+  }
+
+  /**
+   * Returns the value of a delimited token, without its quotes.
+   */
+  static String unquote(String token) {
+    String trimmed = token.trim();
+    if (trimmed.length() >= 2 && trimmed.charAt(0) == '"' && trimmed.charAt(trimmed.length() - 1) == '"') {
+      return trimmed.substring(1, trimmed.length() - 1).replace("\"\"", "\"");
+    }
+    return trimmed;
+  }
+
+  /**
+   * Keeps the lines matching a regular expression.
+   */
+  private static final class RegexFilter extends RecordFilter {
+
+    private RegexFilter(@Nullable Pattern pattern) {
+      super(pattern);
+    }
+
+    @Nullable
+    @Override
+    String apply(String line) {
+      return matches(line) ? line : null;
+    }
+  }
+
+  /**
+   * Keeps the rows whose column matches a regular expression, optionally keeping only some columns.
+   * The column is identified by name if the first line is a header, otherwise by its 0-based index.
+   */
+  private static final class CSVFilter extends RecordFilter {
+    private final String filterColumn;
+    private final List<String> projectColumns;
+    private final char delimiter;
+    private boolean header;
+    private int filterIndex;
+    private int[] projectIndexes;
+
+    private CSVFilter(@Nullable Pattern pattern, @Nullable String filterColumn, List<String> projectColumns,
+                      char delimiter, boolean header) {
+      super(pattern);
+      this.filterColumn = filterColumn;
+      this.projectColumns = projectColumns;
+      this.delimiter = delimiter;
+      this.header = header;
+      if (!header) {
+        filterIndex = filterColumn == null ? -1 : Integer.parseInt(filterColumn.trim());
+        projectIndexes = new int[projectColumns.size()];
+        for (int i = 0; i < projectIndexes.length; i++) {
+          projectIndexes[i] = Integer.parseInt(projectColumns.get(i).trim());
+        }
+      }
+    }
+
+    @Nullable
+    @Override
+    String apply(String line) {
+      List<String> tokens = split(line, delimiter);
+      if (header) {
+        header = false;
+        filterIndex = filterColumn == null ? -1 : indexOf(tokens, filterColumn);
+        projectIndexes = new int[projectColumns.size()];
+        for (int i = 0; i < projectIndexes.length; i++) {
+          projectIndexes[i] = indexOf(tokens, projectColumns.get(i));
+        }
+        return project(tokens, line);
+      }
+      if (filterIndex >= 0 && !matches(filterIndex < tokens.size() ? unquote(tokens.get(filterIndex)) : null)) {
+        return null;
+      }
+      return project(tokens, line);
+    }
+
+    private String project(List<String> tokens, String line) {
+      if (projectIndexes.length == 0) {
+        return line;
+      }
+      List<String> projected = new ArrayList<>(projectIndexes.length);
+      for (int index : projectIndexes) {
+        projected.add(index < tokens.size() ? tokens.get(index) : "");
+      }
+      return Joiner.on(delimiter).join(projected);
+    }
+
+    private int indexOf(List<String> headerTokens, String column) {
+      for (int i = 0; i < headerTokens.size(); i++) {
+        if (unquote(headerTokens.get(i)).equals(column)) {
+          return i;
+        }
+      }
+      throw new IllegalArgumentException(String.format("Column '%s' is not present in header '%s'.",
+                                                       column, headerTokens));
+    }
+
+  }
+
+  /**
+   * Keeps the newline delimited JSON records whose field matches a regular expression, optionally keeping only
+   * some fields. Nested fields are addressed with a dot separated path.
+   */
+  private static final class JSONFilter extends RecordFilter {
+    private final Gson gson = new Gson();
+    private final JsonParser parser = new JsonParser();
+    @Nullable
+    private final String[] filterPath;
+    private final List<String[]> projectPaths;
+
+    private JSONFilter(@Nullable Pattern pattern, @Nullable String filterField, List<String> projectFields) {
+      super(pattern);
+      this.filterPath = filterField == null ? null : filterField.split("\\.");
+      this.projectPaths = new ArrayList<>();
+      for (String field : projectFields) {
+        projectPaths.add(field.split("\\."));
+      }
+    }
+
+    @Nullable
+    @Override
+    String apply(String line) {
+      if (line.trim().isEmpty()) {
+        return null;
+      }
+      JsonObject record;
+      try {
+        JsonElement element = parser.parse(line);
+        if (!element.isJsonObject()) {
+          return invalid();
+        }
+        record = element.getAsJsonObject();
+      } catch (JsonParseException e) {
+        return invalid();
+      }
+      if (filterPath != null) {
+        JsonElement value = get(record, filterPath);
+        if (!matches(value == null || value.isJsonNull() ? null :
+                       value.isJsonPrimitive() ? value.getAsString() : value.toString())) {
+          return null;
+        }
+      }
+      if (projectPaths.isEmpty()) {
+        return line;
+      }
+      JsonObject projected = new JsonObject();
+      for (String[] path : projectPaths) {
+        JsonElement value = get(record, path);
+        if (value != null) {
+          put(projected, path, value);
+        }
+      }
+      return gson.toJson(projected);
+    }
+
+    private static void put(JsonObject record, String[] path, JsonElement value) {
+      JsonObject current = record;
+      for (int i = 0; i < path.length - 1; i++) {
+        JsonElement child = current.get(path[i]);
+        if (child == null || !child.isJsonObject()) {
+          child = new JsonObject();
+          current.add(path[i], child);
+        }
+        current = child.getAsJsonObject();
+      }
+      current.add(path[path.length - 1], value);
+    }
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.batch.http.to.hdfs;
+
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * Input stream over a response body that may be read with several requests.
+ */
+abstract class ResponseInputStream extends InputStream {
+
+  /**
+   * Returns the response headers of the first request.
+   */
+  abstract Map<String, List<String>> getHeaderFields();
+
+  /**
+   * Returns the byte ranges read so far and the url that served each of them.
+   */
+  abstract List<MirroredInputStream.ServedRange> getServedRanges();
+
+  /**
+   * Returns the validator of a response that can be sent in an If-Range header, which is its ETag or else its last
+   * modified date, or {@code null} if it has neither. A weak ETag cannot be used with If-Range.
+   */
+  @Nullable
+  static String getValidator(HttpURLConnection conn) {
+    String etag = conn.getHeaderField("ETag");
+    if (etag != null && !etag.startsWith("W/")) {
+      return etag;
+    }
+    return conn.getHeaderField("Last-Modified");
+  }
+
+  /**
+   * Returns the offset of the first byte of a Content-Range header, or -1 if it is not known.
+   */
+  static long parseStart(@Nullable String contentRange) {
+    if (contentRange == null) {
+      return -1;
+    }
+    String range = contentRange.trim();
+    int from = range.indexOf(' ');
+    int to = range.indexOf('-');
+    try {
+      return from < 0 || to < from ? -1 : Long.parseLong(range.substring(from + 1, to).trim());
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  /**
+   * Returns the size of the whole response from a Content-Range header, or -1 if it is not known.
+   */
+  static long parseLength(@Nullable String contentRange) {
+    if (contentRange == null) {
+      return -1;
+    }
+    int index = contentRange.lastIndexOf('/');
+    try {
+      return index < 0 ? -1 : Long.parseLong(contentRange.substring(index + 1).trim());
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+}
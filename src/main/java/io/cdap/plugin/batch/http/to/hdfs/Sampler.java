@@ -0,0 +1,324 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.batch.http.to.hdfs;
+
+import com.google.common.io.ByteStreams;
+import io.cdap.cdap.etl.api.validation.ValidationFailure;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import javax.annotation.Nullable;
+
+/**
+ * Fetches the start of a response to describe its data without downloading it.
+ *
+ * Only the preview size is requested, with a range request. If the server ignores the range, the connection is
+ * closed once the preview size was read. A second request, made only if the response has an ETag or a Last-Modified
+ * header, checks whether the server answers conditional requests. Nothing is written anywhere.
+ */
+final class Sampler {
+  static final String NONE = "none";
+
+  private static final byte[][] MAGIC = {
+    {(byte) 0x1f, (byte) 0x8b},
+    {'P', 'K', 3, 4},
+    {'B', 'Z', 'h'},
+    {(byte) 0xfd, '7', 'z', 'X', 'Z', 0},
+    {(byte) 0x28, (byte) 0xb5, (byte) 0x2f, (byte) 0xfd}
+  };
+  private static final String[] MAGIC_NAMES = {"gzip", "zip", "bzip2", "xz", "zstd"};
+
+  private final HTTPToHDFSActionConfig config;
+  private final ConnectionFactory connectionFactory;
+
+  Sampler(HTTPToHDFSActionConfig config, ConnectionFactory connectionFactory) {
+    this.config = config;
+    this.connectionFactory = connectionFactory;
+  }
+
+  /**
+   * Fetches the start of the response of the configured url and describes it.
+   */
+  Sample sample() throws IOException {
+    String url = config.getUrl();
+    int size = config.getPreviewSize();
+    Map<String, String> headers = new HashMap<>();
+    headers.put("Range", String.format("bytes=0-%d", size - 1));
+    HttpURLConnection conn = connectionFactory.open(url, 0, headers);
+    int status;
+    byte[] sampled;
+    String contentType;
+    String contentEncoding;
+    String acceptRanges;
+    String etag;
+    String lastModified;
+    try {
+      status = conn.getResponseCode();
+      if (status >= HttpURLConnection.HTTP_BAD_REQUEST) {
+        throw new IOException(String.format("%s returned %d.", url, status));
+      }
+      contentType = conn.getContentType();
+      contentEncoding = conn.getContentEncoding();
+      acceptRanges = conn.getHeaderField("Accept-Ranges");
+      etag = conn.getHeaderField("ETag");
+      lastModified = conn.getHeaderField("Last-Modified");
+      byte[] buffer = new byte[size];
+      try (InputStream in = conn.getInputStream()) {
+        sampled = Arrays.copyOf(buffer, ByteStreams.read(in, buffer, 0, size));
+      }
+    } finally {
+      // a server that ignored the range is still sending, disconnecting stops the download
+      conn.disconnect();
+    }
+
+    List<String> warnings = new ArrayList<>();
+    boolean ranges = status == HttpURLConnection.HTTP_PARTIAL || "bytes".equalsIgnoreCase(acceptRanges);
+    if (!ranges) {
+      warnings.add("The server does not support range requests, so an interrupted download starts over.");
+    }
+    Boolean conditional = checkConditional(url, etag, lastModified);
+
+    String compression = detectCompression(contentEncoding, sampled);
+    byte[] data = compression.equals("gzip") ? gunzip(sampled) : sampled;
+    String declaredCharset = getCharset(contentType);
+    Charset charset = forName(declaredCharset == null ? config.getCharset() : declaredCharset);
+    boolean decodes = charset != null && decodes(charset, data);
+    // the data is profiled as UTF-8, which is how text is written
+    ProfilingOutputStream profiler = new ProfilingOutputStream(new ByteArrayOutputStream());
+    profiler.write(decodes ? new String(data, charset).getBytes(StandardCharsets.UTF_8) : data);
+    ProfilingOutputStream.Profile profile = profiler.getProfile();
+
+    boolean text = "Text".equalsIgnoreCase(config.getOutputFormat());
+    if (text && !compression.equals(NONE)) {
+      warnings.add(String.format("The data is compressed with %s, but the output format is Text.", compression));
+    } else if (text && profile.getShape().equals(ProfilingOutputStream.BINARY)) {
+      warnings.add("The data looks binary, but the output format is Text.");
+    } else if (text && !decodes) {
+      warnings.add(String.format("The data is not valid %s.", charset == null ? declaredCharset : charset));
+    }
+    if (text && declaredCharset != null && charset != null && !charset.equals(forName(config.getCharset()))) {
+      warnings.add(String.format("The server declares the charset %s, but the charset is set to %s.",
+                                 declaredCharset, config.getCharset()));
+    }
+    return new Sample(url, status, contentType, declaredCharset, compression, profile.getShape(),
+                      profile.getDelimiter(), sampled.length, ranges, conditional, warnings);
+  }
+
+  /**
+   * Returns whether the server answers a conditional request with 304 Not Modified, or {@code null} if the response
+   * has no validator to make one with.
+   */
+  @Nullable
+  private Boolean checkConditional(String url, @Nullable String etag,
+                                   @Nullable String lastModified) throws IOException {
+    if (etag == null && lastModified == null) {
+      return null;
+    }
+    Map<String, String> headers = new HashMap<>();
+    headers.put("Range", "bytes=0-0");
+    if (etag != null) {
+      headers.put("If-None-Match", etag);
+    } else {
+      headers.put("If-Modified-Since", lastModified);
+    }
+    HttpURLConnection conn = connectionFactory.open(url, 0, headers);
+    try {
+      return conn.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED;
+    } finally {
+      conn.disconnect();
+    }
+  }
+
+  /**
+   * Returns the compression of the data, from the Content-Encoding header or else from the first bytes.
+   */
+  static String detectCompression(@Nullable String contentEncoding, byte[] data) {
+    if (contentEncoding != null && !contentEncoding.equalsIgnoreCase("identity")) {
+      return contentEncoding.trim().toLowerCase(Locale.ROOT);
+    }
+    for (int i = 0; i < MAGIC.length; i++) {
+      byte[] magic = MAGIC[i];
+      if (data.length >= magic.length && Arrays.equals(magic, Arrays.copyOf(data, magic.length))) {
+        return MAGIC_NAMES[i];
+      }
+    }
+    return NONE;
+  }
+
+  /**
+   * Decompresses as much of the gzip data as was sampled. Returns the data as is if it cannot be decompressed.
+   */
+  private static byte[] gunzip(byte[] data) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[8192];
+    try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(data))) {
+      int n;
+      while ((n = in.read(buffer)) >= 0) {
+        out.write(buffer, 0, n);
+      }
+    } catch (EOFException e) {
+      // the sample ends in the middle of the compressed data
+    } catch (IOException e) {
+      return data;
+    }
+    return out.toByteArray();
+  }
+
+  @Nullable
+  private static String getCharset(@Nullable String contentType) {
+    if (contentType == null) {
+      return null;
+    }
+    for (String parameter : contentType.split(";")) {
+      String[] parts = parameter.trim().split("=", 2);
+      if (parts.length == 2 && parts[0].trim().equalsIgnoreCase("charset")) {
+        return parts[1].trim().replace("\"", "");
+      }
+    }
+    return null;
+  }
+
+  @Nullable
+  private static Charset forName(@Nullable String name) {
+    try {
+      return Charset.forName(name);
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Returns whether the data decodes in the charset. A character cut off at the end of the sample is not an error.
+   */
+  private static boolean decodes(Charset charset, byte[] data) {
+    CharsetDecoder decoder = charset.newDecoder()
+      .onMalformedInput(CodingErrorAction.REPORT)
+      .onUnmappableCharacter(CodingErrorAction.REPORT);
+    CharBuffer chars = CharBuffer.allocate(data.length + 1);
+    return !decoder.decode(ByteBuffer.wrap(data), chars, false).isError();
+  }
+
+  /**
+   * Description of the start of a response, returned to the UI as JSON.
+   */
+  static final class Sample {
+    private final String url;
+    private final int status;
+    private final String contentType;
+    private final String charset;
+    private final String compression;
+    private final String shape;
+    private final String delimiter;
+    private final int sampledBytes;
+    private final boolean rangeRequests;
+    private final Boolean conditionalRequests;
+    private final List<String> warnings;
+    private final List<ValidationFailure> failures;
+
+    Sample(String url, int status, @Nullable String contentType, @Nullable String charset, String compression,
+           String shape, @Nullable String delimiter, int sampledBytes, boolean rangeRequests,
+           @Nullable Boolean conditionalRequests, List<String> warnings) {
+      this.url = url;
+      this.status = status;
+      this.contentType = contentType;
+      this.charset = charset;
+      this.compression = compression;
+      this.shape = shape;
+      this.delimiter = delimiter;
+      this.sampledBytes = sampledBytes;
+      this.rangeRequests = rangeRequests;
+      this.conditionalRequests = conditionalRequests;
+      this.warnings = warnings;
+      this.failures = Collections.emptyList();
+    }
+
+    /**
+     * Creates the answer to a request that is invalid or whose url could not be fetched, which only has the
+     * failures.
+     */
+    Sample(@Nullable String url, List<ValidationFailure> failures) {
+      this.url = url;
+      this.status = 0;
+      this.contentType = null;
+      this.charset = null;
+      this.compression = null;
+      this.shape = null;
+      this.delimiter = null;
+      this.sampledBytes = 0;
+      this.rangeRequests = false;
+      this.conditionalRequests = null;
+      this.warnings = Collections.emptyList();
+      this.failures = failures;
+    }
+
+    @Nullable
+    String getUrl() {
+      return url;
+    }
+
+    int getStatus() {
+      return status;
+    }
+
+    String getCompression() {
+      return compression;
+    }
+
+    String getShape() {
+      return shape;
+    }
+
+    int getSampledBytes() {
+      return sampledBytes;
+    }
+
+    boolean getRangeRequests() {
+      return rangeRequests;
+    }
+
+    @Nullable
+    Boolean getConditionalRequests() {
+      return conditionalRequests;
+    }
+
+    List<String> getWarnings() {
+      return warnings;
+    }
+
+    List<ValidationFailure> getFailures() {
+      return failures;
+    }
+  }
+}
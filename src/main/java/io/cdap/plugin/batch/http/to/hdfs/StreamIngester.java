@@ -0,0 +1,396 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.batch.http.to.hdfs;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import io.cdap.cdap.etl.api.StageMetrics;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * Reads a response that does not end, such as Server-Sent Events or newline delimited JSON, and writes each event
+ * as a line to rolling files as it arrives.
+ *
+ * Responses with the {@code text/event-stream} content type are parsed as Server-Sent Events and each event is
+ * written as a JSON object with its id, event type and data. Any other response is written line by line. The written
+ * events are flushed periodically, so readers of the file see them without waiting for it to be closed, and files
+ * are synced when they are rolled. When the stream ends or fails, the url is requested again with the id of the last
+ * event, after a wait that doubles with every connection that did not receive an event. Events dropped by the record
+ * filter count as received, since the stream itself was healthy.
+ */
+final class StreamIngester {
+  private static final Logger LOG = LoggerFactory.getLogger(StreamIngester.class);
+  private static final Gson GSON = new GsonBuilder().disableHtmlEscaping().create();
+  private static final String EVENT_STREAM = "text/event-stream";
+  private static final long INITIAL_BACKOFF_MILLIS = 1000;
+
+  private final HTTPToHDFSActionConfig config;
+  private final ConnectionFactory connectionFactory;
+  private final RecordFilter recordFilter;
+  private final Path directory;
+  private final long rollIntervalMillis;
+  private final long flushIntervalMillis;
+  private final long maxBackoffMillis;
+  private final CountDownLatch stopped;
+
+  private volatile HttpURLConnection conn;
+  private volatile IOException writeFailure;
+  private String lastEventId;
+  private long retryMillis;
+  private Map<String, List<String>> lastHeaderFields;
+
+  // the current file and the events written to it, guarded by this
+  private FileSystem fs;
+  private FSDataOutputStream out;
+  private long fileStarted;
+  private long fileBytes;
+  private long received;
+  private long events;
+  private long countedEvents;
+  private long countedInvalid;
+  private long flushedEvents;
+  private long oldestUnflushed;
+  private long lastTick;
+
+  StreamIngester(HTTPToHDFSActionConfig config, ConnectionFactory connectionFactory,
+                 @Nullable RecordFilter recordFilter) {
+    this.config = config;
+    this.connectionFactory = connectionFactory;
+    this.recordFilter = recordFilter;
+    this.directory = new Path(config.getHdfsFilePath());
+    this.rollIntervalMillis = TimeUnit.SECONDS.toMillis(config.getStreamingRollInterval());
+    this.flushIntervalMillis = TimeUnit.SECONDS.toMillis(config.getStreamingFlushInterval());
+    this.maxBackoffMillis = TimeUnit.SECONDS.toMillis(config.getStreamingMaxBackoff());
+    this.stopped = new CountDownLatch(1);
+    this.retryMillis = Math.min(INITIAL_BACKOFF_MILLIS, maxBackoffMillis);
+  }
+
+  /**
+   * Reads the stream until the window has passed or the server ends it with a 204 response.
+   *
+   * @throws IOException if writing failed or the configured number of consecutive connections failed without
+   *                     receiving an event
+   */
+  void run(long windowSeconds, final StageMetrics metrics) throws IOException, InterruptedException {
+    ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+      new ThreadFactoryBuilder().setDaemon(true).setNameFormat("stream-flush-%d").build());
+    executor.scheduleAtFixedRate(new Runnable() {
+      @Override
+      public void run() {
+        tick(metrics);
+      }
+    }, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    executor.schedule(new Runnable() {
+      @Override
+      public void run() {
+        stop();
+      }
+    }, windowSeconds, TimeUnit.SECONDS);
+
+    fs = FileSystem.get(directory.toUri(), new Configuration());
+    lastTick = System.currentTimeMillis();
+    try {
+      int failures = 0;
+      long backoff = retryMillis;
+      while (!isStopped()) {
+        long before = getReceived();
+        IOException failure = null;
+        boolean reconnect;
+        try {
+          reconnect = read();
+        } catch (IOException e) {
+          if (writeFailure != null) {
+            throw writeFailure;
+          }
+          failure = e;
+          reconnect = true;
+        }
+        if (isStopped() || !reconnect) {
+          break;
+        }
+        if (getReceived() > before) {
+          failures = 0;
+          backoff = retryMillis;
+        } else if (++failures >= config.getNumRetries()) {
+          throw failure != null ? failure
+            : new IOException(String.format("Stream from %s ended %d times without an event.", config.getUrl(),
+                                             failures));
+        }
+        metrics.count("stream.reconnects", 1);
+        LOG.warn("Stream from {} ended, reconnecting in {} ms.", config.getUrl(), backoff, failure);
+        stopped.await(backoff, TimeUnit.MILLISECONDS);
+        backoff = Math.min(backoff * 2, maxBackoffMillis);
+      }
+    } finally {
+      executor.shutdownNow();
+      synchronized (this) {
+        try {
+          closeFile();
+        } catch (IOException e) {
+          LOG.error("Error closing the events file of {}.", config.getUrl(), e);
+          if (writeFailure == null) {
+            writeFailure = e;
+          }
+        }
+      }
+    }
+    if (writeFailure != null) {
+      throw writeFailure;
+    }
+    tick(metrics);
+    LOG.info("Streaming from {} ended, wrote {} events.", config.getUrl(), getEvents());
+  }
+
+  /**
+   * Returns the response headers of the last connection, or {@code null} if there was none.
+   */
+  @Nullable
+  Map<String, List<String>> getLastHeaderFields() {
+    return lastHeaderFields;
+  }
+
+  /**
+   * Stops reading. A blocked read fails once the connection is disconnected.
+   */
+  private void stop() {
+    stopped.countDown();
+    HttpURLConnection current = conn;
+    if (current != null) {
+      current.disconnect();
+    }
+  }
+
+  private boolean isStopped() {
+    return stopped.getCount() == 0;
+  }
+
+  /**
+   * Reads from one connection until the stream ends.
+   *
+   * @return whether to reconnect, which is false once the server responded with 204 No Content
+   */
+  private boolean read() throws IOException {
+    Map<String, String> headers = new HashMap<>();
+    if (lastEventId != null) {
+      headers.put("Last-Event-ID", lastEventId);
+    }
+    HttpURLConnection connection = connectionFactory.open(config.getUrl(), 0, headers);
+    conn = connection;
+    try {
+      if (isStopped()) {
+        return false;
+      }
+      if (connection.getResponseCode() == HttpURLConnection.HTTP_NO_CONTENT) {
+        LOG.info("Stream from {} was ended by the server.", config.getUrl());
+        return false;
+      }
+      String contentType = connection.getContentType();
+      boolean events = contentType != null && contentType.toLowerCase(Locale.ROOT).startsWith(EVENT_STREAM);
+      // event streams are always UTF-8
+      Charset charset = events ? StandardCharsets.UTF_8 : Charset.forName(config.getCharset());
+      try (BoundedLineReader reader = new BoundedLineReader(
+        new InputStreamReader(connection.getInputStream(), charset), config.getMaxRecordLength())) {
+        lastHeaderFields = connection.getHeaderFields();
+        if (events) {
+          readEvents(reader);
+        } else {
+          readLines(reader);
+        }
+        if (reader.getOversizedCount() > 0) {
+          LOG.warn("Skipped {} lines longer than {} characters.", reader.getOversizedCount(),
+                   config.getMaxRecordLength());
+        }
+      }
+      return true;
+    } finally {
+      conn = null;
+      connection.disconnect();
+    }
+  }
+
+  private void readLines(BoundedLineReader reader) throws IOException {
+    String line;
+    while ((line = reader.readLine()) != null) {
+      if (!line.trim().isEmpty()) {
+        write(line);
+      }
+    }
+  }
+
+  /**
+   * Parses Server-Sent Events. An event that is incomplete when the stream ends is dropped.
+   */
+  private void readEvents(BoundedLineReader reader) throws IOException {
+    StringBuilder data = new StringBuilder();
+    String type = null;
+    String line;
+    while ((line = reader.readLine()) != null) {
+      if (line.isEmpty()) {
+        if (data.length() > 0) {
+          JsonObject event = new JsonObject();
+          if (lastEventId != null) {
+            event.addProperty("id", lastEventId);
+          }
+          event.addProperty("event", type == null ? "message" : type);
+          event.addProperty("data", data.substring(0, data.length() - 1));
+          write(GSON.toJson(event));
+        }
+        data.setLength(0);
+        type = null;
+        continue;
+      }
+      if (line.startsWith(":")) {
+        continue;
+      }
+      int colon = line.indexOf(':');
+      String field = colon < 0 ? line : line.substring(0, colon);
+      String value = colon < 0 ? "" : line.substring(line.startsWith(" ", colon + 1) ? colon + 2 : colon + 1);
+      if (field.equals("data")) {
+        data.append(value).append('\n');
+      } else if (field.equals("event")) {
+        type = value;
+      } else if (field.equals("id") && value.indexOf('\0') < 0) {
+        lastEventId = value;
+      } else if (field.equals("retry") && value.matches("\\d{1,9}")) {
+        retryMillis = Math.min(Long.parseLong(value), maxBackoffMillis);
+      }
+    }
+  }
+
+  /**
+   * Writes an event as a line of the current file, rolling to a new file when the current one is too large or
+   * too old.
+   */
+  private synchronized void write(String line) throws IOException {
+    received++;
+    String record = recordFilter == null ? line : recordFilter.apply(line);
+    if (record == null) {
+      return;
+    }
+    try {
+      long now = System.currentTimeMillis();
+      if (out != null && (fileBytes >= config.getStreamingRollSize() || now - fileStarted >= rollIntervalMillis)) {
+        closeFile();
+      }
+      if (out == null) {
+        // files rolled within the same millisecond still get distinct names
+        fileStarted = Math.max(now, fileStarted + 1);
+        Path file = new Path(directory, String.format("events-%d", fileStarted));
+        out = fs.create(file, false);
+        fileBytes = 0;
+        LOG.debug("Writing events from {} to {}.", config.getUrl(), file);
+      }
+      byte[] bytes = (record + "\n").getBytes(StandardCharsets.UTF_8);
+      out.write(bytes);
+      fileBytes += bytes.length;
+      events++;
+      if (oldestUnflushed == 0) {
+        oldestUnflushed = now;
+      }
+    } catch (IOException e) {
+      writeFailure = e;
+      throw e;
+    }
+  }
+
+  private synchronized long getEvents() {
+    return events;
+  }
+
+  /**
+   * Returns the number of events received, including those dropped by the record filter.
+   */
+  private synchronized long getReceived() {
+    return received;
+  }
+
+  /**
+   * Flushes the events written since the last tick, closes the current file if it is too old and reports the
+   * event rate and the time the flushed events waited to become visible.
+   */
+  private synchronized void tick(StageMetrics metrics) {
+    long now = System.currentTimeMillis();
+    try {
+      if (out != null && events > flushedEvents) {
+        out.hflush();
+        flushedEvents = events;
+        metrics.gauge("stream.lag", now - oldestUnflushed);
+        oldestUnflushed = 0;
+      }
+      if (out != null && now - fileStarted >= rollIntervalMillis) {
+        closeFile();
+      }
+    } catch (IOException e) {
+      LOG.error("Error flushing events from {}.", config.getUrl(), e);
+      writeFailure = e;
+      stop();
+    }
+    long delta = events - countedEvents;
+    if (delta > 0) {
+      metrics.count("stream.events", (int) Math.min(Integer.MAX_VALUE, delta));
+    }
+    metrics.gauge("stream.events.per.second", delta * 1000 / Math.max(1, now - lastTick));
+    countedEvents = events;
+    lastTick = now;
+    // invalid records of a stream are always skipped, they are only counted
+    long invalid = recordFilter == null ? 0 : recordFilter.getInvalidCount();
+    if (invalid > countedInvalid) {
+      metrics.count("records.invalid", (int) Math.min(Integer.MAX_VALUE, invalid - countedInvalid));
+      countedInvalid = invalid;
+    }
+  }
+
+  /**
+   * Syncs and closes the current file, if there is one.
+   */
+  private void closeFile() throws IOException {
+    if (out == null) {
+      return;
+    }
+    FSDataOutputStream current = out;
+    out = null;
+    try {
+      current.hsync();
+      flushedEvents = events;
+      oldestUnflushed = 0;
+    } finally {
+      current.close();
+    }
+  }
+}
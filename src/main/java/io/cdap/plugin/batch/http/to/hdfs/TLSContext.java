@@ -0,0 +1,232 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.batch.http.to.hdfs;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.SecureRandom;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.annotation.Nullable;
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509TrustManager;
+
+/**
+ * TLS settings for the https connections opened by a single action instance.
+ *
+ * The {@link SSLContext} is built once and its socket factory is set on every connection instead of replacing the
+ * JVM wide defaults, so other plugins running in the same JVM are not affected. Reusing the same socket factory also
+ * lets the session cache resume TLS sessions across retries and parallel requests, and allows the JDK to reuse
+ * kept-alive connections.
+ */
+final class TLSContext {
+  private static final Logger LOG = LoggerFactory.getLogger(TLSContext.class);
+
+  private final SSLSocketFactory socketFactory;
+  @Nullable
+  private final HostnameVerifier hostnameVerifier;
+
+  private TLSContext(SSLSocketFactory socketFactory, @Nullable HostnameVerifier hostnameVerifier) {
+    this.socketFactory = socketFactory;
+    this.hostnameVerifier = hostnameVerifier;
+  }
+
+  static TLSContext create(HTTPToHDFSActionConfig config) throws IOException, GeneralSecurityException {
+    KeyManager[] keyManagers = null;
+    if (config.getKeyStorePath() != null) {
+      KeyStore keyStore = loadKeyStore(config.getKeyStorePath(), config.getKeyStoreType(),
+                                       config.getKeyStorePassword());
+      KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+      keyManagerFactory.init(keyStore, toChars(config.getKeyStorePassword()));
+      keyManagers = keyManagerFactory.getKeyManagers();
+    }
+
+    TrustManager[] trustManagers = null;
+    HostnameVerifier hostnameVerifier = null;
+    if (config.getDisableSSLValidation()) {
+      trustManagers = new TrustManager[]{new TrustAllManager()};
+      hostnameVerifier = new HostnameVerifier() {
+        @Override
+        public boolean verify(String hostname, SSLSession session) {
+          return true;
+        }
+      };
+    } else if (config.getTrustStorePath() != null) {
+      KeyStore trustStore = loadKeyStore(config.getTrustStorePath(), config.getTrustStoreType(),
+                                         config.getTrustStorePassword());
+      TrustManagerFactory trustManagerFactory =
+        TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+      trustManagerFactory.init(trustStore);
+      trustManagers = trustManagerFactory.getTrustManagers();
+    }
+
+    SSLContext sslContext = SSLContext.getInstance("TLS");
+    sslContext.init(keyManagers, trustManagers, new SecureRandom());
+    sslContext.getClientSessionContext().setSessionCacheSize(config.getSslSessionCacheSize());
+    sslContext.getClientSessionContext().setSessionTimeout(config.getSslSessionTimeout());
+
+    List<String> supported = Arrays.asList(sslContext.getSupportedSSLParameters().getProtocols());
+    List<String> protocols = new ArrayList<>();
+    for (String protocol : config.getTlsProtocols()) {
+      if (supported.contains(protocol)) {
+        protocols.add(protocol);
+      } else {
+        LOG.debug("TLS protocol {} is not supported by this JVM and will not be used.", protocol);
+      }
+    }
+    if (protocols.isEmpty()) {
+      throw new IllegalArgumentException(
+        String.format("None of the TLS protocols '%s' are supported. Supported protocols are '%s'.",
+                      config.getTlsProtocols(), supported));
+    }
+
+    return new TLSContext(new ProtocolSocketFactory(sslContext.getSocketFactory(),
+                                                    protocols.toArray(new String[protocols.size()])),
+                          hostnameVerifier);
+  }
+
+  /**
+   * Applies the TLS settings to the given connection. Connections other than https are left untouched.
+   */
+  void configure(HttpURLConnection conn) {
+    if (!(conn instanceof HttpsURLConnection)) {
+      return;
+    }
+    HttpsURLConnection httpsConn = (HttpsURLConnection) conn;
+    httpsConn.setSSLSocketFactory(socketFactory);
+    if (hostnameVerifier != null) {
+      httpsConn.setHostnameVerifier(hostnameVerifier);
+    }
+  }
+
+  private static KeyStore loadKeyStore(String path, String type, @Nullable String password)
+    throws IOException, GeneralSecurityException {
+    Path storePath = new Path(path);
+    FileSystem fs = FileSystem.get(storePath.toUri(), new Configuration());
+    KeyStore keyStore = KeyStore.getInstance(type);
+    try (InputStream inputStream = fs.open(storePath)) {
+      keyStore.load(inputStream, toChars(password));
+    }
+    return keyStore;
+  }
+
+  @Nullable
+  private static char[] toChars(@Nullable String password) {
+    return password == null ? null : password.toCharArray();
+  }
+
+  /**
+   * Trust manager that accepts every certificate, used when SSL validation is disabled.
+   */
+  private static final class TrustAllManager implements X509TrustManager {
+    @Override
+    public X509Certificate[] getAcceptedIssuers() {
+      return new X509Certificate[0];
+    }
+
+    @Override
+    public void checkClientTrusted(X509Certificate[] certs, String authType) {
+    }
+
+    @Override
+    public void checkServerTrusted(X509Certificate[] certs, String authType) {
+    }
+  }
+
+  /**
+   * Socket factory that restricts the protocols enabled on every socket it creates.
+   */
+  private static final class ProtocolSocketFactory extends SSLSocketFactory {
+    private final SSLSocketFactory delegate;
+    private final String[] protocols;
+
+    private ProtocolSocketFactory(SSLSocketFactory delegate, String[] protocols) {
+      this.delegate = delegate;
+      this.protocols = protocols;
+    }
+
+    @Override
+    public String[] getDefaultCipherSuites() {
+      return delegate.getDefaultCipherSuites();
+    }
+
+    @Override
+    public String[] getSupportedCipherSuites() {
+      return delegate.getSupportedCipherSuites();
+    }
+
+    @Override
+    public Socket createSocket() throws IOException {
+      return enableProtocols(delegate.createSocket());
+    }
+
+    @Override
+    public Socket createSocket(Socket socket, String host, int port, boolean autoClose) throws IOException {
+      return enableProtocols(delegate.createSocket(socket, host, port, autoClose));
+    }
+
+    @Override
+    public Socket createSocket(String host, int port) throws IOException {
+      return enableProtocols(delegate.createSocket(host, port));
+    }
+
+    @Override
+    public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+      return enableProtocols(delegate.createSocket(host, port, localHost, localPort));
+    }
+
+    @Override
+    public Socket createSocket(InetAddress host, int port) throws IOException {
+      return enableProtocols(delegate.createSocket(host, port));
+    }
+
+    @Override
+    public Socket createSocket(InetAddress address, int port, InetAddress localAddress,
+                               int localPort) throws IOException {
+      return enableProtocols(delegate.createSocket(address, port, localAddress, localPort));
+    }
+
+    private Socket enableProtocols(Socket socket) {
+      if (socket instanceof SSLSocket) {
+        ((SSLSocket) socket).setEnabledProtocols(protocols);
+      }
+      return socket;
+    }
+  }
+}
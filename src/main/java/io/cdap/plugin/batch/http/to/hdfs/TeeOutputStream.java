@@ -0,0 +1,372 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.batch.http.to.hdfs;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Output stream that writes the same data to several destinations at the same time.
+ *
+ * Each destination is created and written by its own thread from its own buffer, bounded to a number of bytes.
+ * Writing blocks only while the buffer of a destination is full, so a slow destination slows down the stream once it
+ * is a buffer behind, but not before. A destination that cannot be created or written is dropped and the others
+ * continue. The first destination is required, writing fails as soon as it fails or as soon as fewer than the quorum
+ * of destinations are left.
+ *
+ * The written destinations are only committed by {@link #commit()}, once every destination was written and the quorum
+ * was reached. Closing the stream without a commit aborts them, as does a destination failing.
+ */
+final class TeeOutputStream extends OutputStream {
+  private static final Logger LOG = LoggerFactory.getLogger(TeeOutputStream.class);
+  private static final byte[] EOF = new byte[0];
+
+  private final List<Sink> sinks;
+  private final int quorum;
+  private boolean finished;
+  private boolean committed;
+
+  /**
+   * Starts writing to the given streams, which have nothing to commit or abort.
+   *
+   * @param names the names of the streams, used in messages
+   * @param outputs the streams. The first one is required
+   * @param bufferSize the maximum number of bytes buffered for each stream
+   * @param quorum the number of streams that must be written successfully
+   */
+  TeeOutputStream(List<String> names, List<OutputStream> outputs, int bufferSize, int quorum) {
+    this(toDestinations(names, outputs), bufferSize, quorum);
+  }
+
+  /**
+   * Starts creating and writing the given destinations.
+   *
+   * @param destinations the destinations by name, the names are used in messages. The first one is required
+   * @param bufferSize the maximum number of bytes buffered for each destination
+   * @param quorum the number of destinations that must be written successfully
+   */
+  TeeOutputStream(Map<String, Destination> destinations, int bufferSize, int quorum) {
+    this.sinks = new ArrayList<>();
+    this.quorum = quorum;
+    for (Map.Entry<String, Destination> destination : destinations.entrySet()) {
+      Sink sink = new Sink(destination.getKey(), destination.getValue(), bufferSize);
+      sinks.add(sink);
+      sink.start();
+    }
+  }
+
+  private static Map<String, Destination> toDestinations(List<String> names, List<OutputStream> outputs) {
+    Map<String, Destination> destinations = new LinkedHashMap<>();
+    for (int i = 0; i < outputs.size(); i++) {
+      final OutputStream output = outputs.get(i);
+      destinations.put(names.get(i), new Destination() {
+        @Override
+        public OutputStream create() {
+          return output;
+        }
+
+        @Override
+        public void commit() {
+          // the data was written to the stream
+        }
+
+        @Override
+        public void abort() {
+          // the data written to the stream cannot be taken back
+        }
+      });
+    }
+    return destinations;
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    write(new byte[] {(byte) b}, 0, 1);
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return;
+    }
+    byte[] chunk = Arrays.copyOfRange(b, off, off + len);
+    for (Sink sink : sinks) {
+      sink.offer(chunk);
+    }
+    checkQuorum();
+  }
+
+  /**
+   * Waits until every destination was written and closed, and commits the destinations that did not fail. A
+   * destination that fails to commit counts as failed.
+   *
+   * @throws IOException if the first destination failed or fewer than the quorum of destinations were written
+   */
+  void commit() throws IOException {
+    finish();
+    if (committed) {
+      return;
+    }
+    try {
+      checkQuorum();
+      committed = true;
+      for (Sink sink : sinks) {
+        if (sink.failure == null) {
+          try {
+            sink.destination.commit();
+          } catch (IOException e) {
+            LOG.warn("Error committing {}, continuing with the other destinations.", sink.name, e);
+            sink.failure = e;
+          }
+        }
+      }
+      logFailed();
+      checkQuorum();
+    } finally {
+      abort();
+    }
+  }
+
+  /**
+   * Waits until every destination was written and closed. Unless the stream was committed, every destination is
+   * aborted.
+   *
+   * @throws IOException if the first destination failed or fewer than the quorum of destinations were written
+   */
+  @Override
+  public void close() throws IOException {
+    if (finished) {
+      return;
+    }
+    finish();
+    try {
+      logFailed();
+      checkQuorum();
+    } finally {
+      abort();
+    }
+  }
+
+  /**
+   * Returns the names of the destinations that did not fail.
+   */
+  List<String> getSucceeded() {
+    List<String> succeeded = new ArrayList<>();
+    for (Sink sink : sinks) {
+      if (sink.failure == null) {
+        succeeded.add(sink.name);
+      }
+    }
+    return succeeded;
+  }
+
+  /**
+   * Returns the names of the destinations that failed.
+   */
+  List<String> getFailed() {
+    List<String> failed = new ArrayList<>();
+    for (Sink sink : sinks) {
+      if (sink.failure != null) {
+        failed.add(sink.name);
+      }
+    }
+    return failed;
+  }
+
+  private void finish() throws IOException {
+    if (finished) {
+      return;
+    }
+    finished = true;
+    for (Sink sink : sinks) {
+      sink.finish();
+    }
+    for (Sink sink : sinks) {
+      sink.await();
+    }
+  }
+
+  /**
+   * Aborts the destinations that failed, or all of them if the stream was not committed.
+   */
+  private void abort() {
+    for (Sink sink : sinks) {
+      if (!committed || sink.failure != null) {
+        sink.destination.abort();
+      }
+    }
+  }
+
+  private void logFailed() {
+    List<String> failed = getFailed();
+    if (!failed.isEmpty()) {
+      LOG.warn("Wrote {} of {} destinations, writing to {} failed.", sinks.size() - failed.size(), sinks.size(),
+               failed);
+    }
+  }
+
+  private void checkQuorum() throws IOException {
+    Sink required = sinks.get(0);
+    if (required.failure != null) {
+      throw new IOException(String.format("Error writing to %s.", required.name), required.failure);
+    }
+    int succeeded = getSucceeded().size();
+    if (succeeded < quorum) {
+      IOException e = new IOException(String.format("Only %d of %d destinations could be written, %d are required.",
+                                                    succeeded, sinks.size(), quorum));
+      for (Sink sink : sinks) {
+        if (sink.failure != null) {
+          e.addSuppressed(sink.failure);
+        }
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * A destination of the stream.
+   */
+  interface Destination {
+
+    /**
+     * Creates the stream the data is written to. Called by the thread that writes the destination.
+     */
+    OutputStream create() throws IOException;
+
+    /**
+     * Makes the written data visible, once every destination was written and closed.
+     */
+    void commit() throws IOException;
+
+    /**
+     * Removes the data that was written, if any. Called for a destination that failed, and for every destination
+     * of a stream that was not committed.
+     */
+    void abort();
+  }
+
+  /**
+   * A destination, created and written by its own thread from a queue of chunks holding at most the buffer size in
+   * bytes.
+   */
+  private static final class Sink implements Runnable {
+    private final String name;
+    private final Destination destination;
+    private final int bufferSize;
+    private final Semaphore space;
+    private final BlockingQueue<byte[]> queue;
+    private final Thread thread;
+    private volatile Throwable failure;
+
+    private Sink(String name, Destination destination, int bufferSize) {
+      this.name = name;
+      this.destination = destination;
+      this.bufferSize = bufferSize;
+      this.space = new Semaphore(bufferSize);
+      this.queue = new LinkedBlockingQueue<>();
+      this.thread = new Thread(this, "tee-" + name);
+      this.thread.setDaemon(true);
+    }
+
+    private void start() {
+      thread.start();
+    }
+
+    private void offer(byte[] chunk) throws IOException {
+      if (failure != null) {
+        return;
+      }
+      try {
+        space.acquire(permits(chunk));
+        queue.put(chunk);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while writing to " + name);
+      }
+    }
+
+    private void finish() {
+      queue.add(EOF);
+    }
+
+    private void await() throws IOException {
+      try {
+        thread.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while waiting for " + name);
+      }
+    }
+
+    private int permits(byte[] chunk) {
+      // a chunk larger than the buffer takes the whole buffer, so that it can still be written
+      return Math.min(chunk.length, bufferSize);
+    }
+
+    @Override
+    public void run() {
+      OutputStream out = null;
+      try {
+        out = destination.create();
+      } catch (Throwable t) {
+        // the chunks are still taken from the queue, so that writing never waits for this destination
+        LOG.warn("Error creating {}, continuing with the other destinations.", name, t);
+        failure = t;
+      }
+      try {
+        byte[] chunk;
+        while ((chunk = queue.take()) != EOF) {
+          try {
+            if (failure == null) {
+              out.write(chunk);
+            }
+          } catch (Throwable t) {
+            LOG.warn("Error writing to {}, continuing with the other destinations.", name, t);
+            failure = t;
+          } finally {
+            space.release(permits(chunk));
+          }
+        }
+      } catch (InterruptedException e) {
+        failure = e;
+      } finally {
+        try {
+          if (out != null) {
+            out.close();
+          }
+        } catch (Throwable t) {
+          if (failure == null) {
+            LOG.warn("Error closing {}.", name, t);
+            failure = t;
+          }
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.batch.http.to.hdfs;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.net.HttpURLConnection;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+
+/**
+ * Watches the progress of a transfer and disconnects the current connection when the first byte takes too long,
+ * the throughput over a sliding window drops below a minimum, or the overall deadline passes. Disconnecting makes
+ * the blocked read fail, so the abort is handled like any other read error.
+ *
+ * The first byte timer starts once the request was sent, so it covers the wait for the response headers and the
+ * first bytes of the body, but not the time to connect, which the connect timeout bounds.
+ *
+ * Disconnecting does not interrupt a read that is blocked in the response body, it waits for the read to return.
+ * Connections are therefore opened with a read timeout just above the limits, see {@link #getReadTimeout(int)}, so
+ * that a blocked read fails shortly after the watchdog aborted its connection.
+ */
+final class TransferWatchdog implements Closeable {
+  private static final Logger LOG = LoggerFactory.getLogger(TransferWatchdog.class);
+  private static final long TICK_MILLIS = 1000;
+
+  private final long firstByteTimeout;
+  private final long minThroughput;
+  private final long[] window;
+  private final long deadline;
+  private final AtomicLong bytes;
+  private ScheduledExecutorService executor;
+
+  private HttpURLConnection conn;
+  private long connectedAt;
+  private volatile boolean firstByte;
+  private int ticks;
+  private String abortReason;
+  private volatile boolean deadlineExceeded;
+
+  /**
+   * Creates a watchdog. Limits set to 0 are not enforced.
+   *
+   * @param firstByteTimeout the time in milliseconds to wait for the first byte of a response
+   * @param minThroughput the minimum throughput in bytes per second
+   * @param windowSeconds the number of seconds the throughput is averaged over
+   * @param deadlineSeconds the time in seconds the whole transfer, including retries, may take
+   */
+  TransferWatchdog(long firstByteTimeout, long minThroughput, int windowSeconds, long deadlineSeconds) {
+    this.firstByteTimeout = firstByteTimeout;
+    this.minThroughput = minThroughput;
+    this.window = new long[Math.max(1, windowSeconds)];
+    this.deadline = deadlineSeconds > 0 ? System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(deadlineSeconds) : 0;
+    this.bytes = new AtomicLong();
+  }
+
+  /**
+   * Starts watching, if any limit is set.
+   */
+  synchronized void start() {
+    if (executor != null || (firstByteTimeout <= 0 && minThroughput <= 0 && deadline <= 0)) {
+      return;
+    }
+    executor = Executors.newSingleThreadScheduledExecutor(
+      new ThreadFactoryBuilder().setDaemon(true).setNameFormat("transfer-watchdog-%d").build());
+    executor.scheduleAtFixedRate(new Runnable() {
+      @Override
+      public void run() {
+        HttpURLConnection aborted = check();
+        // outside of the lock, since disconnecting waits for a blocked read to return
+        if (aborted != null) {
+          aborted.disconnect();
+        }
+      }
+    }, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Called when the request was sent on a new connection. Resets the first byte timer and the throughput window.
+   */
+  synchronized void connected(HttpURLConnection conn) {
+    this.conn = conn;
+    this.connectedAt = System.currentTimeMillis();
+    this.firstByte = false;
+    this.ticks = 0;
+    this.bytes.set(0);
+    if (deadlineExceeded) {
+      conn.disconnect();
+    }
+  }
+
+  /**
+   * Called when the current connection is closed, so that it is no longer watched.
+   */
+  synchronized void disconnected() {
+    conn = null;
+  }
+
+  /**
+   * Returns the read timeout for a new connection, which is the configured one unless a read that blocks that long
+   * would exceed one of the limits. The timeout is a few ticks above the limit, so that the watchdog aborts first and
+   * the read fails with the reason of the abort.
+   *
+   * @param readTimeout the configured read timeout in milliseconds, 0 for infinite
+   */
+  int getReadTimeout(int readTimeout) {
+    long timeout = readTimeout > 0 ? readTimeout : Long.MAX_VALUE;
+    if (firstByteTimeout > 0) {
+      timeout = Math.min(timeout, firstByteTimeout + 2 * TICK_MILLIS);
+    }
+    if (minThroughput > 0) {
+      // a read that blocks for the whole window means no data was received in the window
+      timeout = Math.min(timeout, (window.length + 2) * TICK_MILLIS);
+    }
+    if (deadline > 0) {
+      timeout = Math.min(timeout, Math.max(0, deadline - System.currentTimeMillis()) + 2 * TICK_MILLIS);
+    }
+    return timeout == Long.MAX_VALUE ? 0 : (int) Math.min(Integer.MAX_VALUE, timeout);
+  }
+
+  /**
+   * Called after bytes were read from the current connection.
+   */
+  void read(int count) {
+    firstByte = true;
+    bytes.addAndGet(count);
+  }
+
+  /**
+   * Returns why the last connection was aborted and clears it, or returns {@code null} if it was not aborted.
+   */
+  @Nullable
+  synchronized String takeAbortReason() {
+    String reason = abortReason;
+    abortReason = null;
+    return reason;
+  }
+
+  /**
+   * Returns whether the overall deadline has passed. The transfer should not be retried once it has.
+   */
+  boolean isDeadlineExceeded() {
+    return deadlineExceeded || (deadline > 0 && System.currentTimeMillis() >= deadline);
+  }
+
+  @Override
+  public synchronized void close() {
+    if (executor != null) {
+      executor.shutdownNow();
+      executor = null;
+    }
+    conn = null;
+  }
+
+  /**
+   * Checks the limits and returns the connection to disconnect if one was exceeded.
+   */
+  @Nullable
+  private synchronized HttpURLConnection check() {
+    long now = System.currentTimeMillis();
+    if (deadline > 0 && now >= deadline) {
+      deadlineExceeded = true;
+      return abort("the transfer deadline has passed");
+    }
+    if (conn == null) {
+      return null;
+    }
+    long tickBytes = bytes.getAndSet(0);
+    if (!firstByte) {
+      if (firstByteTimeout > 0 && now - connectedAt >= firstByteTimeout) {
+        return abort(String.format("no data was received within %d ms", firstByteTimeout));
+      }
+      return null;
+    }
+    window[ticks % window.length] = tickBytes;
+    ticks++;
+    if (minThroughput <= 0 || ticks < window.length) {
+      return null;
+    }
+    long total = 0;
+    for (long count : window) {
+      total += count;
+    }
+    long throughput = total * 1000 / (window.length * TICK_MILLIS);
+    if (throughput < minThroughput) {
+      return abort(String.format(
+        "throughput of %d bytes/sec over the last %d seconds is below the minimum of %d bytes/sec",
+        throughput, window.length, minThroughput));
+    }
+    return null;
+  }
+
+  @Nullable
+  private HttpURLConnection abort(String reason) {
+    HttpURLConnection aborted = conn;
+    if (aborted == null) {
+      return null;
+    }
+    LOG.warn("Aborting connection to {} because {}.", aborted.getURL(), reason);
+    abortReason = reason;
+    conn = null;
+    return aborted;
+  }
+}
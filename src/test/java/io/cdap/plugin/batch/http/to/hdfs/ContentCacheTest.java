@@ -0,0 +1,170 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.batch.http.to.hdfs;
+
+import com.google.common.io.Files;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for {@link ContentCache}.
+ */
+public class ContentCacheTest {
+  private static final long TTL_SECONDS = TimeUnit.HOURS.toSeconds(1);
+  private static final String DATA = "a,b\n1,2\n";
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private FileSystem fs;
+  private Path directory;
+
+  @Before
+  public void setupCache() throws IOException {
+    fs = FileSystem.getLocal(new Configuration());
+    directory = new Path(temporaryFolder.newFolder().getAbsolutePath(), "cache");
+  }
+
+  @Test
+  public void testNormalize() throws MalformedURLException {
+    Assert.assertEquals("https://example.com/data?a=1&b=2",
+                        ContentCache.normalize("HTTPS://Example.COM:443/data?b=2&a=1#top"));
+    Assert.assertEquals("http://example.com:8080/", ContentCache.normalize("http://example.com:8080"));
+  }
+
+  @Test
+  public void testKey() throws MalformedURLException {
+    HTTPToHDFSActionConfig config = HTTPToHDFSActionConfig.builder()
+      .setUrl("https://example.com/data?b=2&a=1")
+      .setMethod("GET")
+      .setOutputFormat("Text")
+      .setCharset("UTF-8")
+      .setRequestHeaders("Accept:text/csv\nAuthorization:secret")
+      .setCacheKeyHeaders("Accept")
+      .build();
+    String key = ContentCache.key(config);
+
+    // headers that are not part of the key are ignored
+    Assert.assertEquals(key, ContentCache.key(HTTPToHDFSActionConfig.builder(config)
+                                                .setUrl("https://EXAMPLE.com/data?a=1&b=2")
+                                                .setRequestHeaders("Accept:text/csv\nAuthorization:other")
+                                                .build()));
+    Assert.assertNotEquals(key, ContentCache.key(HTTPToHDFSActionConfig.builder(config)
+                                                   .setRequestHeaders("Accept:application/json")
+                                                   .build()));
+    Assert.assertNotEquals(key, ContentCache.key(HTTPToHDFSActionConfig.builder(config)
+                                                   .setOutputFormat("Binary")
+                                                   .build()));
+  }
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    ContentCache cache = new ContentCache(directory, "a", TTL_SECONDS, 1024 * 1024);
+    File target = temporaryFolder.newFile();
+    Assert.assertNull(cache.get(new Path(target.getAbsolutePath())));
+
+    Assert.assertEquals(0, put(cache, DATA));
+    ContentCache.Entry entry = cache.get(new Path(target.getAbsolutePath()));
+    Assert.assertNotNull(entry);
+    Assert.assertEquals("{\"Content-Type\":\"text/csv\"}", entry.getHeaders());
+    Assert.assertNull(entry.getProfile());
+    Assert.assertEquals(DATA, Files.toString(target, StandardCharsets.UTF_8));
+
+    // an entry of another key is not found
+    Assert.assertNull(new ContentCache(directory, "b", TTL_SECONDS, 1024 * 1024)
+                        .get(new Path(temporaryFolder.newFile().getAbsolutePath())));
+  }
+
+  @Test
+  public void testTtlExpiry() throws IOException {
+    put(new ContentCache(directory, "a", TTL_SECONDS, 1024 * 1024), DATA);
+    // an entry fetched longer ago than the ttl is a miss, but stays until it is evicted
+    Assert.assertNull(new ContentCache(directory, "a", 0, 1024 * 1024)
+                        .get(new Path(temporaryFolder.newFile().getAbsolutePath())));
+    Assert.assertTrue(fs.exists(new Path(directory, "a.data")));
+
+    // an entry that was not used within the ttl is evicted by the next put
+    age("a", 2 * TTL_SECONDS);
+    Assert.assertEquals(1, put(new ContentCache(directory, "b", TTL_SECONDS, 1024 * 1024), DATA));
+    Assert.assertFalse(fs.exists(new Path(directory, "a.data")));
+    Assert.assertFalse(fs.exists(new Path(directory, "a.json")));
+    Assert.assertTrue(fs.exists(new Path(directory, "b.data")));
+  }
+
+  @Test
+  public void testSizeEviction() throws IOException {
+    long maxSize = 2 * DATA.length();
+    put(new ContentCache(directory, "a", TTL_SECONDS, maxSize), DATA);
+    age("a", 30);
+    put(new ContentCache(directory, "b", TTL_SECONDS, maxSize), DATA);
+    age("b", 20);
+
+    // the oldest entry is evicted until the cache fits its size again
+    Assert.assertEquals(1, put(new ContentCache(directory, "c", TTL_SECONDS, maxSize), DATA));
+    Assert.assertFalse(fs.exists(new Path(directory, "a.data")));
+    Assert.assertTrue(fs.exists(new Path(directory, "b.data")));
+    Assert.assertTrue(fs.exists(new Path(directory, "c.data")));
+  }
+
+  @Test
+  public void testLeastRecentlyUsedEvicted() throws IOException {
+    long maxSize = 2 * DATA.length();
+    ContentCache a = new ContentCache(directory, "a", TTL_SECONDS, maxSize);
+    put(a, DATA);
+    age("a", 30);
+    put(new ContentCache(directory, "b", TTL_SECONDS, maxSize), DATA);
+    age("b", 20);
+
+    // a hit makes the older entry the most recently used one
+    long before = fs.getFileStatus(new Path(directory, "a.data")).getModificationTime();
+    Assert.assertNotNull(a.get(new Path(temporaryFolder.newFile().getAbsolutePath())));
+    Assert.assertTrue(fs.getFileStatus(new Path(directory, "a.data")).getModificationTime() > before);
+
+    Assert.assertEquals(1, put(new ContentCache(directory, "c", TTL_SECONDS, maxSize), DATA));
+    Assert.assertTrue(fs.exists(new Path(directory, "a.data")));
+    Assert.assertFalse(fs.exists(new Path(directory, "b.data")));
+    Assert.assertFalse(fs.exists(new Path(directory, "b.json")));
+    Assert.assertTrue(fs.exists(new Path(directory, "c.data")));
+  }
+
+  private int put(ContentCache cache, String data) throws IOException {
+    File source = temporaryFolder.newFile();
+    Files.write(data, source, StandardCharsets.UTF_8);
+    return cache.put(new Path(source.getAbsolutePath()), "https://example.com/data",
+                     "{\"Content-Type\":\"text/csv\"}", null);
+  }
+
+  /**
+   * Moves the last use of an entry back by some seconds.
+   */
+  private void age(String key, long seconds) throws IOException {
+    fs.setTimes(new Path(directory, key + ".data"),
+                System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(seconds), -1);
+  }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.batch.http.to.hdfs;
+
+import com.google.common.io.ByteStreams;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests for {@link DeltaOutputStream}.
+ */
+public class DeltaOutputStreamTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void testJsonDelta() throws Exception {
+    File directory = temporaryFolder.newFolder();
+    HTTPToHDFSActionConfig config = HTTPToHDFSActionConfig.builder()
+      .setHdfsFilePath(new File(directory, "data.json").getAbsolutePath())
+      .setDeltaKeyFields("id,meta.region")
+      .setDeltaDeletedKeysPath(new File(directory, "deleted.txt").getAbsolutePath())
+      .build();
+
+    Assert.assertEquals(Arrays.asList("{\"id\": 1, \"meta\": {\"region\": \"eu\"}, \"v\": 1}",
+                                      "{\"id\": 1, \"meta\": {\"region\": \"us\"}, \"v\": 1}",
+                                      "{\"id\": 2, \"meta\": {\"region\": \"eu\"}, \"v\": 1}",
+                                      "{\"id\": 3}"),
+                        delta(config, "{\"id\": 1, \"meta\": {\"region\": \"eu\"}, \"v\": 1}\n" +
+                          "{\"id\": 1, \"meta\": {\"region\": \"us\"}, \"v\": 1}\r\n" +
+                          "\n" +
+                          "{\"id\": 3}\n" +
+                          "{\"id\": 2, \"meta\": {\"region\": \"eu\"}, \"v\": 1}"));
+
+    DeltaOutputStream delta = run(config, "{\"id\": 2, \"meta\": {\"region\": \"eu\"}, \"v\": 2}\n" +
+      "{\"id\": 1, \"meta\": {\"region\": \"eu\"}, \"v\": 1}\n" +
+      "{\"id\": 4, \"meta\": {\"region\": \"eu\"}, \"v\": 1}\n", new ByteArrayOutputStream());
+    Assert.assertEquals(1, delta.getInserted());
+    Assert.assertEquals(1, delta.getChanged());
+    Assert.assertEquals(1, delta.getUnchanged());
+    Assert.assertEquals(1, delta.getDeleted());
+    Assert.assertEquals("1\u0001us\n", read(new File(directory, "deleted.txt")));
+  }
+
+  @Test
+  public void testCsvDeltaWithHeader() throws Exception {
+    File directory = temporaryFolder.newFolder();
+    HTTPToHDFSActionConfig config = HTTPToHDFSActionConfig.builder()
+      .setHdfsFilePath(new File(directory, "data.csv").getAbsolutePath())
+      .setDeltaKeyFields("id")
+      .setCsvHeader(true)
+      .build();
+
+    delta(config, "name,id\na,1\nb,2\n");
+    Assert.assertEquals(Arrays.asList("\"b2\",2", "c,3", "name,id"),
+                        delta(config, "name,id\na,1\n\"b2\",2\nc,3\n"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testCsvWithoutHeaderNeedsKeyIndexes() throws Exception {
+    File directory = temporaryFolder.newFolder();
+    HTTPToHDFSActionConfig config = HTTPToHDFSActionConfig.builder()
+      .setHdfsFilePath(new File(directory, "data.csv").getAbsolutePath())
+      .setDeltaKeyFields("id")
+      .setCsvHeader(false)
+      .build();
+
+    delta(config, "a,1\nb,2\n");
+  }
+
+  @Test
+  public void testManyRecordsAcrossPartitions() throws Exception {
+    File directory = temporaryFolder.newFolder();
+    HTTPToHDFSActionConfig config = HTTPToHDFSActionConfig.builder()
+      .setHdfsFilePath(new File(directory, "data.csv").getAbsolutePath())
+      .setDeltaKeyFields("0")
+      .build();
+
+    StringBuilder first = new StringBuilder();
+    StringBuilder second = new StringBuilder();
+    List<String> changed = new ArrayList<>();
+    for (int i = 0; i < 20000; i++) {
+      first.append(i).append(",a\n");
+      String record = i % 1000 == 0 ? i + ",b" : i + ",a";
+      second.append(record).append('\n');
+      if (i % 1000 == 0) {
+        changed.add(record);
+      }
+    }
+    Assert.assertEquals(20000, delta(config, first.toString()).size());
+    Collections.sort(changed);
+    Assert.assertEquals(changed, delta(config, second.toString()));
+    Assert.assertEquals(Collections.<String>emptyList(), delta(config, second.toString()));
+  }
+
+  @Test
+  public void testGrowingSnapshotSplitsPartitions() throws Exception {
+    File directory = temporaryFolder.newFolder();
+    HTTPToHDFSActionConfig config = HTTPToHDFSActionConfig.builder()
+      .setHdfsFilePath(new File(directory, "data.csv").getAbsolutePath())
+      .setDeltaKeyFields("0")
+      .build();
+
+    // partitions of 10 entries are split several times when the first run and the run that grows are finished
+    StringBuilder first = new StringBuilder();
+    for (int i = 0; i < 500; i++) {
+      first.append(i).append(",a\n");
+    }
+    Assert.assertEquals(500, delta(config, first.toString(), 10).size());
+    StringBuilder second = new StringBuilder();
+    List<String> written = new ArrayList<>();
+    for (int i = 0; i < 20000; i++) {
+      String record = i < 500 && i % 100 != 0 ? i + ",a" : i + ",b";
+      second.append(record).append('\n');
+      if (i >= 500 || i % 100 == 0) {
+        written.add(record);
+      }
+    }
+    Collections.sort(written);
+    Assert.assertEquals(written, delta(config, second.toString(), 10));
+    Assert.assertEquals(Collections.<String>emptyList(), delta(config, second.toString(), 10));
+    // the index is the same with partitions of the default size
+    Assert.assertEquals(Collections.<String>emptyList(), delta(config, second.toString()));
+  }
+
+  @Test
+  public void testDuplicateKeysKeepLastRecord() throws Exception {
+    File directory = temporaryFolder.newFolder();
+    HTTPToHDFSActionConfig config = HTTPToHDFSActionConfig.builder()
+      .setHdfsFilePath(new File(directory, "data.json").getAbsolutePath())
+      .setDeltaKeyFields("id")
+      .setDeltaDeletedKeysPath(new File(directory, "deleted.txt").getAbsolutePath())
+      .build();
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    DeltaOutputStream delta = run(config, "{\"id\": 1, \"v\": 1}\n{\"id\": 2}\n{\"id\": 1, \"v\": 2}\n" +
+      "{\"id\": 1, \"v\": 3}\n", out, DeltaOutputStream.PARTITION_ENTRIES);
+    List<String> written = Arrays.asList(new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n"));
+    Collections.sort(written);
+    Assert.assertEquals(Arrays.asList("{\"id\": 1, \"v\": 3}", "{\"id\": 2}"), written);
+    Assert.assertEquals(2, delta.getInserted());
+    Assert.assertEquals(2, delta.getDuplicates());
+
+    // the index has a single entry for the key, with the last record
+    delta = run(config, "{\"id\": 1, \"v\": 3}\n{\"id\": 2}\n", new ByteArrayOutputStream(),
+                DeltaOutputStream.PARTITION_ENTRIES);
+    Assert.assertEquals(2, delta.getUnchanged());
+    Assert.assertEquals(0, delta.getDeleted());
+    Assert.assertEquals(0, delta.getDuplicates());
+  }
+
+  /**
+   * Runs the delta and returns the sorted records that were written.
+   */
+  private static List<String> delta(HTTPToHDFSActionConfig config, String data) throws IOException {
+    return delta(config, data, DeltaOutputStream.PARTITION_ENTRIES);
+  }
+
+  private static List<String> delta(HTTPToHDFSActionConfig config, String data,
+                                    long partitionEntries) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    run(config, data, out, partitionEntries);
+    List<String> records = new ArrayList<>();
+    for (String record : new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n")) {
+      if (!record.isEmpty()) {
+        records.add(record);
+      }
+    }
+    Collections.sort(records);
+    return records;
+  }
+
+  private static DeltaOutputStream run(HTTPToHDFSActionConfig config, String data,
+                                       ByteArrayOutputStream out) throws IOException {
+    return run(config, data, out, DeltaOutputStream.PARTITION_ENTRIES);
+  }
+
+  private static DeltaOutputStream run(HTTPToHDFSActionConfig config, String data, ByteArrayOutputStream out,
+                                       long partitionEntries) throws IOException {
+    byte[] bytes = data.getBytes(StandardCharsets.UTF_8);
+    try (DeltaOutputStream delta = new DeltaOutputStream(out, config, partitionEntries)) {
+      // written in uneven chunks, so that records span writes
+      for (int i = 0; i < bytes.length; i += 7) {
+        delta.write(bytes, i, Math.min(7, bytes.length - i));
+      }
+      delta.finish();
+      delta.commit();
+      return delta;
+    }
+  }
+
+  private static String read(File file) throws IOException {
+    try (InputStream in = new FileInputStream(file)) {
+      return new String(ByteStreams.toByteArray(in), StandardCharsets.UTF_8);
+    }
+  }
+}
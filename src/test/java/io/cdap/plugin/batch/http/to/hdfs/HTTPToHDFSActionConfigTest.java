@@ -22,6 +22,7 @@ import io.cdap.cdap.etl.mock.validation.MockFailureCollector;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
@@ -125,6 +126,385 @@ public class HTTPToHDFSActionConfigTest {
     assertValidationFailed(failureCollector, paramNames);
   }
 
+  @Test
+  public void testValidateSslSessionCacheSize() {
+    MockFailureCollector failureCollector = new MockFailureCollector(MOCK_STAGE);
+    HTTPToHDFSActionConfig config = HTTPToHDFSActionConfig.builder(VALID_CONFIG)
+      .setSslSessionCacheSize(-1)
+      .build();
+    List<List<String>> paramNames = Collections.singletonList(
+      Collections.singletonList(HTTPToHDFSActionConfig.SSL_SESSION_CACHE_SIZE)
+    );
+
+    config.validate(failureCollector);
+    assertValidationFailed(failureCollector, paramNames);
+  }
+
+  @Test
+  public void testValidateTlsProtocols() {
+    MockFailureCollector failureCollector = new MockFailureCollector(MOCK_STAGE);
+    HTTPToHDFSActionConfig config = HTTPToHDFSActionConfig.builder(VALID_CONFIG)
+      .setTlsProtocols(" , ")
+      .build();
+    List<List<String>> paramNames = Collections.singletonList(
+      Collections.singletonList(HTTPToHDFSActionConfig.TLS_PROTOCOLS)
+    );
+
+    config.validate(failureCollector);
+    assertValidationFailed(failureCollector, paramNames);
+  }
+
+  @Test
+  public void testValidateMirrorUrls() {
+    MockFailureCollector failureCollector = new MockFailureCollector(MOCK_STAGE);
+    HTTPToHDFSActionConfig config = HTTPToHDFSActionConfig.builder(VALID_CONFIG)
+      .setMirrorUrls("http://mirror-url, mirror_url")
+      .build();
+    List<List<String>> paramNames = Collections.singletonList(
+      Collections.singletonList(HTTPToHDFSActionConfig.MIRROR_URLS)
+    );
+
+    config.validate(failureCollector);
+    assertValidationFailed(failureCollector, paramNames);
+  }
+
+  @Test
+  public void testGetUrls() {
+    HTTPToHDFSActionConfig config = HTTPToHDFSActionConfig.builder(VALID_CONFIG)
+      .setMirrorUrls("http://mirror-1, http://test-url,http://mirror-2")
+      .build();
+    Assert.assertEquals(Arrays.asList("http://test-url", "http://mirror-1", "http://mirror-2"), config.getUrls());
+  }
+
+  @Test
+  public void testValidateFilterPattern() {
+    MockFailureCollector failureCollector = new MockFailureCollector(MOCK_STAGE);
+    HTTPToHDFSActionConfig config = HTTPToHDFSActionConfig.builder(VALID_CONFIG)
+      .setFilterType("Regex")
+      .setFilterPattern("[a-z")
+      .build();
+    List<List<String>> paramNames = Collections.singletonList(
+      Collections.singletonList(HTTPToHDFSActionConfig.FILTER_PATTERN)
+    );
+
+    config.validate(failureCollector);
+    assertValidationFailed(failureCollector, paramNames);
+  }
+
+  @Test
+  public void testValidateCSVFilterColumnIndex() {
+    MockFailureCollector failureCollector = new MockFailureCollector(MOCK_STAGE);
+    HTTPToHDFSActionConfig config = HTTPToHDFSActionConfig.builder(VALID_CONFIG)
+      .setFilterType("CSV")
+      .setCsvHeader(false)
+      .setFilterField("region")
+      .setFilterPattern("EU")
+      .build();
+    List<List<String>> paramNames = Collections.singletonList(
+      Collections.singletonList(HTTPToHDFSActionConfig.FILTER_FIELD)
+    );
+
+    config.validate(failureCollector);
+    assertValidationFailed(failureCollector, paramNames);
+  }
+
+  @Test
+  public void testValidateThroughputWindow() {
+    MockFailureCollector failureCollector = new MockFailureCollector(MOCK_STAGE);
+    HTTPToHDFSActionConfig config = HTTPToHDFSActionConfig.builder(VALID_CONFIG)
+      .setMinThroughput(1024L)
+      .setThroughputWindow(0)
+      .build();
+    List<List<String>> paramNames = Collections.singletonList(
+      Collections.singletonList(HTTPToHDFSActionConfig.THROUGHPUT_WINDOW)
+    );
+
+    config.validate(failureCollector);
+    assertValidationFailed(failureCollector, paramNames);
+  }
+
+  @Test
+  public void testValidateAdditionalUrlsRequirePacking() {
+    MockFailureCollector failureCollector = new MockFailureCollector(MOCK_STAGE);
+    HTTPToHDFSActionConfig config = HTTPToHDFSActionConfig.builder(VALID_CONFIG)
+      .setAdditionalUrls("https://example.com/a\nhttps://example.com/b")
+      .build();
+    List<List<String>> paramNames = Collections.singletonList(
+      Collections.singletonList(HTTPToHDFSActionConfig.ADDITIONAL_URLS)
+    );
+
+    config.validate(failureCollector);
+    assertValidationFailed(failureCollector, paramNames);
+  }
+
+  @Test
+  public void testValidatePackedFileSize() {
+    MockFailureCollector failureCollector = new MockFailureCollector(MOCK_STAGE);
+    HTTPToHDFSActionConfig config = HTTPToHDFSActionConfig.builder(VALID_CONFIG)
+      .setOutputFormat(HTTPToHDFSActionConfig.OUTPUT_FORMAT_SEQUENCE_FILE)
+      .setAdditionalUrls("https://example.com/a")
+      .setPackedFileSize(0L)
+      .build();
+    List<List<String>> paramNames = Collections.singletonList(
+      Collections.singletonList(HTTPToHDFSActionConfig.PACKED_FILE_SIZE)
+    );
+
+    config.validate(failureCollector);
+    assertValidationFailed(failureCollector, paramNames);
+  }
+
+  @Test
+  public void testValidatePackedRecordSize() {
+    MockFailureCollector failureCollector = new MockFailureCollector(MOCK_STAGE);
+    HTTPToHDFSActionConfig config = HTTPToHDFSActionConfig.builder(VALID_CONFIG)
+      .setOutputFormat(HTTPToHDFSActionConfig.OUTPUT_FORMAT_SEQUENCE_FILE)
+      .setAdditionalUrls("https://example.com/a")
+      .setPackedRecordSize(4L * 1024 * 1024 * 1024)
+      .build();
+    List<List<String>> paramNames = Collections.singletonList(
+      Collections.singletonList(HTTPToHDFSActionConfig.PACKED_RECORD_SIZE)
+    );
+
+    config.validate(failureCollector);
+    assertValidationFailed(failureCollector, paramNames);
+  }
+
+  @Test
+  public void testValidateCacheTtl() {
+    MockFailureCollector failureCollector = new MockFailureCollector(MOCK_STAGE);
+    HTTPToHDFSActionConfig config = HTTPToHDFSActionConfig.builder(VALID_CONFIG)
+      .setCacheDirectory("/tmp/cache")
+      .setCacheTtl(0L)
+      .build();
+    List<List<String>> paramNames = Collections.singletonList(
+      Collections.singletonList(HTTPToHDFSActionConfig.CACHE_TTL)
+    );
+
+    config.validate(failureCollector);
+    assertValidationFailed(failureCollector, paramNames);
+  }
+
+  @Test
+  public void testValidateOAuth2ClientSecretRequired() {
+    MockFailureCollector failureCollector = new MockFailureCollector(MOCK_STAGE);
+    HTTPToHDFSActionConfig config = HTTPToHDFSActionConfig.builder(VALID_CONFIG)
+      .setOAuth2TokenUrl("https://example.com/oauth/token")
+      .setOAuth2ClientId("client")
+      .build();
+    List<List<String>> paramNames = Collections.singletonList(
+      Collections.singletonList(HTTPToHDFSActionConfig.OAUTH2_CLIENT_SECRET)
+    );
+
+    config.validate(failureCollector);
+    assertValidationFailed(failureCollector, paramNames);
+  }
+
+  @Test
+  public void testValidateDestinationQuorum() {
+    MockFailureCollector failureCollector = new MockFailureCollector(MOCK_STAGE);
+    HTTPToHDFSActionConfig config = HTTPToHDFSActionConfig.builder(VALID_CONFIG)
+      .setAdditionalDestinations("hdfs://other/data/file.csv")
+      .setDestinationQuorum(3)
+      .build();
+    List<List<String>> paramNames = Collections.singletonList(
+      Collections.singletonList(HTTPToHDFSActionConfig.DESTINATION_QUORUM)
+    );
+
+    config.validate(failureCollector);
+    assertValidationFailed(failureCollector, paramNames);
+  }
+
+  @Test
+  public void testValidatePollingInterval() {
+    MockFailureCollector failureCollector = new MockFailureCollector(MOCK_STAGE);
+    HTTPToHDFSActionConfig config = HTTPToHDFSActionConfig.builder(VALID_CONFIG)
+      .setPollingWindow(600L)
+      .setPollingInterval(0L)
+      .build();
+    List<List<String>> paramNames = Collections.singletonList(
+      Collections.singletonList(HTTPToHDFSActionConfig.POLLING_INTERVAL)
+    );
+
+    config.validate(failureCollector);
+    assertValidationFailed(failureCollector, paramNames);
+  }
+
+  @Test
+  public void testValidatePollingMaxFailures() {
+    MockFailureCollector failureCollector = new MockFailureCollector(MOCK_STAGE);
+    HTTPToHDFSActionConfig config = HTTPToHDFSActionConfig.builder(VALID_CONFIG)
+      .setPollingWindow(600L)
+      .setPollingMaxFailures(0)
+      .build();
+    List<List<String>> paramNames = Collections.singletonList(
+      Collections.singletonList(HTTPToHDFSActionConfig.POLLING_MAX_FAILURES)
+    );
+
+    config.validate(failureCollector);
+    assertValidationFailed(failureCollector, paramNames);
+  }
+
+  @Test
+  public void testValidateStreamingRequiresText() {
+    MockFailureCollector failureCollector = new MockFailureCollector(MOCK_STAGE);
+    HTTPToHDFSActionConfig config = HTTPToHDFSActionConfig.builder(VALID_CONFIG)
+      .setStreamingWindow(600L)
+      .setOutputFormat("Binary")
+      .build();
+    List<List<String>> paramNames = Collections.singletonList(
+      Collections.singletonList(HTTPToHDFSActionConfig.OUTPUT_FORMAT)
+    );
+
+    config.validate(failureCollector);
+    assertValidationFailed(failureCollector, paramNames);
+  }
+
+  @Test
+  public void testValidateDeltaKeyIndexesWithoutHeader() {
+    MockFailureCollector failureCollector = new MockFailureCollector(MOCK_STAGE);
+    HTTPToHDFSActionConfig config = HTTPToHDFSActionConfig.builder(VALID_CONFIG)
+      .setFilterType("CSV")
+      .setProjectFields("0,1")
+      .setCsvHeader(false)
+      .setDeltaKeyFields("id")
+      .build();
+    List<List<String>> paramNames = Collections.singletonList(
+      Collections.singletonList(HTTPToHDFSActionConfig.DELTA_KEY_FIELDS)
+    );
+
+    config.validate(failureCollector);
+    assertValidationFailed(failureCollector, paramNames);
+  }
+
+  @Test
+  public void testValidateStreamingWithJsonRecordsPath() {
+    MockFailureCollector failureCollector = new MockFailureCollector(MOCK_STAGE);
+    HTTPToHDFSActionConfig config = HTTPToHDFSActionConfig.builder(VALID_CONFIG)
+      .setStreamingWindow(600L)
+      .setJsonRecordsPath("$.items")
+      .build();
+    List<List<String>> paramNames = Collections.singletonList(
+      Arrays.asList(HTTPToHDFSActionConfig.JSON_RECORDS_PATH, HTTPToHDFSActionConfig.STREAMING_WINDOW)
+    );
+
+    config.validate(failureCollector);
+    assertValidationFailed(failureCollector, paramNames);
+  }
+
+  @Test
+  public void testValidateStreamingSkipsInvalidRecords() {
+    MockFailureCollector failureCollector = new MockFailureCollector(MOCK_STAGE);
+    HTTPToHDFSActionConfig config = HTTPToHDFSActionConfig.builder(VALID_CONFIG)
+      .setStreamingWindow(600L)
+      .setInvalidRecords("Fail")
+      .build();
+    List<List<String>> paramNames = Collections.singletonList(
+      Arrays.asList(HTTPToHDFSActionConfig.INVALID_RECORDS, HTTPToHDFSActionConfig.STREAMING_WINDOW)
+    );
+
+    config.validate(failureCollector);
+    assertValidationFailed(failureCollector, paramNames);
+  }
+
+  @Test
+  public void testValidateJsonRecordsPath() {
+    MockFailureCollector failureCollector = new MockFailureCollector(MOCK_STAGE);
+    HTTPToHDFSActionConfig config = HTTPToHDFSActionConfig.builder(VALID_CONFIG)
+      .setJsonRecordsPath("$data")
+      .build();
+    List<List<String>> paramNames = Collections.singletonList(
+      Collections.singletonList(HTTPToHDFSActionConfig.JSON_RECORDS_PATH)
+    );
+
+    config.validate(failureCollector);
+    assertValidationFailed(failureCollector, paramNames);
+  }
+
+  @Test
+  public void testValidateDeltaRequiresText() {
+    MockFailureCollector failureCollector = new MockFailureCollector(MOCK_STAGE);
+    HTTPToHDFSActionConfig config = HTTPToHDFSActionConfig.builder(VALID_CONFIG)
+      .setDeltaKeyFields("id")
+      .setOutputFormat("Binary")
+      .build();
+    List<List<String>> paramNames = Collections.singletonList(
+      Collections.singletonList(HTTPToHDFSActionConfig.DELTA_KEY_FIELDS)
+    );
+
+    config.validate(failureCollector);
+    assertValidationFailed(failureCollector, paramNames);
+  }
+
+  @Test
+  public void testValidateAutoTuneRequiresHostStats() {
+    MockFailureCollector failureCollector = new MockFailureCollector(MOCK_STAGE);
+    HTTPToHDFSActionConfig config = HTTPToHDFSActionConfig.builder(VALID_CONFIG)
+      .setAutoTune(true)
+      .build();
+    List<List<String>> paramNames = Collections.singletonList(
+      Arrays.asList(HTTPToHDFSActionConfig.AUTO_TUNE, HTTPToHDFSActionConfig.HOST_STATS_DIRECTORY)
+    );
+
+    config.validate(failureCollector);
+    assertValidationFailed(failureCollector, paramNames);
+  }
+
+  @Test
+  public void testValidateParallelRangesRequiresGet() {
+    MockFailureCollector failureCollector = new MockFailureCollector(MOCK_STAGE);
+    HTTPToHDFSActionConfig config = HTTPToHDFSActionConfig.builder(VALID_CONFIG)
+      .setMethod(HttpMethod.POST)
+      .setParallelRanges(4)
+      .build();
+    List<List<String>> paramNames = Collections.singletonList(
+      Arrays.asList(HTTPToHDFSActionConfig.PARALLEL_RANGES, HTTPToHDFSActionConfig.METHOD)
+    );
+
+    config.validate(failureCollector);
+    assertValidationFailed(failureCollector, paramNames);
+  }
+
+  @Test
+  public void testValidateInvalidRecords() {
+    MockFailureCollector failureCollector = new MockFailureCollector(MOCK_STAGE);
+    HTTPToHDFSActionConfig config = HTTPToHDFSActionConfig.builder(VALID_CONFIG)
+      .setInvalidRecords("Ignore")
+      .build();
+    List<List<String>> paramNames = Collections.singletonList(
+      Collections.singletonList(HTTPToHDFSActionConfig.INVALID_RECORDS)
+    );
+
+    config.validate(failureCollector);
+    assertValidationFailed(failureCollector, paramNames);
+  }
+
+  @Test
+  public void testValidateInvalidRecordsWithJsonRecordsPath() {
+    MockFailureCollector failureCollector = new MockFailureCollector(MOCK_STAGE);
+    HTTPToHDFSActionConfig config = HTTPToHDFSActionConfig.builder(VALID_CONFIG)
+      .setJsonRecordsPath("$.items")
+      .setInvalidRecords("Ignore")
+      .build();
+    List<List<String>> paramNames = Collections.singletonList(
+      Collections.singletonList(HTTPToHDFSActionConfig.INVALID_RECORDS)
+    );
+
+    config.validate(failureCollector);
+    assertValidationFailed(failureCollector, paramNames);
+  }
+
+  @Test
+  public void testValidInvalidRecordsIgnoresCase() {
+    MockFailureCollector failureCollector = new MockFailureCollector(MOCK_STAGE);
+    HTTPToHDFSActionConfig config = HTTPToHDFSActionConfig.builder(VALID_CONFIG)
+      .setInvalidRecords("fail")
+      .build();
+
+    config.validate(failureCollector);
+    Assert.assertTrue(failureCollector.getValidationFailures().isEmpty());
+    Assert.assertTrue(config.getFailOnInvalidRecords());
+  }
+
   private void assertValidationFailed(MockFailureCollector failureCollector, List<List<String>> paramNames) {
     List<ValidationFailure> failureList = failureCollector.getValidationFailures();
     Assert.assertEquals(paramNames.size(), failureList.size());
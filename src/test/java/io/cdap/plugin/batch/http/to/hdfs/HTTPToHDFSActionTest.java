@@ -136,6 +136,38 @@ public class HTTPToHDFSActionTest extends HydratorTestBase {
       .put("disableSSLValidation", "true")
       .build();
 
+    runPipeline("httptohdfsactionTest", properties);
+    String expectedOutput = "samuel jackson, dwayne johnson, christopher walken";
+    String output;
+    try (FileInputStream inputStream = new FileInputStream(filePath)) {
+      output = IOUtils.toString(inputStream);
+    }
+    Assert.assertEquals(expectedOutput, output);
+  }
+
+  @Test
+  public void testMirrorFailover() throws Exception {
+    putFeed("mirrored", "samuel jackson, dwayne johnson, christopher walken");
+    File dataFile = new File(resourceFolder, "mirror.txt");
+    String filePath = dataFile.getAbsolutePath();
+    Map<String, String> properties = new ImmutableMap.Builder<String, String>()
+      .put("url", baseURL + "/feeds/missing")
+      .put("mirrorUrls", baseURL + "/feeds/mirrored")
+      .put("method", "GET")
+      .put("outputFormat", "Binary")
+      .put("hdfsFilePath", filePath)
+      .put("numRetries", "0")
+      .build();
+
+    runPipeline("httptohdfsMirrorTest", properties);
+    String output;
+    try (FileInputStream inputStream = new FileInputStream(filePath)) {
+      output = IOUtils.toString(inputStream);
+    }
+    Assert.assertEquals("samuel jackson, dwayne johnson, christopher walken", output);
+  }
+
+  private void runPipeline(String appName, Map<String, String> properties) throws Exception {
     ETLStage action = new ETLStage("http", new ETLPlugin("HTTPToHDFS", Action.PLUGIN_TYPE, properties, null));
     ETLStage source = new ETLStage("source", MockSource.getPlugin("httpCallbackInput"));
     ETLStage sink = new ETLStage("sink", MockSink.getPlugin("httpCallbackOutput"));
@@ -148,18 +180,22 @@ public class HTTPToHDFSActionTest extends HydratorTestBase {
       .build();
 
     AppRequest<ETLBatchConfig> appRequest = new AppRequest<>(BATCH_ARTIFACT, etlConfig);
-    ApplicationId appId = NamespaceId.DEFAULT.app("httptohdfsactionTest");
+    ApplicationId appId = NamespaceId.DEFAULT.app(appName);
     ApplicationManager appManager = TestBase.deployApplication(appId, appRequest);
 
     WorkflowManager manager = appManager.getWorkflowManager(SmartWorkflow.NAME);
     manager.start();
     manager.waitForRuns(ProgramRunStatus.COMPLETED, 1, 5, TimeUnit.MINUTES);
-    String expectedOutput = "samuel jackson, dwayne johnson, christopher walken";
-    String output;
-    try (FileInputStream inputStream = new FileInputStream(filePath)) {
-      output = IOUtils.toString(inputStream);
-    }
-    Assert.assertEquals(expectedOutput, output);
+  }
+
+  private static void putFeed(String feedId, String content) throws IOException {
+    URL url = new URL(baseURL + "/feeds/" + feedId);
+    HttpURLConnection urlConn = (HttpURLConnection) url.openConnection();
+    urlConn.setDoOutput(true);
+    urlConn.setRequestMethod(HttpMethod.PUT);
+    urlConn.getOutputStream().write(content.getBytes(Charsets.UTF_8));
+    Assert.assertEquals(200, urlConn.getResponseCode());
+    urlConn.disconnect();
   }
 
   private int resetFeeds() throws IOException {
@@ -0,0 +1,153 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.batch.http.to.hdfs;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import io.cdap.plugin.batch.http.to.hdfs.mock.MockHttpServer;
+import org.apache.hadoop.fs.Path;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.Collections;
+
+/**
+ * Tests for {@link HostStats}.
+ */
+public class HostStatsTest {
+  private static final long MB = 1024 * 1024;
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+  @Rule
+  public MockHttpServer server = new MockHttpServer();
+
+  @Test
+  public void testTimeoutsFromPercentiles() {
+    HostStats.History history = new HostStats.History();
+    for (int i = 1; i < HostStats.History.MIN_SAMPLES; i++) {
+      history.recordRequest(i * 100, i * 1000, false);
+    }
+    Assert.assertNull(history.getConnectTimeout());
+    Assert.assertNull(history.getReadTimeout());
+
+    for (int i = HostStats.History.MIN_SAMPLES; i <= 20; i++) {
+      history.recordRequest(i * 100, i * 1000, false);
+    }
+    // the 95th percentile of 100 to 2000 is 1900
+    Assert.assertEquals(Integer.valueOf(1900 * HostStats.History.TIMEOUT_FACTOR), history.getConnectTimeout());
+    Assert.assertEquals(Integer.valueOf(19000 * HostStats.History.TIMEOUT_FACTOR), history.getReadTimeout());
+
+    // a fast host still gets the minimum timeouts, requests that were not sent have no time to first byte
+    history = new HostStats.History();
+    for (int i = 0; i < 20; i++) {
+      history.recordRequest(1, i % 2 == 0 ? 1 : -1, i % 4 == 0);
+    }
+    Assert.assertEquals(Integer.valueOf(HostStats.History.MIN_CONNECT_TIMEOUT), history.getConnectTimeout());
+    Assert.assertEquals(Integer.valueOf(HostStats.History.MIN_READ_TIMEOUT), history.getReadTimeout());
+    Assert.assertEquals(0.25, history.getFailureRate(), 0.001);
+  }
+
+  @Test
+  public void testChooseTriesEachStrategyThenPicksFastest() {
+    HostStats.History history = new HostStats.History();
+    history.recordRanges(true);
+    Assert.assertEquals(HostStats.Strategy.SINGLE, history.choose(true, true));
+    record(history, HostStats.Strategy.SINGLE, 100 * MB, 10000);
+    // the responses of the host are mostly small, so parallel ranges are not worth trying
+    record(history, HostStats.Strategy.COMPRESSED, 10 * MB, 500);
+    Assert.assertEquals(HostStats.Strategy.COMPRESSED, history.choose(true, true));
+
+    record(history, HostStats.Strategy.COMPRESSED, 100 * MB, 5000);
+    Assert.assertEquals(HostStats.Strategy.PARALLEL, history.choose(true, true));
+    record(history, HostStats.Strategy.PARALLEL, 100 * MB, 2500);
+    Assert.assertEquals(HostStats.Strategy.PARALLEL, history.choose(true, true));
+    Assert.assertEquals(HostStats.Strategy.COMPRESSED, history.choose(false, true));
+    Assert.assertEquals(HostStats.Strategy.SINGLE, history.choose(false, false));
+
+    history.recordCompression(false);
+    for (int i = 0; i < HostStats.History.MAX_SAMPLES; i++) {
+      history.recordRequest(10, 10, true);
+    }
+    // compression is not supported and the host fails too often for parallel requests
+    Assert.assertEquals(HostStats.Strategy.SINGLE, history.choose(true, true));
+  }
+
+  @Test
+  public void testSaveAndLoad() throws IOException {
+    Path directory = new Path(temporaryFolder.newFolder().getAbsolutePath());
+    HostStats hostStats = new HostStats(directory);
+    HostStats.History history = hostStats.get("http://Example.com:8080/data?x=1");
+    for (int i = 0; i < 10; i++) {
+      history.recordRequest(500, 1000, false);
+    }
+    history.recordRanges(true);
+    Assert.assertSame(history, hostStats.get("http://example.com:8080/other"));
+    hostStats.save();
+    Assert.assertTrue(new File(directory.toString(), "example.com_8080.json").isFile());
+
+    HostStats.History loaded = new HostStats(directory).get("http://example.com:8080/data");
+    Assert.assertEquals(history.getConnectTimeout(), loaded.getConnectTimeout());
+    Assert.assertEquals(history.getReadTimeout(), loaded.getReadTimeout());
+    Assert.assertNull(new HostStats(directory).get("http://example.com/data").getConnectTimeout());
+  }
+
+  @Test
+  public void testConnectionFactoryRecordsRequests() throws Exception {
+    server.handle("/", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+        MockHttpServer.respond(exchange, 200, "ok");
+      }
+    });
+    HTTPToHDFSActionConfig config = HTTPToHDFSActionConfig.builder()
+      .setUrl(server.getUrl("/"))
+      .setMethod("GET")
+      .setFollowRedirects(true)
+      .setDisableSSLValidation(false)
+      .setAutoTune(true)
+      .build();
+    HostStats hostStats = new HostStats(new Path(temporaryFolder.newFolder().getAbsolutePath()));
+    ConnectionFactory connectionFactory = new ConnectionFactory(config, TLSContext.create(config), null, hostStats);
+    Assert.assertEquals(HTTPToHDFSActionConfig.DEFAULT_TIMEOUT, connectionFactory.getReadTimeout(config.getUrl()));
+    for (int i = 0; i < HostStats.History.MIN_SAMPLES; i++) {
+      HttpURLConnection conn = connectionFactory.open(config.getUrl(), 0,
+                                                      Collections.singletonMap("Accept-Encoding", "gzip"));
+      Assert.assertEquals(200, conn.getResponseCode());
+      conn.disconnect();
+    }
+
+    HostStats.History history = hostStats.get(config.getUrl());
+    Assert.assertEquals(HostStats.History.MIN_READ_TIMEOUT, connectionFactory.getReadTimeout(config.getUrl()));
+    Assert.assertEquals(0, history.getFailureRate(), 0.001);
+    // the server supports ranges, but did not compress the response
+    record(history, HostStats.Strategy.SINGLE, 100 * MB, 10000);
+    Assert.assertEquals(HostStats.Strategy.PARALLEL, history.choose(true, true));
+  }
+
+  private static void record(HostStats.History history, HostStats.Strategy strategy, long bytes, long millis) {
+    for (int i = 0; i < HostStats.History.MIN_SAMPLES; i++) {
+      history.recordTransfer(strategy, bytes, millis);
+    }
+  }
+}
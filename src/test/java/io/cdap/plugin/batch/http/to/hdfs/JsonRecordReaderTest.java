@@ -0,0 +1,87 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.batch.http.to.hdfs;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests for {@link JsonRecordReader}.
+ */
+public class JsonRecordReaderTest {
+
+  @Test
+  public void testTopLevelArray() throws IOException {
+    Assert.assertEquals(Arrays.asList("{\"id\":1,\"tags\":[\"a\",\"<b>\"]}", "{\"id\":2.50}", "null"),
+                        read("[ {\"id\": 1, \"tags\": [\"a\", \"<b>\"]},\n {\"id\": 2.50}, null ]", "$"));
+  }
+
+  @Test
+  public void testNestedArray() throws IOException {
+    String json = "{\"meta\": {\"data\": [1, 2]}, \"page\": [{\"x\": 1}], " +
+      "\"response\": {\"count\": 2, \"items\": [{\"id\": \"a\"}, {\"id\": \"b\"}]}, \"next\": \"?page=2\"}";
+    Assert.assertEquals(Arrays.asList("{\"id\":\"a\"}", "{\"id\":\"b\"}"), read(json, "$.response.items[*]"));
+    Assert.assertEquals(Arrays.asList("{\"x\":1}"), read(json, "page"));
+  }
+
+  @Test
+  public void testObjectAtPathIsOneRecord() throws IOException {
+    Assert.assertEquals(Arrays.asList("{\"id\":\"a\"}"), read("{\"data\": {\"id\": \"a\"}}", "$.data"));
+    Assert.assertEquals(Collections.<String>emptyList(), read("{\"data\": []}", "$.data"));
+  }
+
+  @Test(expected = IOException.class)
+  public void testMissingField() throws IOException {
+    read("{\"items\": []}", "$.data");
+  }
+
+  @Test(expected = IOException.class)
+  public void testScalarAtPath() throws IOException {
+    read("{\"data\": 1}", "$.data");
+  }
+
+  @Test
+  public void testInvalidPaths() {
+    for (String path : Arrays.asList("$data", "$.", "$.a..b", "$.a[0]")) {
+      try {
+        JsonRecordReader.parsePath(path);
+        Assert.fail("Expected path " + path + " to be invalid.");
+      } catch (IllegalArgumentException e) {
+        // expected
+      }
+    }
+    Assert.assertEquals(Arrays.asList("a", "b"), JsonRecordReader.parsePath("a.b"));
+  }
+
+  private static List<String> read(String json, String path) throws IOException {
+    List<String> records = new ArrayList<>();
+    try (JsonRecordReader reader = new JsonRecordReader(new StringReader(json), path)) {
+      String record;
+      while ((record = reader.next()) != null) {
+        records.add(record);
+      }
+    }
+    return records;
+  }
+}
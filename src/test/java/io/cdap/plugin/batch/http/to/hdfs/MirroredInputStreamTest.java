@@ -0,0 +1,177 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.batch.http.to.hdfs;
+
+import com.google.common.io.ByteStreams;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import io.cdap.plugin.batch.http.to.hdfs.mock.MockHttpServer;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for {@link MirroredInputStream}.
+ */
+public class MirroredInputStreamTest {
+  private static final byte[] DATA = new byte[100000];
+  private static final byte[] OTHER_DATA = new byte[90000];
+  private static final String ETAG = "\"v1\"";
+
+  @Rule
+  public MockHttpServer server = new MockHttpServer();
+
+  private final List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+
+  @Before
+  public void setupServer() {
+    new Random(0).nextBytes(DATA);
+    new Random(1).nextBytes(OTHER_DATA);
+    // sends the first half of the data and then drops the connection
+    server.handle("/broken", new Mirror("broken", ETAG, DATA, false) {
+      @Override
+      void send(HttpExchange exchange, int status, byte[] data, int start) throws IOException {
+        exchange.sendResponseHeaders(status, data.length - start);
+        OutputStream outputStream = exchange.getResponseBody();
+        outputStream.write(data, start, (data.length - start) / 2);
+        outputStream.flush();
+        exchange.close();
+      }
+    });
+    server.handle("/changed", new Mirror("changed", "\"v2\"", DATA, true));
+    server.handle("/shorter", new Mirror("shorter", null, OTHER_DATA, false));
+    // answers every range request from the start of the data
+    server.handle("/misplaced", new Mirror("misplaced", ETAG, DATA, true) {
+      @Override
+      int getRangeStart(int requested) {
+        return 0;
+      }
+    });
+    server.handle("/same", new Mirror("same", ETAG, DATA, false));
+    server.handle("/ranged", new Mirror("ranged", ETAG, DATA, true));
+  }
+
+  @Test
+  public void testMismatchedMirrorsAreSkipped() throws Exception {
+    try (MirroredInputStream in = open("broken", "changed", "shorter", "misplaced", "same")) {
+      Assert.assertArrayEquals(DATA, ByteStreams.toByteArray(in));
+      List<MirroredInputStream.ServedRange> ranges = in.getServedRanges();
+      Assert.assertEquals(2, ranges.size());
+      Assert.assertEquals(server.getUrl("/broken"), ranges.get(0).getUrl());
+      Assert.assertEquals(DATA.length / 2, ranges.get(0).getEnd());
+      Assert.assertEquals(server.getUrl("/same"), ranges.get(1).getUrl());
+      Assert.assertEquals(DATA.length / 2, ranges.get(1).getStart());
+    }
+    // the response of every mirror that continued from the offset was checked against the first one
+    Assert.assertEquals(Arrays.asList("broken null", "changed \"v1\"", "shorter \"v1\"", "misplaced \"v1\"",
+                                      "same \"v1\""), requests);
+  }
+
+  @Test
+  public void testRangeFromMirror() throws Exception {
+    try (MirroredInputStream in = open("broken", "ranged")) {
+      Assert.assertArrayEquals(DATA, ByteStreams.toByteArray(in));
+      Assert.assertEquals(DATA.length / 2, in.getServedRanges().get(1).getStart());
+    }
+  }
+
+  @Test
+  public void testOnlyMismatchedMirrors() throws Exception {
+    try (MirroredInputStream in = open("broken", "changed", "shorter")) {
+      ByteStreams.toByteArray(in);
+      Assert.fail("The data of other responses must not be joined to the first one.");
+    } catch (IOException e) {
+      Assert.assertEquals(2, e.getSuppressed().length);
+    }
+  }
+
+  private MirroredInputStream open(String... paths) throws Exception {
+    List<String> urls = new ArrayList<>();
+    for (String path : paths) {
+      urls.add(server.getUrl("/" + path));
+    }
+    HTTPToHDFSActionConfig config = HTTPToHDFSActionConfig.builder()
+      .setUrl(urls.get(0))
+      .setMethod("GET")
+      .setConnectTimeout(10000)
+      .setReadTimeout(10000)
+      .setFollowRedirects(true)
+      .setDisableSSLValidation(false)
+      .build();
+    ConnectionFactory connectionFactory = new ConnectionFactory(config, TLSContext.create(config), null);
+    return new MirroredInputStream(connectionFactory, urls, 0, new TransferWatchdog(0, 0, 1, 0),
+                                   new AtomicInteger(), 1, false);
+  }
+
+  /**
+   * Mirror that serves some data with an ETag, and may or may not support range requests.
+   */
+  private class Mirror implements HttpHandler {
+    private final String name;
+    private final String etag;
+    private final byte[] data;
+    private final boolean ranges;
+
+    Mirror(String name, String etag, byte[] data, boolean ranges) {
+      this.name = name;
+      this.etag = etag;
+      this.data = data;
+      this.ranges = ranges;
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+      String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+      requests.add(name + " " + ifRange);
+      if (etag != null) {
+        exchange.getResponseHeaders().set("ETag", etag);
+      }
+      String range = exchange.getRequestHeaders().getFirst("Range");
+      if (!ranges || range == null || (ifRange != null && !ifRange.equals(etag))) {
+        send(exchange, 200, data, 0);
+        return;
+      }
+      int start = getRangeStart(Integer.parseInt(range.substring("bytes=".length(), range.indexOf('-'))));
+      exchange.getResponseHeaders().set("Content-Range",
+                                        String.format("bytes %d-%d/%d", start, data.length - 1, data.length));
+      send(exchange, 206, data, start);
+    }
+
+    int getRangeStart(int requested) {
+      return requested;
+    }
+
+    void send(HttpExchange exchange, int status, byte[] data, int start) throws IOException {
+      exchange.sendResponseHeaders(status, data.length - start);
+      try (OutputStream outputStream = exchange.getResponseBody()) {
+        outputStream.write(data, start, data.length - start);
+      } catch (IOException e) {
+        // the client disconnects from a mirror it rejects
+      }
+    }
+  }
+}
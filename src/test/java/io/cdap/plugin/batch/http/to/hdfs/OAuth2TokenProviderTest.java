@@ -0,0 +1,99 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.batch.http.to.hdfs;
+
+import com.google.common.io.ByteStreams;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import io.cdap.plugin.batch.http.to.hdfs.mock.MockHttpServer;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests for {@link OAuth2TokenProvider}.
+ */
+public class OAuth2TokenProviderTest {
+  @Rule
+  public MockHttpServer server = new MockHttpServer();
+
+  private final List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+  private volatile long expiresIn = 3600;
+
+  @Before
+  public void setupServer() {
+    server.handle("/token", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        requests.add(exchange.getRequestHeaders().getFirst("Authorization") + " " +
+                       new String(ByteStreams.toByteArray(exchange.getRequestBody()), StandardCharsets.UTF_8));
+        MockHttpServer.respond(exchange, 200, String.format("{\"access_token\":\"token-%d\",\"expires_in\":%d}",
+                                                            requests.size(), expiresIn));
+      }
+    });
+  }
+
+  @Test
+  public void testTokenIsCachedUntilInvalidated() throws Exception {
+    OAuth2TokenProvider tokenProvider = createTokenProvider();
+
+    Assert.assertEquals("token-1", tokenProvider.getToken());
+    Assert.assertEquals("token-1", tokenProvider.getToken());
+    Assert.assertEquals(Collections.singletonList("Basic Y2xpZW50OnNlY3JldA== " +
+                                                    "grant_type=client_credentials&scope=read+write"), requests);
+
+    // a token that was already replaced is not invalidated again
+    tokenProvider.invalidate("token-1");
+    Assert.assertEquals("token-2", tokenProvider.getToken());
+    tokenProvider.invalidate("token-1");
+    Assert.assertEquals("token-2", tokenProvider.getToken());
+    Assert.assertEquals(2, requests.size());
+  }
+
+  @Test
+  public void testShortLivedTokenIsNotRefreshedRightAway() throws Exception {
+    // the token lives no longer than the default refresh ahead time
+    expiresIn = 300;
+    OAuth2TokenProvider tokenProvider = createTokenProvider();
+
+    for (int i = 0; i < 10; i++) {
+      Assert.assertEquals("token-1", tokenProvider.getToken());
+    }
+    Thread.sleep(200);
+    Assert.assertEquals(1, requests.size());
+  }
+
+  private OAuth2TokenProvider createTokenProvider() throws Exception {
+    HTTPToHDFSActionConfig config = HTTPToHDFSActionConfig.builder()
+      .setOAuth2TokenUrl(server.getUrl("/token"))
+      .setOAuth2ClientId("client")
+      .setOAuth2ClientSecret("secret")
+      .setOAuth2Scope("read write")
+      .setDisableSSLValidation(false)
+      .setConnectTimeout(10000)
+      .setReadTimeout(10000)
+      .build();
+    return OAuth2TokenProvider.create(config, TLSContext.create(config));
+  }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.batch.http.to.hdfs;
+
+import com.google.common.io.ByteStreams;
+import com.google.gson.Gson;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.MapWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Tests for {@link PackedOutputWriter}, which read the written containers back.
+ */
+public class PackedOutputWriterTest {
+  private static final Gson GSON = new Gson();
+  private static final Map<String, String> HEADERS = Collections.singletonMap("Content-Type", "text/csv");
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private FileSystem fs;
+  private Path directory;
+
+  @Before
+  public void setupFileSystem() throws Exception {
+    fs = FileSystem.getLocal(new Configuration());
+    directory = new Path(temporaryFolder.newFolder().getAbsolutePath(), "packed");
+  }
+
+  @Test
+  public void testRecords() throws Exception {
+    try (PackedOutputWriter writer = new PackedOutputWriter(fs, directory, 1024 * 1024, 1024)) {
+      writer.append("https://example.com/a", HEADERS, 1000, body("a,b\n1,2\n"));
+      writer.append("https://example.com/b", Collections.<String, String>emptyMap(), 2000, body(""));
+      writer.commit();
+    }
+
+    List<Path> containers = list(".seq");
+    Assert.assertEquals(1, containers.size());
+    List<String> keys = new ArrayList<>();
+    try (SequenceFile.Reader reader = reader(containers.get(0))) {
+      Text key = new Text();
+      MapWritable value = new MapWritable();
+      while (reader.next(key, value)) {
+        keys.add(key.toString());
+        if (keys.size() == 1) {
+          Assert.assertEquals("a,b\n1,2\n", new String(body(value), StandardCharsets.UTF_8));
+          Assert.assertEquals(HEADERS, GSON.fromJson(value.get(new Text("headers")).toString(), Map.class));
+          Assert.assertEquals(1000, ((LongWritable) value.get(new Text("fetchTime"))).get());
+        } else {
+          Assert.assertEquals(0, body(value).length);
+          Assert.assertEquals("{}", value.get(new Text("headers")).toString());
+          Assert.assertEquals(2000, ((LongWritable) value.get(new Text("fetchTime"))).get());
+        }
+      }
+    }
+    Assert.assertEquals(Arrays.asList("https://example.com/a", "https://example.com/b"), keys);
+  }
+
+  @Test
+  public void testRollAtTargetSize() throws Exception {
+    byte[] data = new byte[4096];
+    new Random(0).nextBytes(data);
+    // every record fills a container of its own
+    try (PackedOutputWriter writer = new PackedOutputWriter(fs, directory, 1, data.length)) {
+      for (int i = 0; i < 3; i++) {
+        writer.append("https://example.com/" + i, HEADERS, i, new ByteArrayInputStream(data));
+      }
+      writer.commit();
+    }
+
+    List<Path> containers = list(".seq");
+    Assert.assertEquals(3, containers.size());
+    for (int i = 0; i < containers.size(); i++) {
+      try (SequenceFile.Reader reader = reader(containers.get(i))) {
+        Text key = new Text();
+        MapWritable value = new MapWritable();
+        Assert.assertTrue(reader.next(key, value));
+        Assert.assertEquals("https://example.com/" + i, key.toString());
+        Assert.assertArrayEquals(data, body(value));
+        Assert.assertFalse(reader.next(key, value));
+      }
+    }
+  }
+
+  @Test
+  public void testLargeBodyWrittenToFile() throws Exception {
+    byte[] data = new byte[100000];
+    new Random(0).nextBytes(data);
+    try (PackedOutputWriter writer = new PackedOutputWriter(fs, directory, 1024 * 1024, 1024)) {
+      writer.append("https://example.com/large", HEADERS, 1000, new ByteArrayInputStream(data));
+      writer.append("https://example.com/small", HEADERS, 2000, body("small"));
+      writer.commit();
+    }
+
+    List<Path> files = list(".body");
+    Assert.assertEquals(1, files.size());
+    try (InputStream in = fs.open(files.get(0))) {
+      Assert.assertArrayEquals(data, ByteStreams.toByteArray(in));
+    }
+    try (SequenceFile.Reader reader = reader(list(".seq").get(0))) {
+      Text key = new Text();
+      MapWritable value = new MapWritable();
+      Assert.assertTrue(reader.next(key, value));
+      Assert.assertEquals("https://example.com/large", key.toString());
+      Assert.assertNull(value.get(new Text("body")));
+      Assert.assertEquals(files.get(0).getName(), value.get(new Text("file")).toString());
+      Assert.assertTrue(reader.next(key, value));
+      Assert.assertEquals("small", new String(body(value), StandardCharsets.UTF_8));
+    }
+  }
+
+  @Test
+  public void testUncommittedOutputDeleted() throws Exception {
+    try (PackedOutputWriter writer = new PackedOutputWriter(fs, directory, 1024 * 1024, 4)) {
+      writer.append("https://example.com/a", HEADERS, 1000, body("a,b\n1,2\n"));
+      writer.append("https://example.com/b", HEADERS, 1000, body("a"));
+    }
+    Assert.assertEquals(0, fs.listStatus(directory).length);
+  }
+
+  private List<Path> list(String extension) throws Exception {
+    List<Path> paths = new ArrayList<>();
+    for (FileStatus status : fs.listStatus(directory)) {
+      String name = status.getPath().getName();
+      Assert.assertFalse("No hidden file may be left after the commit.", name.startsWith("."));
+      if (name.endsWith(extension)) {
+        paths.add(status.getPath());
+      }
+    }
+    Collections.sort(paths);
+    return paths;
+  }
+
+  private SequenceFile.Reader reader(Path container) throws Exception {
+    return new SequenceFile.Reader(fs.getConf(), SequenceFile.Reader.file(container));
+  }
+
+  private static InputStream body(String body) {
+    return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static byte[] body(MapWritable value) {
+    return ((BytesWritable) value.get(new Text("body"))).copyBytes();
+  }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.batch.http.to.hdfs;
+
+import com.google.common.io.ByteStreams;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import io.cdap.plugin.batch.http.to.hdfs.mock.MockHttpServer;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for {@link ParallelRangeInputStream}.
+ */
+public class ParallelRangeInputStreamTest {
+  private static final byte[] DATA = new byte[1000000];
+
+  @Rule
+  public MockHttpServer server = new MockHttpServer();
+
+  private AtomicInteger requests;
+
+  @Before
+  public void setupServer() {
+    new Random(0).nextBytes(DATA);
+    requests = new AtomicInteger();
+    final AtomicBoolean failed = new AtomicBoolean();
+    server.handle("/ranged", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        String[] bounds = range.substring("bytes=".length()).split("-");
+        int start = Integer.parseInt(bounds[0]);
+        int end = Math.min(DATA.length - 1, Integer.parseInt(bounds[1]));
+        // the first request for the middle of the data fails once
+        if (start == 500000 && failed.compareAndSet(false, true)) {
+          MockHttpServer.respond(exchange, 500, "");
+          return;
+        }
+        exchange.getResponseHeaders().set("Content-Range", String.format("bytes %d-%d/%d", start, end, DATA.length));
+        exchange.sendResponseHeaders(206, end - start + 1);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+          outputStream.write(DATA, start, end - start + 1);
+        }
+      }
+    });
+    server.handle("/changing", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        // the response is replaced right after the first request
+        String etag = requests.getAndIncrement() == 0 ? "\"v1\"" : "\"v2\"";
+        exchange.getResponseHeaders().set("ETag", etag);
+        String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+        if (ifRange != null && !ifRange.equals(etag)) {
+          MockHttpServer.respond(exchange, 200, DATA);
+          return;
+        }
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        int end = Math.min(DATA.length - 1, Integer.parseInt(range.substring(range.indexOf('-') + 1)));
+        exchange.getResponseHeaders().set("Content-Range", String.format("bytes 0-%d/%d", end, DATA.length));
+        exchange.sendResponseHeaders(206, end + 1);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+          outputStream.write(DATA, 0, end + 1);
+        }
+      }
+    });
+    server.handle("/misplaced", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        // answers every range request with the first bytes of the data
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        String[] bounds = range.substring("bytes=".length()).split("-");
+        int size = Integer.parseInt(bounds[1]) - Integer.parseInt(bounds[0]) + 1;
+        exchange.getResponseHeaders().set("Content-Range", String.format("bytes 0-%d/%d", size - 1, DATA.length));
+        exchange.sendResponseHeaders(206, size);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+          outputStream.write(DATA, 0, size);
+        }
+      }
+    });
+    server.handle("/plain", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        MockHttpServer.respond(exchange, 200, DATA);
+      }
+    });
+  }
+
+  @Test
+  public void testParallelRanges() throws Exception {
+    try (ParallelRangeInputStream in = open("ranged")) {
+      Assert.assertTrue(in.isParallel());
+      Assert.assertArrayEquals(DATA, ByteStreams.toByteArray(in));
+      Assert.assertEquals(1, in.getServedRanges().size());
+      Assert.assertEquals(DATA.length, in.getServedRanges().get(0).getEnd());
+    }
+    // 100 chunks and the failed one
+    Assert.assertEquals(101, requests.get());
+  }
+
+  @Test
+  public void testServerIgnoresRanges() throws Exception {
+    try (ParallelRangeInputStream in = open("plain")) {
+      Assert.assertFalse(in.isParallel());
+      Assert.assertArrayEquals(DATA, ByteStreams.toByteArray(in));
+    }
+    Assert.assertEquals(1, requests.get());
+  }
+
+  @Test
+  public void testResponseChangesBetweenChunks() throws Exception {
+    try (ParallelRangeInputStream in = open("changing")) {
+      Assert.assertTrue(in.isParallel());
+      ByteStreams.toByteArray(in);
+      Assert.fail("The chunks of the new response must not be mixed with the first one.");
+    } catch (IOException e) {
+      Assert.assertTrue(e.getMessage(), e.getMessage().contains("changed while it was read"));
+    }
+    // the chunks that found the new response are not requested again
+    Assert.assertTrue(String.valueOf(requests.get()), requests.get() <= 7);
+  }
+
+  @Test
+  public void testRangeMismatch() throws Exception {
+    try (ParallelRangeInputStream in = open("misplaced")) {
+      ByteStreams.toByteArray(in);
+      Assert.fail("A chunk that does not start at the requested offset must fail.");
+    } catch (IOException e) {
+      Assert.assertTrue(e.getMessage(), e.getMessage().contains("with the range 'bytes 0-9999/1000000'"));
+    }
+  }
+
+  @Test
+  public void testParseRange() {
+    Assert.assertEquals(100, ParallelRangeInputStream.parseStart("bytes 100-199/1234"));
+    Assert.assertEquals(-1, ParallelRangeInputStream.parseStart("bytes */1234"));
+    Assert.assertEquals(-1, ParallelRangeInputStream.parseStart(null));
+  }
+
+  @Test
+  public void testParseLength() {
+    Assert.assertEquals(1234, ParallelRangeInputStream.parseLength("bytes 0-99/1234"));
+    Assert.assertEquals(-1, ParallelRangeInputStream.parseLength("bytes 0-99/*"));
+    Assert.assertEquals(-1, ParallelRangeInputStream.parseLength(null));
+  }
+
+  private ParallelRangeInputStream open(String path) throws Exception {
+    HTTPToHDFSActionConfig config = HTTPToHDFSActionConfig.builder()
+      .setUrl(server.getUrl("/" + path))
+      .setMethod("GET")
+      .setConnectTimeout(10000)
+      .setReadTimeout(10000)
+      .setFollowRedirects(true)
+      .setDisableSSLValidation(false)
+      .build();
+    ConnectionFactory connectionFactory = new ConnectionFactory(config, TLSContext.create(config), null);
+    return new ParallelRangeInputStream(connectionFactory, config.getUrl(), 3, 10000,
+                                        new TransferWatchdog(0, 0, 1, 0), 3);
+  }
+}
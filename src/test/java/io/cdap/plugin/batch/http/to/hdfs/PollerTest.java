@@ -0,0 +1,185 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.batch.http.to.hdfs;
+
+import com.google.common.io.ByteStreams;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import io.cdap.cdap.etl.mock.common.MockStageMetrics;
+import io.cdap.plugin.batch.http.to.hdfs.mock.MockHttpServer;
+import org.apache.hadoop.fs.Path;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for {@link Poller}.
+ */
+public class PollerTest {
+  private static final String[] RESPONSES = {"a", "a", "b", "b", "b"};
+  private static final String[] CSV_RESPONSES = {"id,name\n1,a\n2,x\n", "id,name\n3,b\n"};
+  private static final int FLAKY_FAILURES = 2;
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+  @Rule
+  public MockHttpServer server = new MockHttpServer();
+
+  private final AtomicInteger requests = new AtomicInteger();
+  private final AtomicInteger flakyRequests = new AtomicInteger();
+  private final AtomicInteger csvRequests = new AtomicInteger();
+
+  @Before
+  public void setupServer() {
+    server.handle("/data", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        String body = RESPONSES[Math.min(requests.getAndIncrement(), RESPONSES.length - 1)];
+        // the second "b" is answered by the ETag, the first repeated "a" only by comparing the content
+        if (("\"" + body + "\"").equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+          MockHttpServer.respond(exchange, 304, "");
+          return;
+        }
+        if (body.equals("b")) {
+          exchange.getResponseHeaders().set("ETag", "\"b\"");
+        }
+        MockHttpServer.respond(exchange, 200, body);
+      }
+    });
+    // fails the first requests and then answers
+    server.handle("/flaky", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        if (flakyRequests.getAndIncrement() < FLAKY_FAILURES) {
+          MockHttpServer.respond(exchange, 500, "");
+          return;
+        }
+        MockHttpServer.respond(exchange, 200, "c");
+      }
+    });
+    // every response has a header of its own
+    server.handle("/csv", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        MockHttpServer.respond(exchange, 200,
+                               CSV_RESPONSES[Math.min(csvRequests.getAndIncrement(), CSV_RESPONSES.length - 1)]);
+      }
+    });
+  }
+
+  @Test
+  public void testOnlyChangedResponsesAreWritten() throws Exception {
+    File directory = temporaryFolder.newFolder();
+    Poller poller = poller(directory, "data", 3);
+    while (requests.get() < RESPONSES.length) {
+      poller.run(1, new MockStageMetrics("poll"));
+    }
+    Assert.assertEquals(Arrays.asList("a", "b"), written(directory));
+  }
+
+  @Test
+  public void testFailuresBelowThreshold() throws Exception {
+    File directory = temporaryFolder.newFolder();
+    poller(directory, "flaky", FLAKY_FAILURES + 1).run(1, new MockStageMetrics("poll"));
+    Assert.assertTrue(flakyRequests.get() > FLAKY_FAILURES);
+    Assert.assertEquals(Collections.singletonList("c"), written(directory));
+  }
+
+  @Test(expected = IOException.class)
+  public void testFailuresReachThreshold() throws Exception {
+    poller(temporaryFolder.newFolder(), "flaky", FLAKY_FAILURES).run(1, new MockStageMetrics("poll"));
+  }
+
+  @Test
+  public void testCsvFilterAppliedToEveryResponse() throws Exception {
+    final HTTPToHDFSActionConfig config = HTTPToHDFSActionConfig.builder()
+      .setFilterType("CSV")
+      .setFilterField("name")
+      .setFilterPattern("^[ab]$")
+      .setProjectFields("name")
+      .setCsvDelimiter(",")
+      .setCsvHeader(true)
+      .build();
+    File directory = temporaryFolder.newFolder();
+    // like the action, every response is written through a filter of its own
+    Poller poller = poller(directory, "csv", 3, new Poller.BodyWriter() {
+      @Override
+      public void write(InputStream in, OutputStream out) throws IOException {
+        RecordFilter filter = RecordFilter.create(config);
+        for (String line : new String(ByteStreams.toByteArray(in), StandardCharsets.UTF_8).split("\n")) {
+          String record = filter.apply(line);
+          if (record != null) {
+            out.write((record + "\n").getBytes(StandardCharsets.UTF_8));
+          }
+        }
+        Assert.assertEquals(0, filter.getInvalidCount());
+      }
+    });
+    while (csvRequests.get() < CSV_RESPONSES.length) {
+      poller.run(1, new MockStageMetrics("poll"));
+    }
+    Assert.assertEquals(Arrays.asList("name\na\n", "name\nb\n"), written(directory));
+  }
+
+  private Poller poller(File directory, String path, int maxFailures) throws Exception {
+    return poller(directory, path, maxFailures, new Poller.BodyWriter() {
+      @Override
+      public void write(InputStream in, OutputStream out) throws IOException {
+        ByteStreams.copy(in, out);
+      }
+    });
+  }
+
+  private Poller poller(File directory, String path, int maxFailures,
+                        Poller.BodyWriter bodyWriter) throws Exception {
+    HTTPToHDFSActionConfig config = HTTPToHDFSActionConfig.builder()
+      .setMethod("GET")
+      .setConnectTimeout(10000)
+      .setReadTimeout(10000)
+      .setFollowRedirects(true)
+      .setDisableSSLValidation(false)
+      .build();
+    return new Poller(new ConnectionFactory(config, TLSContext.create(config), null), server.getUrl("/" + path),
+                      new Path(directory.getAbsolutePath()), "'bucket'", 0, true, maxFailures, bodyWriter);
+  }
+
+  private static List<String> written(File directory) throws IOException {
+    List<String> written = new ArrayList<>();
+    for (File file : new File(directory, "bucket").listFiles()) {
+      Assert.assertTrue(file.getName().startsWith("response-"));
+      try (InputStream in = new FileInputStream(file)) {
+        written.add(new String(ByteStreams.toByteArray(in), StandardCharsets.UTF_8));
+      }
+    }
+    Collections.sort(written);
+    return written;
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.batch.http.to.hdfs;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tests for {@link PrefetchingInputStream}.
+ */
+public class PrefetchingInputStreamTest {
+
+  @Test
+  public void testRead() throws IOException {
+    byte[] data = randomBytes(100000);
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    try (PrefetchingInputStream inputStream = new PrefetchingInputStream(new ByteArrayInputStream(data), 1000, 3)) {
+      byte[] buffer = new byte[777];
+      int n;
+      while ((n = inputStream.read(buffer)) >= 0) {
+        output.write(buffer, 0, n);
+      }
+      Assert.assertEquals(-1, inputStream.read());
+    }
+    Assert.assertArrayEquals(data, output.toByteArray());
+  }
+
+  @Test
+  public void testTransferTo() throws IOException {
+    byte[] data = randomBytes(100000);
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    try (PrefetchingInputStream inputStream = new PrefetchingInputStream(new ByteArrayInputStream(data), 4096, 2)) {
+      Assert.assertEquals(data.length, inputStream.transferTo(output));
+    }
+    Assert.assertArrayEquals(data, output.toByteArray());
+  }
+
+  @Test
+  public void testBuffersFilledFromShortReads() throws IOException {
+    byte[] data = randomBytes(10050);
+    // returns at most 100 bytes per read and never tells that more is available, like a socket
+    InputStream trickle = new ByteArrayInputStream(data) {
+      @Override
+      public synchronized int read(byte[] b, int off, int len) {
+        return super.read(b, off, Math.min(len, 100));
+      }
+
+      @Override
+      public synchronized int available() {
+        return 0;
+      }
+    };
+    final List<Integer> chunks = new ArrayList<>();
+    ByteArrayOutputStream output = new ByteArrayOutputStream() {
+      @Override
+      public synchronized void write(byte[] b, int off, int len) {
+        chunks.add(len);
+        super.write(b, off, len);
+      }
+    };
+    try (PrefetchingInputStream inputStream = new PrefetchingInputStream(trickle, 1000, 2)) {
+      Assert.assertEquals(data.length, inputStream.transferTo(output));
+    }
+    Assert.assertArrayEquals(data, output.toByteArray());
+    List<Integer> expected = new ArrayList<>(Collections.nCopies(10, 1000));
+    expected.add(50);
+    Assert.assertEquals(expected, chunks);
+  }
+
+  @Test(expected = IOException.class)
+  public void testReadError() throws IOException {
+    InputStream failing = new InputStream() {
+      @Override
+      public int read() throws IOException {
+        throw new IOException("Connection reset");
+      }
+    };
+    try (PrefetchingInputStream inputStream = new PrefetchingInputStream(failing, 1024, 2)) {
+      inputStream.read();
+    }
+  }
+
+  private static byte[] randomBytes(int size) {
+    byte[] data = new byte[size];
+    new Random(0).nextBytes(data);
+    return data;
+  }
+}
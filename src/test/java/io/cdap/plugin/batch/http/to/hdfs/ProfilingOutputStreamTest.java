@@ -0,0 +1,74 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.batch.http.to.hdfs;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Tests for {@link ProfilingOutputStream}.
+ */
+public class ProfilingOutputStreamTest {
+
+  @Test
+  public void testDelimited() throws IOException {
+    ProfilingOutputStream.Profile profile = profile("id,name,city\n1,\"a, b\",x\r\n22,c,yy\n");
+    Assert.assertEquals(33, profile.getBytes());
+    Assert.assertEquals(3, profile.getRecords());
+    Assert.assertEquals(12, profile.getMaxRecordLength());
+    Assert.assertEquals(ProfilingOutputStream.DELIMITED, profile.getShape());
+    Assert.assertEquals(",", profile.getDelimiter());
+  }
+
+  @Test
+  public void testTabDelimitedWithoutTrailingNewline() throws IOException {
+    ProfilingOutputStream.Profile profile = profile("a\tb\nc\td");
+    Assert.assertEquals(2, profile.getRecords());
+    Assert.assertEquals("\t", profile.getDelimiter());
+  }
+
+  @Test
+  public void testJson() throws IOException {
+    Assert.assertEquals(ProfilingOutputStream.NDJSON, profile("{\"a\":1}\n{\"a\":2}\n").getShape());
+    Assert.assertEquals(ProfilingOutputStream.JSON_OBJECT, profile("{\n  \"a\": 1\n}\n").getShape());
+    Assert.assertEquals(ProfilingOutputStream.JSON_ARRAY, profile("  [{\"a\":1},\n{\"a\":2}]").getShape());
+  }
+
+  @Test
+  public void testOtherShapes() throws IOException {
+    Assert.assertEquals(ProfilingOutputStream.EMPTY, profile("").getShape());
+    Assert.assertEquals(ProfilingOutputStream.TEXT, profile("hello world\nsecond line\n").getShape());
+    Assert.assertEquals(ProfilingOutputStream.BINARY, profile("PK\u0003\u0004\u0000\u0000").getShape());
+  }
+
+  private ProfilingOutputStream.Profile profile(String data) throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    ProfilingOutputStream profilingStream = new ProfilingOutputStream(output);
+    byte[] bytes = data.getBytes(StandardCharsets.UTF_8);
+    // write in uneven chunks and single bytes, like the copy loops do
+    profilingStream.write(bytes, 0, bytes.length / 2);
+    for (int i = bytes.length / 2; i < bytes.length; i++) {
+      profilingStream.write(bytes[i]);
+    }
+    Assert.assertEquals(data, new String(output.toByteArray(), StandardCharsets.UTF_8));
+    return profilingStream.getProfile();
+  }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.batch.http.to.hdfs;
+
+import com.google.common.base.Strings;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests for {@link RecordFilter} and {@link BoundedLineReader}.
+ */
+public class RecordFilterTest {
+
+  @Test
+  public void testRegexFilter() throws IOException {
+    HTTPToHDFSActionConfig config = HTTPToHDFSActionConfig.builder()
+      .setFilterType(RecordFilter.REGEX)
+      .setFilterPattern("^EU")
+      .build();
+    Assert.assertEquals(Arrays.asList("EU,1", "EU,3"), filter(config, "EU,1\nUS,2\r\nEU,3\n"));
+  }
+
+  @Test
+  public void testCSVFilterWithHeader() throws IOException {
+    HTTPToHDFSActionConfig config = HTTPToHDFSActionConfig.builder()
+      .setFilterType(RecordFilter.CSV)
+      .setCsvHeader(true)
+      .setFilterField("region")
+      .setFilterPattern("^EU$")
+      .setProjectFields("id,name")
+      .build();
+    Assert.assertEquals(Arrays.asList("id,name", "1,\"a, b\"", "3,c"),
+                        filter(config, "id,region,name\n1,EU,\"a, b\"\n2,US,x\n3,\"EU\",c"));
+  }
+
+  @Test
+  public void testCSVFilterWithIndex() throws IOException {
+    HTTPToHDFSActionConfig config = HTTPToHDFSActionConfig.builder()
+      .setFilterType(RecordFilter.CSV)
+      .setCsvDelimiter("\\t")
+      .setFilterField("1")
+      .setFilterPattern("US")
+      .build();
+    Assert.assertEquals(Arrays.asList("2\tUS"), filter(config, "1\tEU\n2\tUS\n"));
+  }
+
+  @Test
+  public void testJSONFilter() throws IOException {
+    HTTPToHDFSActionConfig config = HTTPToHDFSActionConfig.builder()
+      .setFilterType(RecordFilter.JSON)
+      .setFilterField("event.type")
+      .setFilterPattern("^click$")
+      .setProjectFields("id,event.type")
+      .build();
+    String input = "{\"id\":1,\"event\":{\"type\":\"click\",\"x\":3}}\n" +
+      "{\"id\":2,\"event\":{\"type\":\"view\"}}\n" +
+      "not json\n";
+    Assert.assertEquals(Arrays.asList("{\"id\":1,\"event\":{\"type\":\"click\"}}"), filter(config, input));
+  }
+
+  @Test
+  public void testInvalidJSONRecordsCounted() {
+    HTTPToHDFSActionConfig config = HTTPToHDFSActionConfig.builder()
+      .setFilterType(RecordFilter.JSON)
+      .setFilterField("id")
+      .setFilterPattern("^1$")
+      .build();
+    RecordFilter filter = RecordFilter.create(config);
+    Assert.assertEquals("{\"id\":1}", filter.apply("{\"id\":1}"));
+    Assert.assertNull(filter.apply("{\"id\":2}"));
+    Assert.assertNull(filter.apply(""));
+    Assert.assertNull(filter.apply("not json"));
+    Assert.assertNull(filter.apply("[1]"));
+    // only the records that could not be parsed as objects are invalid
+    Assert.assertEquals(2, filter.getInvalidCount());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testCSVColumnNotInHeader() throws IOException {
+    HTTPToHDFSActionConfig config = HTTPToHDFSActionConfig.builder()
+      .setFilterType(RecordFilter.CSV)
+      .setCsvHeader(true)
+      .setFilterField("country")
+      .build();
+    filter(config, "id,region\n1,EU\n");
+  }
+
+  @Test
+  public void testOversizedLinesSkipped() throws IOException {
+    String longLine = Strings.repeat("x", 20000);
+    BoundedLineReader reader = new BoundedLineReader(new StringReader("a\n" + longLine + "\nb"), 10000);
+    Assert.assertEquals("a", reader.readLine());
+    Assert.assertEquals("b", reader.readLine());
+    Assert.assertNull(reader.readLine());
+    Assert.assertEquals(1, reader.getOversizedCount());
+  }
+
+  private List<String> filter(HTTPToHDFSActionConfig config, String input) throws IOException {
+    RecordFilter filter = RecordFilter.create(config);
+    BoundedLineReader reader = new BoundedLineReader(new StringReader(input), 1024);
+    List<String> output = new ArrayList<>();
+    String line;
+    while ((line = reader.readLine()) != null) {
+      String record = filter.apply(line);
+      if (record != null) {
+        output.add(record);
+      }
+    }
+    return output;
+  }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.batch.http.to.hdfs;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import io.cdap.plugin.batch.http.to.hdfs.mock.MockHttpServer;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Tests for {@link Sampler}.
+ */
+public class SamplerTest {
+  private static final byte[] CSV = "id,name\n1,a\n2,b\n3,c\n".getBytes(StandardCharsets.UTF_8);
+
+  @Rule
+  public MockHttpServer server = new MockHttpServer();
+
+  @Before
+  public void setupServer() throws IOException {
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    try (OutputStream gzip = new GZIPOutputStream(compressed)) {
+      for (int i = 0; i < 100000; i++) {
+        gzip.write(String.format("{\"id\": %d}\n", i).getBytes(StandardCharsets.UTF_8));
+      }
+    }
+    final byte[] ndjson = compressed.toByteArray();
+
+    server.handle("/ranged", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("ETag", "\"v1\"");
+        exchange.getResponseHeaders().set("Content-Type", "text/csv; charset=UTF-8");
+        if ("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+          MockHttpServer.respond(exchange, 304, "");
+          return;
+        }
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        int end = Math.min(CSV.length, Integer.parseInt(range.substring(range.indexOf('-') + 1)) + 1);
+        exchange.getResponseHeaders().set("Content-Range", String.format("bytes 0-%d/%d", end - 1, CSV.length));
+        exchange.sendResponseHeaders(206, end);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+          outputStream.write(CSV, 0, end);
+        }
+      }
+    });
+    server.handle("/plain", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        exchange.sendResponseHeaders(200, ndjson.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+          outputStream.write(ndjson);
+        } catch (IOException e) {
+          // the client disconnects once it has the preview
+        }
+      }
+    });
+  }
+
+  @Test
+  public void testRangedTextSample() throws Exception {
+    Sampler.Sample sample = sample("ranged", 1024);
+
+    Assert.assertEquals(206, sample.getStatus());
+    Assert.assertEquals(CSV.length, sample.getSampledBytes());
+    Assert.assertEquals(Sampler.NONE, sample.getCompression());
+    Assert.assertEquals(ProfilingOutputStream.DELIMITED, sample.getShape());
+    Assert.assertTrue(sample.getRangeRequests());
+    Assert.assertEquals(Boolean.TRUE, sample.getConditionalRequests());
+    Assert.assertTrue(sample.getWarnings().isEmpty());
+  }
+
+  @Test
+  public void testCompressedSampleWithoutRanges() throws Exception {
+    Sampler.Sample sample = sample("plain", 4096);
+
+    Assert.assertEquals(200, sample.getStatus());
+    Assert.assertEquals(4096, sample.getSampledBytes());
+    Assert.assertEquals("gzip", sample.getCompression());
+    Assert.assertEquals(ProfilingOutputStream.NDJSON, sample.getShape());
+    Assert.assertFalse(sample.getRangeRequests());
+    Assert.assertNull(sample.getConditionalRequests());
+    Assert.assertEquals(Arrays.asList(
+      "The server does not support range requests, so an interrupted download starts over.",
+      "The data is compressed with gzip, but the output format is Text."), sample.getWarnings());
+  }
+
+  @Test
+  public void testPreviewOfInvalidRequest() {
+    // the required method is missing
+    HTTPToHDFSActionConfig request = HTTPToHDFSActionConfig.builder()
+      .setUrl(server.getUrl("/ranged"))
+      .setOutputFormat("Text")
+      .build();
+    Sampler.Sample sample = new HTTPToHDFSAction(request).preview(request);
+    Assert.assertEquals(1, sample.getFailures().size());
+    Assert.assertEquals(0, sample.getStatus());
+
+    request = HTTPToHDFSActionConfig.builder(config("ranged", 1024)).setUrl("not a url").build();
+    Assert.assertEquals(1, new HTTPToHDFSAction(request).preview(request).getFailures().size());
+  }
+
+  @Test
+  public void testPreviewOfMissingUrl() {
+    HTTPToHDFSActionConfig request = config("missing", 1024);
+    Sampler.Sample sample = new HTTPToHDFSAction(request).preview(request);
+    Assert.assertEquals(1, sample.getFailures().size());
+    Assert.assertEquals(server.getUrl("/missing"), sample.getUrl());
+  }
+
+  @Test
+  public void testPreview() {
+    HTTPToHDFSActionConfig request = config("ranged", 1024);
+    Sampler.Sample sample = new HTTPToHDFSAction(request).preview(request);
+    Assert.assertTrue(sample.getFailures().isEmpty());
+    Assert.assertEquals(206, sample.getStatus());
+  }
+
+  private Sampler.Sample sample(String path, int previewSize) throws Exception {
+    HTTPToHDFSActionConfig config = config(path, previewSize);
+    return new Sampler(config, new ConnectionFactory(config, TLSContext.create(config), null)).sample();
+  }
+
+  private HTTPToHDFSActionConfig config(String path, int previewSize) {
+    return HTTPToHDFSActionConfig.builder()
+      .setUrl(server.getUrl("/" + path))
+      .setMethod("GET")
+      .setOutputFormat("Text")
+      .setCharset("UTF-8")
+      .setConnectTimeout(10000)
+      .setReadTimeout(10000)
+      .setFollowRedirects(true)
+      .setDisableSSLValidation(false)
+      .setPreviewSize(previewSize)
+      .build();
+  }
+}
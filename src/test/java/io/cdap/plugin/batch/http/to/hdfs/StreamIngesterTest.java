@@ -0,0 +1,158 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.batch.http.to.hdfs;
+
+import com.google.common.io.ByteStreams;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import io.cdap.cdap.etl.mock.common.MockStageMetrics;
+import io.cdap.plugin.batch.http.to.hdfs.mock.MockHttpServer;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import javax.annotation.Nullable;
+
+/**
+ * Tests for {@link StreamIngester}.
+ */
+public class StreamIngesterTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+  @Rule
+  public MockHttpServer server = new MockHttpServer();
+
+  private final List<String> lastEventIds = Collections.synchronizedList(new ArrayList<String>());
+  private volatile int lineResponses = 1;
+
+  @Before
+  public void setupServer() {
+    server.handle("/events", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        lastEventIds.add(String.valueOf(exchange.getRequestHeaders().getFirst("Last-Event-ID")));
+        if (lastEventIds.size() == 1) {
+          // the last event is incomplete when the stream ends, so it is dropped
+          send(exchange, "text/event-stream",
+               "retry: 10\n: comment\n\nid: 1\ndata: a\n\nid: 2\nevent: update\ndata: b\ndata:c\n\ndata: d\n");
+        } else if (lastEventIds.size() == 2) {
+          send(exchange, "text/event-stream", "id: 3\ndata: {\"x\": \"<e>\"}\n\n");
+        } else {
+          MockHttpServer.respond(exchange, 204, "");
+        }
+      }
+    });
+    server.handle("/lines", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        lastEventIds.add(String.valueOf(exchange.getRequestHeaders().getFirst("Last-Event-ID")));
+        if (lastEventIds.size() <= lineResponses) {
+          send(exchange, "application/x-ndjson", "{\"n\": 1}\n\n{\"n\": 2}\r\n{\"n\": 3}\n");
+        } else {
+          MockHttpServer.respond(exchange, 204, "");
+        }
+      }
+    });
+  }
+
+  @Test
+  public void testEventsAreWrittenAndResumed() throws Exception {
+    File directory = ingest("events", 1024);
+
+    Assert.assertEquals(Arrays.asList("null", "2", "3"), lastEventIds);
+    Assert.assertEquals(Arrays.asList("{\"id\":\"1\",\"event\":\"message\",\"data\":\"a\"}\n" +
+                                        "{\"id\":\"2\",\"event\":\"update\",\"data\":\"b\\nc\"}\n" +
+                                        "{\"id\":\"3\",\"event\":\"message\",\"data\":\"{\\\"x\\\": \\\"<e>\\\"}\"}\n"),
+                        read(directory));
+  }
+
+  @Test
+  public void testLinesAreRolledBySize() throws Exception {
+    File directory = ingest("lines", 5);
+
+    Assert.assertEquals(Arrays.asList("{\"n\": 1}\n", "{\"n\": 2}\n", "{\"n\": 3}\n"), read(directory));
+  }
+
+  @Test
+  public void testFilteredEventsKeepConnectionsHealthy() throws Exception {
+    // every event is dropped by the filter, yet the connections received events and are not failures
+    lineResponses = 3;
+    HTTPToHDFSActionConfig filter = HTTPToHDFSActionConfig.builder()
+      .setFilterType("Regex")
+      .setFilterPattern("none")
+      .build();
+    File directory = ingest("lines", 1024, 1, RecordFilter.create(filter));
+
+    Assert.assertEquals(4, lastEventIds.size());
+    Assert.assertEquals(0, directory.listFiles().length);
+  }
+
+  private File ingest(String path, long rollSize) throws Exception {
+    return ingest(path, rollSize, 3, null);
+  }
+
+  private File ingest(String path, long rollSize, int numRetries, @Nullable RecordFilter filter) throws Exception {
+    File directory = temporaryFolder.newFolder();
+    HTTPToHDFSActionConfig config = HTTPToHDFSActionConfig.builder()
+      .setUrl(server.getUrl("/" + path))
+      .setHdfsFilePath(directory.getAbsolutePath())
+      .setMethod("GET")
+      .setCharset("UTF-8")
+      .setConnectTimeout(10000)
+      .setReadTimeout(10000)
+      .setFollowRedirects(true)
+      .setDisableSSLValidation(false)
+      .setNumRetries(numRetries)
+      .setStreamingRollSize(rollSize)
+      .setStreamingFlushInterval(1L)
+      .build();
+    StreamIngester ingester = new StreamIngester(config, new ConnectionFactory(config, TLSContext.create(config), null),
+                                                 filter);
+    ingester.run(30, new MockStageMetrics("stream"));
+    return directory;
+  }
+
+  private static void send(HttpExchange exchange, String contentType, String body) throws IOException {
+    exchange.getResponseHeaders().set("Content-Type", contentType);
+    MockHttpServer.respond(exchange, 200, body);
+  }
+
+  private static List<String> read(File directory) throws IOException {
+    File[] files = directory.listFiles();
+    Arrays.sort(files);
+    List<String> contents = new ArrayList<>();
+    for (File file : files) {
+      Assert.assertTrue(file.getName().startsWith("events-"));
+      try (InputStream in = new FileInputStream(file)) {
+        contents.add(new String(ByteStreams.toByteArray(in), StandardCharsets.UTF_8));
+      }
+    }
+    return contents;
+  }
+}
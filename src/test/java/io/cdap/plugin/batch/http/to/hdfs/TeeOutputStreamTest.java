@@ -0,0 +1,186 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.batch.http.to.hdfs;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Tests for {@link TeeOutputStream}.
+ */
+public class TeeOutputStreamTest {
+
+  @Test
+  public void testWritesAllDestinations() throws IOException {
+    byte[] data = new byte[100000];
+    new Random(0).nextBytes(data);
+    ByteArrayOutputStream first = new ByteArrayOutputStream();
+    ByteArrayOutputStream second = new ByteArrayOutputStream();
+    // the buffer is smaller than the data, so writing has to wait for the destinations
+    try (TeeOutputStream tee = new TeeOutputStream(Arrays.asList("first", "second"),
+                                                   Arrays.<OutputStream>asList(first, second), 1000, 2)) {
+      for (int off = 0; off < data.length; off += 777) {
+        tee.write(data, off, Math.min(777, data.length - off));
+      }
+    }
+    Assert.assertArrayEquals(data, first.toByteArray());
+    Assert.assertArrayEquals(data, second.toByteArray());
+  }
+
+  @Test
+  public void testFailedDestinationWithinQuorum() throws IOException {
+    ByteArrayOutputStream first = new ByteArrayOutputStream();
+    TeeOutputStream tee = new TeeOutputStream(Arrays.asList("first", "failing"),
+                                              Arrays.asList(first, new FailingOutputStream()), 1000, 1);
+    tee.write(new byte[] {1, 2, 3});
+    tee.close();
+    Assert.assertArrayEquals(new byte[] {1, 2, 3}, first.toByteArray());
+    Assert.assertEquals(Collections.singletonList("failing"), tee.getFailed());
+  }
+
+  @Test(expected = IOException.class)
+  public void testFailedDestinationBelowQuorum() throws IOException {
+    TeeOutputStream tee = new TeeOutputStream(Arrays.asList("first", "failing"),
+                                              Arrays.asList(new ByteArrayOutputStream(), new FailingOutputStream()),
+                                              1000, 2);
+    tee.write(new byte[] {1, 2, 3});
+    tee.close();
+  }
+
+  @Test(expected = IOException.class)
+  public void testFailedFirstDestination() throws IOException {
+    TeeOutputStream tee = new TeeOutputStream(Arrays.asList("failing", "second"),
+                                              Arrays.asList(new FailingOutputStream(), new ByteArrayOutputStream()),
+                                              1000, 1);
+    tee.write(new byte[] {1, 2, 3});
+    tee.close();
+  }
+
+  @Test
+  public void testCommit() throws IOException {
+    RecordingDestination first = new RecordingDestination(false);
+    RecordingDestination second = new RecordingDestination(false);
+    TeeOutputStream tee = new TeeOutputStream(destinations(first, second), 1000, 2);
+    tee.write(new byte[] {1, 2, 3});
+    tee.commit();
+    tee.close();
+    Assert.assertArrayEquals(new byte[] {1, 2, 3}, second.out.toByteArray());
+    Assert.assertTrue(first.committed && second.committed);
+    Assert.assertFalse(first.aborted || second.aborted);
+  }
+
+  @Test
+  public void testCloseWithoutCommitAborts() throws IOException {
+    RecordingDestination first = new RecordingDestination(false);
+    RecordingDestination second = new RecordingDestination(false);
+    TeeOutputStream tee = new TeeOutputStream(destinations(first, second), 1000, 2);
+    tee.write(new byte[] {1, 2, 3});
+    tee.close();
+    Assert.assertFalse(first.committed || second.committed);
+    Assert.assertTrue(first.aborted && second.aborted);
+  }
+
+  @Test
+  public void testFailedCreateCountsAsFailed() throws IOException {
+    RecordingDestination first = new RecordingDestination(false);
+    RecordingDestination failing = new RecordingDestination(true);
+    RecordingDestination third = new RecordingDestination(false);
+    TeeOutputStream tee = new TeeOutputStream(destinations(first, failing, third), 1000, 2);
+    tee.write(new byte[] {1, 2, 3});
+    tee.commit();
+    Assert.assertEquals(Collections.singletonList("1"), tee.getFailed());
+    Assert.assertEquals(Arrays.asList("0", "2"), tee.getSucceeded());
+    Assert.assertTrue(first.committed && third.committed);
+    Assert.assertFalse(failing.committed);
+    Assert.assertTrue(failing.aborted);
+  }
+
+  @Test
+  public void testFailedCreateBelowQuorum() {
+    RecordingDestination first = new RecordingDestination(false);
+    RecordingDestination failing = new RecordingDestination(true);
+    try (TeeOutputStream tee = new TeeOutputStream(destinations(first, failing), 1000, 2)) {
+      tee.write(new byte[] {1, 2, 3});
+      tee.commit();
+      Assert.fail("The quorum of 2 destinations cannot be reached.");
+    } catch (IOException e) {
+      // expected
+    }
+    // nothing was committed, so the destination that was written is aborted as well
+    Assert.assertFalse(first.committed || failing.committed);
+    Assert.assertTrue(first.aborted && failing.aborted);
+  }
+
+  private static Map<String, TeeOutputStream.Destination> destinations(RecordingDestination... destinations) {
+    Map<String, TeeOutputStream.Destination> named = new LinkedHashMap<>();
+    for (int i = 0; i < destinations.length; i++) {
+      named.put(String.valueOf(i), destinations[i]);
+    }
+    return named;
+  }
+
+  /**
+   * Destination that records whether it was committed or aborted, and may fail to be created.
+   */
+  private static final class RecordingDestination implements TeeOutputStream.Destination {
+    private final boolean failCreate;
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private volatile boolean committed;
+    private volatile boolean aborted;
+
+    private RecordingDestination(boolean failCreate) {
+      this.failCreate = failCreate;
+    }
+
+    @Override
+    public OutputStream create() throws IOException {
+      if (failCreate) {
+        throw new IOException("Destination cannot be created.");
+      }
+      return out;
+    }
+
+    @Override
+    public void commit() {
+      committed = true;
+    }
+
+    @Override
+    public void abort() {
+      aborted = true;
+    }
+  }
+
+  /**
+   * Output stream that fails on every write.
+   */
+  private static final class FailingOutputStream extends OutputStream {
+    @Override
+    public void write(int b) throws IOException {
+      throw new IOException("Destination is not available.");
+    }
+  }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.batch.http.to.hdfs;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import io.cdap.plugin.batch.http.to.hdfs.mock.MockHttpServer;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for {@link TransferWatchdog}, against a server that answers slowly.
+ */
+public class TransferWatchdogTest {
+  private static final long SLOW_MILLIS = TimeUnit.SECONDS.toMillis(20);
+
+  @Rule
+  public MockHttpServer server = new MockHttpServer();
+
+  @Before
+  public void setupServer() {
+    // sends the headers but no data
+    server.handle("/silent", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        exchange.sendResponseHeaders(200, 0);
+        pause(SLOW_MILLIS);
+        exchange.close();
+      }
+    });
+    // does not even send the headers
+    server.handle("/headless", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        pause(SLOW_MILLIS);
+        exchange.close();
+      }
+    });
+    // sends 100 bytes every 200 ms
+    server.handle("/trickle", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        exchange.sendResponseHeaders(200, 0);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+          for (int i = 0; i < SLOW_MILLIS / 200; i++) {
+            outputStream.write(new byte[100]);
+            outputStream.flush();
+            pause(200);
+          }
+        } catch (IOException e) {
+          // the client was aborted
+        }
+      }
+    });
+  }
+
+  @Test
+  public void testFirstByteTimeout() throws Exception {
+    try (TransferWatchdog watchdog = new TransferWatchdog(1500, 0, 1, 0)) {
+      assertAborted(watchdog, "silent", "no data was received within 1500 ms");
+      Assert.assertFalse(watchdog.isDeadlineExceeded());
+    }
+  }
+
+  @Test
+  public void testFirstByteTimeoutWaitingForHeaders() throws Exception {
+    try (TransferWatchdog watchdog = new TransferWatchdog(1500, 0, 1, 0)) {
+      assertAborted(watchdog, "headless", "no data was received within 1500 ms");
+    }
+  }
+
+  @Test
+  public void testMinThroughput() throws Exception {
+    try (TransferWatchdog watchdog = new TransferWatchdog(0, 10000, 2, 0)) {
+      assertAborted(watchdog, "trickle",
+                    "throughput of \\d+ bytes/sec over the last 2 seconds is below the minimum of 10000 bytes/sec");
+    }
+  }
+
+  @Test
+  public void testDeadline() throws Exception {
+    try (TransferWatchdog watchdog = new TransferWatchdog(0, 0, 1, 2)) {
+      assertAborted(watchdog, "trickle", "the transfer deadline has passed");
+      Assert.assertTrue(watchdog.isDeadlineExceeded());
+      // a connection made after the deadline is aborted right away
+      try {
+        read(watchdog, "trickle");
+        Assert.fail("No connection may be read from after the deadline.");
+      } catch (IOException e) {
+        // expected
+      }
+    }
+  }
+
+  @Test
+  public void testReadTimeoutBoundedByLimits() {
+    Assert.assertEquals(60000, new TransferWatchdog(0, 0, 10, 0).getReadTimeout(60000));
+    Assert.assertEquals(0, new TransferWatchdog(0, 0, 10, 0).getReadTimeout(0));
+    Assert.assertEquals(3500, new TransferWatchdog(1500, 0, 10, 0).getReadTimeout(60000));
+    Assert.assertEquals(12000, new TransferWatchdog(0, 1000, 10, 0).getReadTimeout(0));
+    Assert.assertTrue(new TransferWatchdog(0, 0, 10, 5).getReadTimeout(60000) <= 7000);
+  }
+
+  private void assertAborted(TransferWatchdog watchdog, String path, String reasonPattern) throws Exception {
+    watchdog.start();
+    long start = System.currentTimeMillis();
+    try {
+      read(watchdog, path);
+      Assert.fail("The transfer should have been aborted because " + reasonPattern + ".");
+    } catch (IOException e) {
+      String reason = watchdog.takeAbortReason();
+      Assert.assertTrue(reason, reason != null && reason.matches(reasonPattern));
+    }
+    Assert.assertTrue(System.currentTimeMillis() - start < SLOW_MILLIS / 2);
+  }
+
+  private void read(TransferWatchdog watchdog, String path) throws Exception {
+    HTTPToHDFSActionConfig config = HTTPToHDFSActionConfig.builder()
+      .setUrl(server.getUrl("/" + path))
+      .setMethod("GET")
+      .setConnectTimeout(10000)
+      .setReadTimeout((int) SLOW_MILLIS * 2)
+      .setFollowRedirects(true)
+      .setDisableSSLValidation(false)
+      .build();
+    ConnectionFactory connectionFactory = new ConnectionFactory(config, TLSContext.create(config), null);
+    HttpURLConnection conn = connectionFactory.open(config.getUrl(), 0, Collections.<String, String>emptyMap(),
+                                                    watchdog);
+    try (InputStream in = conn.getInputStream()) {
+      byte[] buffer = new byte[1024];
+      int n;
+      while ((n = in.read(buffer)) >= 0) {
+        watchdog.read(n);
+      }
+    } finally {
+      watchdog.disconnected();
+      conn.disconnect();
+    }
+  }
+
+  private static void pause(long millis) {
+    try {
+      TimeUnit.MILLISECONDS.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright © 2019 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.batch.http.to.hdfs.mock;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.rules.ExternalResource;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+
+/**
+ * Http server used for unit tests of the http client code, started before and stopped after each test.
+ *
+ * Unlike the {@link MockFeedHandler} service, each test registers handlers that answer with exactly the status,
+ * headers and timing it needs, such as range responses, failures or slow bodies.
+ */
+public class MockHttpServer extends ExternalResource {
+  private HttpServer server;
+
+  @Override
+  protected void before() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    // several threads, so that parallel and slow requests do not wait for each other
+    server.setExecutor(Executors.newCachedThreadPool(
+      new ThreadFactoryBuilder().setDaemon(true).setNameFormat("mock-http-%d").build()));
+    server.start();
+  }
+
+  @Override
+  protected void after() {
+    server.stop(0);
+  }
+
+  /**
+   * Registers the handler of a path and of all paths below it.
+   */
+  public void handle(String path, HttpHandler handler) {
+    server.createContext(path, handler);
+  }
+
+  /**
+   * Returns the url of a path of the server.
+   */
+  public String getUrl(String path) {
+    return String.format("http://localhost:%d%s", server.getAddress().getPort(), path);
+  }
+
+  /**
+   * Answers the exchange with a status and a body.
+   */
+  public static void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+    exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+    try (OutputStream outputStream = exchange.getResponseBody()) {
+      outputStream.write(body);
+    }
+  }
+
+  /**
+   * Answers the exchange with a status and a UTF-8 body.
+   */
+  public static void respond(HttpExchange exchange, int status, String body) throws IOException {
+    respond(exchange, status, body.getBytes(StandardCharsets.UTF_8));
+  }
+}